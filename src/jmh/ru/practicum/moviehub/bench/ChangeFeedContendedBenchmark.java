@@ -0,0 +1,50 @@
+package ru.practicum.moviehub.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.MoviesStore;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Запись под конкуренцией вместе с чтением lastSeq, как у полной выгрузки каталога.
+ * Каждая пара добавление+удаление проходит журнал изменений дважды; результат writers сравнивается
+ * с MoviesStoreContendedBenchmark.addAndDelete на тех же параметрах.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Group)
+public class ChangeFeedContendedBenchmark {
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param({"heap", "compact", "snapshot"})
+    String storage;
+
+    MoviesStore store;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        store = MoviesStoreBenchmark.fill(size, storage);
+    }
+
+    @Benchmark
+    @Group("writeAndPoll")
+    @GroupThreads(3)
+    public void writers(MoviesStoreBenchmark.IdState ids) {
+        int id = ids.next();
+        store.addMovies(new Movie(id, "Новый фильм", 2000));
+        store.deleteMovieById(id);
+    }
+
+    @Benchmark
+    @Group("writeAndPoll")
+    @GroupThreads(1)
+    public long lastSeq() {
+        return store.changes().lastSeq();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.moviehub.bench;
+
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.CompactMoviesStore;
+import ru.practicum.moviehub.store.MoviesStore;
+import ru.practicum.moviehub.store.SnapshotMoviesStore;
+import ru.practicum.moviehub.store.StorageMode;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/*
+ * Сколько кучи (и памяти вне кучи) занимает один фильм в каждом варианте хранилища.
+ * Занятая куча меряется после полной сборки мусора до и после заполнения каталога.
+ *
+ * java -Xmx8g -cp target/benchmarks.jar ru.practicum.moviehub.bench.HeapFootprint 1000000
+ */
+public class HeapFootprint {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-9s %12s %14s %14s%n", "storage", "movies", "heap B/movie", "direct B/movie");
+        for (StorageMode mode : StorageMode.values()) {
+            Supplier<MoviesStore> factory = switch (mode) {
+                case HEAP -> MoviesStore::new;
+                case COMPACT -> () -> new CompactMoviesStore(false);
+                case OFF_HEAP -> () -> new CompactMoviesStore(true);
+                case SNAPSHOT -> SnapshotMoviesStore::new;
+            };
+            measure(mode, factory, size);
+        }
+    }
+
+    private static void measure(StorageMode mode, Supplier<MoviesStore> factory, int size) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        MoviesStore store = factory.get();
+        for (int id = 0; id < size; id++) {
+            store.addMovies(new Movie(id, "Фильм номер " + id, MoviesStoreBenchmark.FIRST_YEAR + id % MoviesStoreBenchmark.YEARS));
+        }
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%-9s %12d %14.1f %14.1f%n", mode.name().toLowerCase(), store.size(),
+                (double) heap / size, (double) direct / size);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) used += pool.getMemoryUsed();
+        }
+        return used;
+    }
+}
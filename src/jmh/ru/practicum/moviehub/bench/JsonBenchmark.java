@@ -0,0 +1,114 @@
+package ru.practicum.moviehub.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.moviehub.api.ErrorResponse;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private static final Type MOVIE_LIST = new TypeToken<List<Movie>>() {}.getType();
+
+    @Param({"100", "10000"})
+    int listSize;
+
+    Gson gson;
+    Movie movie;
+    String movieJson;
+    byte[] movieJsonBytes;
+    List<Movie> movies;
+    ErrorResponse notFound;
+    ErrorResponse validation;
+
+    @Setup
+    public void setUp() {
+        gson = new Gson();
+        movie = new Movie(42, "Москва слезам не верит", 1979);
+        movieJson = gson.toJson(movie);
+        movieJsonBytes = movieJson.getBytes(StandardCharsets.UTF_8);
+        movies = new ArrayList<>(listSize);
+        for (int id = 0; id < listSize; id++) {
+            movies.add(new Movie(id, "Фильм номер " + id, 1888 + id % 138));
+        }
+        notFound = new ErrorResponse(404, "Такого фильма нет в списке");
+        validation = new ErrorResponse(422, "Ошибка валидации",
+                List.of("название не должно быть пустым", "год должен быть между 1888 и 2027"));
+    }
+
+    @Benchmark
+    public String serializeMovie() {
+        return gson.toJson(movie);
+    }
+
+    @Benchmark
+    public Movie parseMovie() {
+        return gson.fromJson(movieJson, Movie.class);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String serializeMovieList() {
+        return gson.toJson(movies, MOVIE_LIST);
+    }
+
+    @Benchmark
+    public String serializeErrorResponse() {
+        return gson.toJson(notFound);
+    }
+
+    @Benchmark
+    public String serializeValidationError() {
+        return gson.toJson(validation);
+    }
+
+    // Те же операции через MovieJson; для честного сравнения с Gson результат — байты UTF-8
+    @Benchmark
+    public byte[] serializeMovieGsonBytes() {
+        return gson.toJson(movie).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] serializeMovieCodec() {
+        return MovieJson.toJson(movie);
+    }
+
+    @Benchmark
+    public Movie parseMovieGsonBytes() {
+        return gson.fromJson(new String(movieJsonBytes, StandardCharsets.UTF_8), Movie.class);
+    }
+
+    @Benchmark
+    public Movie parseMovieCodec() {
+        return MovieJson.parseMovie(movieJsonBytes);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] serializeMovieListGsonBytes() {
+        return gson.toJson(movies, MOVIE_LIST).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] serializeMovieListCodec() {
+        return MovieJson.toJson(movies);
+    }
+
+    @Benchmark
+    public byte[] serializeValidationErrorCodec() {
+        return MovieJson.toJson(validation);
+    }
+}
@@ -0,0 +1,220 @@
+package ru.practicum.moviehub.bench;
+
+import com.google.gson.Gson;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import ru.practicum.moviehub.http.MoviesServer;
+import ru.practicum.moviehub.http.ServerConfig;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Нагрузочный тест MoviesServer по открытой модели: запросы отправляются по расписанию с заданной
+ * частотой, не дожидаясь ответов, а задержка считается от запланированного момента отправки.
+ * Поэтому медленные ответы не прячутся за снизившейся частотой (coordinated omission).
+ *
+ * java -cp target/benchmarks.jar ru.practicum.moviehub.bench.LoadGenerator \
+ *     --rate=5000 --duration=60 --mix=get:60,year:15,list:5,post:15,delete:5
+ *
+ * Остальные параметры: --warmup=сек, --preload=фильмов, --url=адрес внешнего сервера;
+ * параметры вида --mode/--threads/--queue/--backlog передаются встроенному серверу.
+ */
+public class LoadGenerator {
+    private static final int FIRST_YEAR = 1888;
+    private static final int YEARS = 138;
+    private static final long MAX_LATENCY_US = TimeUnit.MINUTES.toMicros(1);
+
+    enum Operation { GET, YEAR, LIST, POST, DELETE }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final Gson gson = new Gson();
+    private final String baseUrl;
+    private final int preload;
+    private final Operation[] schedule;
+    private final AtomicInteger nextId;
+    // id, чей POST уже ответил 201: DELETE берёт только их, чтобы не считать заведомые 404 ошибками
+    private final ConcurrentLinkedQueue<Integer> created = new ConcurrentLinkedQueue<>();
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    // DELETE не отправлен: ещё нет фильма, добавленного с ответом 201
+    private final LongAdder skippedDeletes = new LongAdder();
+    private final Histogram total = new ConcurrentHistogram(MAX_LATENCY_US, 3);
+
+    LoadGenerator(String baseUrl, int preload, Map<Operation, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.preload = preload;
+        this.nextId = new AtomicInteger(preload);
+        List<Operation> slots = new ArrayList<>();
+        mix.forEach((op, weight) -> {
+            for (int i = 0; i < weight; i++) slots.add(op);
+        });
+        if (slots.isEmpty()) throw new IllegalArgumentException("Пустая смесь операций");
+        Collections.shuffle(slots, new Random(42));
+        this.schedule = slots.toArray(new Operation[0]);
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new ConcurrentHistogram(MAX_LATENCY_US, 3));
+            errors.put(op, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> serverArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            switch (key) {
+                case "--rate", "--duration", "--warmup", "--preload", "--mix", "--url" ->
+                        options.put(key.substring(2), arg.substring(eq + 1));
+                default -> serverArgs.add(arg);
+            }
+        }
+        int rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int preload = Integer.parseInt(options.getOrDefault("preload", "10000"));
+        Map<Operation, Integer> mix = parseMix(options.getOrDefault("mix", "get:60,year:15,list:5,post:15,delete:5"));
+
+        MoviesServer server = null;
+        String url = options.get("url");
+        if (url == null) {
+            serverArgs.add("--port=0");
+            server = new MoviesServer(ServerConfig.fromArgs(serverArgs.toArray(new String[0])));
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+        try {
+            LoadGenerator generator = new LoadGenerator(url, preload, mix);
+            generator.preload();
+            if (warmup > 0) {
+                generator.run(rate, warmup, false);
+            }
+            long start = System.nanoTime();
+            generator.run(rate, duration, true);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            generator.report(System.out, rate, seconds);
+        } finally {
+            if (server != null) server.stop();
+        }
+    }
+
+    static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] kv = part.split(":");
+            if (kv.length != 2) throw new IllegalArgumentException("Некорректная смесь операций: " + value);
+            mix.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+
+    void preload() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int id = 0; id < preload; id++) {
+            body.append(gson.toJson(new Movie(id, "Фильм номер " + id, FIRST_YEAR + id % YEARS))).append('\n');
+        }
+        HttpResponse<String> resp = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/movies/batch"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (resp.statusCode() != 200) throw new IllegalStateException("Не удалось загрузить каталог: " + resp.body());
+    }
+
+    void run(int rate, int seconds, boolean record) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long count = (long) rate * seconds;
+        Semaphore inFlight = new Semaphore(Integer.MAX_VALUE);
+        for (long i = 0; i < count; i++) {
+            long intended = start + i * interval;
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            Operation op = schedule[(int) (i % schedule.length)];
+            Integer id = switch (op) {
+                case POST -> nextId.getAndIncrement();
+                case DELETE -> created.poll();
+                default -> null;
+            };
+            if (op == Operation.DELETE && id == null) {
+                if (record) skippedDeletes.increment();
+                continue;
+            }
+            inFlight.acquireUninterruptibly();
+            client.sendAsync(request(op, id), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((resp, error) -> {
+                        long latency = (System.nanoTime() - intended) / 1000;
+                        if (record) {
+                            latencies.get(op).recordValue(Math.min(latency, MAX_LATENCY_US));
+                            total.recordValue(Math.min(latency, MAX_LATENCY_US));
+                            if (error != null || resp.statusCode() >= 400) errors.get(op).increment();
+                        }
+                        if (op == Operation.POST && error == null && resp.statusCode() == 201) created.add(id);
+                        inFlight.release();
+                    });
+        }
+        // дождаться ответов на все отправленные запросы; иначе хвост прогрева попадёт в замер,
+        // а отчёт окажется неполным
+        if (!inFlight.tryAcquire(Integer.MAX_VALUE, 1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("За минуту не пришли ответы на "
+                    + (Integer.MAX_VALUE - inFlight.availablePermits()) + " запросов, результат недостоверен");
+        }
+    }
+
+    // id — добавляемого фильма для POST и удаляемого для DELETE
+    private HttpRequest request(Operation op, Integer id) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (op) {
+            case GET -> HttpRequest.newBuilder(URI.create(baseUrl + "/movies/" + random.nextInt(preload))).GET().build();
+            case YEAR -> HttpRequest.newBuilder(
+                    URI.create(baseUrl + "/movies?year=" + (FIRST_YEAR + random.nextInt(YEARS)))).GET().build();
+            case LIST -> HttpRequest.newBuilder(URI.create(baseUrl + "/movies")).GET().build();
+            case POST -> HttpRequest.newBuilder(URI.create(baseUrl + "/movies"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(new Movie(id, "Новый фильм " + id, 2000))))
+                    .build();
+            case DELETE -> HttpRequest.newBuilder(URI.create(baseUrl + "/movies/" + id)).DELETE().build();
+        };
+    }
+
+    void report(PrintStream out, int rate, double seconds) {
+        out.printf(Locale.ROOT, "%nЦелевая частота: %d запр/с, достигнуто: %.1f запр/с за %.1f с%n",
+                rate, total.getTotalCount() / seconds, seconds);
+        out.printf(Locale.ROOT, "%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+                "op", "count", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms", "rps");
+        for (Operation op : Operation.values()) {
+            Histogram h = latencies.get(op);
+            if (h.getTotalCount() == 0) continue;
+            printRow(out, op.name().toLowerCase(), h, errors.get(op).sum(), seconds);
+        }
+        long totalErrors = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        printRow(out, "total", total, totalErrors, seconds);
+        if (skippedDeletes.sum() > 0) {
+            out.printf(Locale.ROOT, "delete пропущено: %d (не было фильма, добавленного с ответом 201)%n",
+                    skippedDeletes.sum());
+        }
+        out.println();
+        out.println("Распределение задержек (все операции), мс:");
+        total.outputPercentileDistribution(out, 5, 1000.0);
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram h, long errors, double seconds) {
+        out.printf(Locale.ROOT, "%-8s %10d %8d %10.3f %10.3f %10.3f %10.3f %10.1f%n", name, h.getTotalCount(), errors,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0,
+                h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0, h.getTotalCount() / seconds);
+    }
+}
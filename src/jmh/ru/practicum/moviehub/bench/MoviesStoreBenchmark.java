@@ -0,0 +1,106 @@
+package ru.practicum.moviehub.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.CompactMoviesStore;
+import ru.practicum.moviehub.store.MovieQuery;
+import ru.practicum.moviehub.store.MoviesStore;
+import ru.practicum.moviehub.store.SnapshotMoviesStore;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class MoviesStoreBenchmark {
+    static final int FIRST_YEAR = 1888;
+    static final int YEARS = 138;
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"heap", "compact", "snapshot"})
+    String storage;
+
+    MoviesStore store;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        store = fill(size, storage);
+    }
+
+    static MoviesStore fill(int size, String storage) {
+        MoviesStore store = switch (storage) {
+            case "compact" -> new CompactMoviesStore(false, size);
+            case "snapshot" -> new SnapshotMoviesStore();
+            default -> new MoviesStore();
+        };
+        for (int id = 0; id < size; id++) {
+            store.addMovies(new Movie(id, "Фильм номер " + id, FIRST_YEAR + id % YEARS));
+        }
+        return store;
+    }
+
+    // добавление и удаление парой, чтобы размер каталога не менялся между итерациями
+    @Benchmark
+    public void addAndDelete(IdState ids) {
+        int id = ids.next();
+        store.addMovies(new Movie(id, "Новый фильм", 2000));
+        store.deleteMovieById(id);
+    }
+
+    @Benchmark
+    public Movie findMovie() {
+        return store.findMovie(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public List<Movie> getMoviesByYear() {
+        return store.getMoviesByYear(FIRST_YEAR + ThreadLocalRandom.current().nextInt(YEARS));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void getAllMovies(Blackhole bh) {
+        bh.consume(store.getAllMovies());
+    }
+
+    // Последние 100 по году идут по индексу лет, первые 100 по названию — куча на 100 элементов
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Movie> top100ByYearDesc() {
+        return store.query(new MovieQuery().setSort(MovieQuery.Sort.YEAR, true).setWindow(0, 100));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Movie> top100ByTitle() {
+        return store.query(new MovieQuery().setSort(MovieQuery.Sort.TITLE, false).setWindow(0, 100));
+    }
+
+    // отрицательные id не пересекаются с каталогом, а остаток по модулю MAX_THREADS — с другими потоками
+    @State(Scope.Thread)
+    public static class IdState {
+        private static final int MAX_THREADS = 4096;
+        private static final AtomicInteger THREADS = new AtomicInteger();
+        private int thread;
+        private int counter;
+
+        @Setup(Level.Trial)
+        public void init() {
+            thread = THREADS.getAndIncrement() % MAX_THREADS;
+        }
+
+        int next() {
+            counter = (counter + 1) % (Integer.MAX_VALUE / MAX_THREADS);
+            return -1 - (thread + MAX_THREADS * counter);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.moviehub.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Те же операции, что в MoviesStoreBenchmark, но на общем хранилище из всех доступных ядер.
+ * Сравнение с однопоточными результатами показывает, как хранилище масштабируется.
+ */
+@Threads(Threads.MAX)
+public class MoviesStoreContendedBenchmark extends MoviesStoreBenchmark {
+}
@@ -0,0 +1,222 @@
+package ru.practicum.moviehub.bench;
+
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.Durability;
+import ru.practicum.moviehub.store.PersistentMoviesStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Время до первого полезного ответа нового экземпляра. Запускает MovieHubApp отдельным процессом,
+ * опрашивает GET /movies?limit=1, пока ответ 200 не покажет в X-Total-Count весь каталог, и затем
+ * замеряет первые запросы к прогреваемым путям: по id, по году, поиск, страницу и полный список.
+ *
+ * java -cp target/benchmarks.jar ru.practicum.moviehub.bench.StartupProbe --write-catalog=catalog.json --movies=100000
+ * (catalog.bin вместо catalog.json — тот же каталог в формате снимка snapshot.bin)
+ * java -cp target/benchmarks.jar ru.practicum.moviehub.bench.StartupProbe --expect=100000 --fill=catalog.json
+ * java -cp target/benchmarks.jar ru.practicum.moviehub.bench.StartupProbe --expect=100000 \
+ *     --jvm=-XX:SharedArchiveFile=app.jsa --catalog=catalog.bin --warmup-rounds=100
+ *
+ * --fill=файл — каталог приходит после старта через POST /movies/batch, как сейчас заполняются новые узлы;
+ * --jvm=параметр — параметр JVM сервера (можно несколько раз); --app=путь к moviehub.jar;
+ * --requests=N — сколько запросов замерить после готовности. Остальные параметры передаются серверу.
+ */
+public class StartupProbe {
+    private static final int FIRST_YEAR = 1888;
+    private static final int YEARS = 138;
+    private static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final int port;
+
+    StartupProbe(int port) {
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> jvmArgs = new ArrayList<>();
+        List<String> serverArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            switch (key) {
+                case "--jvm" -> jvmArgs.add(arg.substring(eq + 1));
+                case "--app", "--expect", "--fill", "--requests", "--write-catalog", "--movies" ->
+                        options.put(key.substring(2), arg.substring(eq + 1));
+                default -> serverArgs.add(arg);
+            }
+        }
+        if (options.containsKey("write-catalog")) {
+            writeCatalog(Path.of(options.get("write-catalog")), Integer.parseInt(options.getOrDefault("movies", "100000")));
+            return;
+        }
+        int expect = Integer.parseInt(options.getOrDefault("expect", "0"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "200"));
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(options.getOrDefault("app", "target/moviehub.jar"));
+        command.add("--port=" + port);
+        command.addAll(serverArgs);
+
+        StartupProbe probe = new StartupProbe(port);
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            long listening = probe.awaitStatus(start, process);
+            if (options.containsKey("fill")) probe.fill(Path.of(options.get("fill")));
+            long healthy = probe.awaitCatalog(start, expect);
+            long[] latencies = probe.firstRequests(requests, Math.max(expect, 1));
+            probe.report(listening - start, healthy - start, latencies);
+        } finally {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // Файл *.bin пишется как снимок из --data-dir, остальные — JSON-массивом
+    static void writeCatalog(Path file, int movies) throws IOException {
+        List<Movie> catalog = new ArrayList<>(movies);
+        for (int id = 1; id <= movies; id++) {
+            catalog.add(new Movie(id, "Фильм номер " + id, FIRST_YEAR + id % YEARS));
+        }
+        if (!file.getFileName().toString().endsWith(".bin")) {
+            Files.write(file, MovieJson.toJson(catalog));
+            return;
+        }
+        Path dir = Files.createTempDirectory("catalog");
+        try (PersistentMoviesStore store = new PersistentMoviesStore(dir, Durability.ASYNC, Duration.ZERO)) {
+            store.addAll(catalog);
+            store.snapshot();
+        }
+        Files.move(dir.resolve("snapshot.bin"), file, StandardCopyOption.REPLACE_EXISTING);
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    // Момент первого ответа 200: порт открыт и обработчики отвечают
+    private long awaitStatus(long start, Process process) throws Exception {
+        while (System.nanoTime() - start < TIMEOUT_NANOS) {
+            if (!process.isAlive()) throw new IllegalStateException("Сервер завершился с кодом " + process.exitValue());
+            try {
+                if (request("GET", "/movies?limit=1", null).status == 200) return System.nanoTime();
+            } catch (IOException e) {
+                // порт ещё не открыт
+            }
+            Thread.sleep(1);
+        }
+        throw new IllegalStateException("Сервер не ответил за 5 минут");
+    }
+
+    // Момент, когда в каталоге не меньше expect фильмов
+    private long awaitCatalog(long start, int expect) throws Exception {
+        while (System.nanoTime() - start < TIMEOUT_NANOS) {
+            Response response = request("GET", "/movies?limit=1", null);
+            String total = response.header("X-Total-Count");
+            if (response.status == 200 && total != null && Integer.parseInt(total) >= expect) return System.nanoTime();
+            Thread.sleep(1);
+        }
+        throw new IllegalStateException("Каталог не загрузился за 5 минут");
+    }
+
+    private void fill(Path file) throws IOException {
+        Response response = request("POST", "/movies/batch", Files.readAllBytes(file));
+        if (response.status != 200) throw new IllegalStateException("Не удалось заполнить каталог: " + response.status);
+    }
+
+    private long[] firstRequests(int count, int ids) throws IOException {
+        Random random = new Random(42);
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            String path = switch (i % 5) {
+                case 0 -> "/movies/" + (1 + random.nextInt(ids));
+                case 1 -> "/movies?year=" + (FIRST_YEAR + random.nextInt(YEARS));
+                case 2 -> "/movies?title=" + (1 + random.nextInt(ids));
+                case 3 -> "/movies?limit=20&offset=" + random.nextInt(ids);
+                default -> i % 50 == 4 ? "/movies" : "/movies/" + (1 + random.nextInt(ids));
+            };
+            long start = System.nanoTime();
+            Response response = request("GET", path, null);
+            latencies[i] = System.nanoTime() - start;
+            if (response.status >= 500) throw new IllegalStateException(path + " ответил " + response.status);
+        }
+        return latencies;
+    }
+
+    private void report(long listeningNanos, long healthyNanos, long[] latencies) {
+        long total = 0;
+        for (long latency : latencies) total += latency;
+        long first = latencies.length > 0 ? latencies[0] : 0;
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%nпервый ответ 200:       %8.1f мс%n", listeningNanos / 1e6);
+        System.out.printf(Locale.ROOT, "каталог загружен:       %8.1f мс%n", healthyNanos / 1e6);
+        if (sorted.length == 0) return;
+        System.out.printf(Locale.ROOT, "первые %d запросов:    %8.1f мс (первый %.2f, p50 %.2f, p99 %.2f, max %.2f мс)%n",
+                sorted.length, total / 1e6, first / 1e6, sorted[sorted.length / 2] / 1e6,
+                sorted[(int) Math.min(sorted.length - 1, sorted.length * 0.99)] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    // Запрос на отдельном соединении: клиент не держит состояния между запросами и не прогревается сам
+    private Response request(String method, String path, byte[] body) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+            socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(5));
+            StringBuilder head = new StringBuilder()
+                    .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                    .append("Host: 127.0.0.1\r\nConnection: close\r\n");
+            if (body != null) {
+                head.append("Content-Type: application/json\r\nContent-Length: ").append(body.length).append("\r\n");
+            }
+            head.append("\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+            if (body != null) out.write(body);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] response = in.readAllBytes();
+            return Response.parse(response);
+        }
+    }
+
+    private record Response(int status, String headers) {
+        static Response parse(byte[] raw) throws IOException {
+            String text = new String(raw, 0, Math.min(raw.length, 4096), StandardCharsets.ISO_8859_1);
+            int end = text.indexOf("\r\n\r\n");
+            if (!text.startsWith("HTTP/1.1 ") || end < 0) throw new IOException("Некорректный ответ");
+            return new Response(Integer.parseInt(text.substring(9, 12)), text.substring(0, end));
+        }
+
+        String header(String name) {
+            for (String line : headers.split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+                    return line.substring(colon + 1).trim();
+                }
+            }
+            return null;
+        }
+    }
+}
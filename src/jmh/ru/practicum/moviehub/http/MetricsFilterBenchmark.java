@@ -0,0 +1,65 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.moviehub.metrics.Metrics;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.MoviesStore;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Цена MetricsFilter на самых дешёвых запросах: обмен в памяти, без сокетов, так что вся разница —
+ * фильтр. Сравниваются пары withMetrics/plain; при 50k запр/с на запрос приходится 20 мкс,
+ * 1% — это 200 нс.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@org.openjdk.jmh.annotations.Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsFilterBenchmark {
+    private static final int SIZE = 10_000;
+
+    private Filter.Chain plain;
+    private Filter.Chain withMetrics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MoviesStore store = new MoviesStore();
+        for (int id = 0; id < SIZE; id++) store.addMovies(new Movie(id, "Фильм номер " + id, 1888 + id % 138));
+        MoviesHandler handler = new MoviesHandler(store);
+        plain = new Filter.Chain(List.of(), handler);
+        withMetrics = new Filter.Chain(List.of(new MetricsFilter(new Metrics(), handler::routeLabel)), handler);
+    }
+
+    @Benchmark
+    public int getById_plain() throws IOException {
+        return send(plain, "/movies/" + ThreadLocalRandom.current().nextInt(SIZE));
+    }
+
+    @Benchmark
+    public int getById_withMetrics() throws IOException {
+        return send(withMetrics, "/movies/" + ThreadLocalRandom.current().nextInt(SIZE));
+    }
+
+    @Benchmark
+    public int notFound_plain() throws IOException {
+        return send(plain, "/movies/" + (SIZE + ThreadLocalRandom.current().nextInt(SIZE)));
+    }
+
+    @Benchmark
+    public int notFound_withMetrics() throws IOException {
+        return send(withMetrics, "/movies/" + (SIZE + ThreadLocalRandom.current().nextInt(SIZE)));
+    }
+
+    private static int send(Filter.Chain chain, String uri) throws IOException {
+        Warmup.Exchange ex = new Warmup.Exchange("GET", uri, null);
+        chain.doFilter(ex);
+        return ex.getResponseCode();
+    }
+}
@@ -1,11 +1,19 @@
 package ru.practicum.moviehub;
 
 import ru.practicum.moviehub.http.MoviesServer;
+import ru.practicum.moviehub.http.ServerConfig;
 
 public class MovieHubApp {
     public static void main(String[] args) {
-        MoviesServer server = new MoviesServer();
+        ServerConfig config = ServerConfig.fromArgs(args);
+        MoviesServer server = new MoviesServer(config);
+        if (config.isExitAfterStart()) {
+            // тренировочный прогон для архива CDS: классы запуска загружены, процесс завершается
+            server.start();
+            server.stop();
+            return;
+        }
         Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
         server.start();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package ru.practicum.moviehub.api;
+
+import java.util.List;
+
+public class BatchResponse {
+    private final int succeeded;
+    private final int failed;
+    private final List<ItemError> errors;
+    // id, выданные сервером добавленным фильмам, в порядке элементов; null, если id брались из тела
+    private final List<Integer> ids;
+
+    public BatchResponse(int succeeded, List<ItemError> errors) {
+        this(succeeded, errors, null);
+    }
+
+    public BatchResponse(int succeeded, List<ItemError> errors, List<Integer> ids) {
+        this.succeeded = succeeded;
+        this.failed = errors.size();
+        this.errors = errors;
+        this.ids = ids;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<ItemError> getErrors() {
+        return errors;
+    }
+
+    public List<Integer> getIds() {
+        return ids;
+    }
+
+    public static class ItemError {
+        private final int index;
+        private final int id;
+        private final int status;
+        private final String error;
+        private final List<String> details;
+
+        public ItemError(int index, int id, int status, String error, List<String> details) {
+            this.index = index;
+            this.id = id;
+            this.status = status;
+            this.error = error;
+            this.details = details;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public List<String> getDetails() {
+            return details;
+        }
+    }
+}
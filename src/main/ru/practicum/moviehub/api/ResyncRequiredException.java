@@ -0,0 +1,7 @@
+package ru.practicum.moviehub.api;
+
+public class ResyncRequiredException extends RuntimeException {
+    public ResyncRequiredException(String message) {
+        super(message);
+    }
+}
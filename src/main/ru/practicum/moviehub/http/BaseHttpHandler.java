@@ -1,6 +1,8 @@
 package ru.practicum.moviehub.http;
 
 import com.sun.net.httpserver.HttpExchange;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -8,17 +10,67 @@ import java.nio.charset.StandardCharsets;
 
 public abstract class BaseHttpHandler implements com.sun.net.httpserver.HttpHandler {
     protected static final String CT_JSON = "application/json; charset=UTF-8";
+    protected static final int MIN_COMPRESS_BYTES = 1024;
 
     protected void sendJson(HttpExchange ex, int status, String json) throws IOException {
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        sendJson(ex, status, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Тела меньше MIN_COMPRESS_BYTES не сжимаются: выигрыш меньше заголовков gzip
+    protected void sendJson(HttpExchange ex, int status, byte[] bytes) throws IOException {
+        ContentEncoding encoding = bytes.length < MIN_COMPRESS_BYTES ? ContentEncoding.IDENTITY : negotiate(ex);
         ex.getResponseHeaders().set("Content-Type", CT_JSON);
-        ex.sendResponseHeaders(status, bytes.length);
-        try (OutputStream os = ex.getResponseBody()) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+                os.flush();
+            }
+            return;
+        }
+        // сжатие идёт прямо в тело ответа, без второго буфера под сжатые байты
+        ex.getResponseHeaders().set("Content-Encoding", encoding.token());
+        ex.sendResponseHeaders(status, 0);
+        try (OutputStream os = encoding.wrap(ex.getResponseBody())) {
             os.write(bytes);
-            os.flush();
         }
     }
 
+    // Тело уже закодировано (например, сжатая копия из кэша) — отправляется как есть
+    protected void sendEncodedJson(HttpExchange ex, int status, byte[] body, ContentEncoding encoding)
+            throws IOException {
+        ex.getResponseHeaders().set("Content-Type", CT_JSON);
+        if (encoding != ContentEncoding.IDENTITY) {
+            ex.getResponseHeaders().set("Content-Encoding", encoding.token());
+        }
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    protected ContentEncoding negotiate(HttpExchange ex) {
+        ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return ContentEncoding.negotiate(ex.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    // Ответ без Content-Length (chunked): память не зависит от размера коллекции
+    protected void sendJsonArray(HttpExchange ex, int status, Iterable<Movie> movies) throws IOException {
+        ContentEncoding encoding = negotiate(ex);
+        ex.getResponseHeaders().set("Content-Type", CT_JSON);
+        if (encoding != ContentEncoding.IDENTITY) {
+            ex.getResponseHeaders().set("Content-Encoding", encoding.token());
+        }
+        ex.sendResponseHeaders(status, 0);
+        try (OutputStream os = encoding.wrap(ex.getResponseBody())) {
+            MovieJson.writeArray(movies, os);
+        }
+    }
+
+    protected void sendNotModified(HttpExchange ex) throws IOException {
+        ex.sendResponseHeaders(304, -1);
+    }
+
     protected void sendNoContent(HttpExchange ex) throws IOException {
         ex.getResponseHeaders().set("Content-Type", CT_JSON);
         ex.sendResponseHeaders(204, -1);
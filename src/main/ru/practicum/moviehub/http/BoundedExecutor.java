@@ -0,0 +1,104 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import ru.practicum.moviehub.api.ErrorResponse;
+import ru.practicum.moviehub.json.MovieJson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Пул с ограниченной очередью (0 — без очереди). HttpServer при отказе executor'а просто закрывает соединение,
+ * поэтому отклонённая задача передаётся отдельному потоку и выполняется там с флагом перегрузки,
+ * а OverloadFilter по этому флагу сразу отвечает 503, не читая тело и не вызывая обработчик.
+ * На диспетчере HttpServer'а (и на селекторе NIO) задачу выполнять нельзя: чтение заголовков и запись
+ * ответа медленному клиенту остановили бы приём всех соединений как раз под перегрузкой.
+ * Если не успевает и поток отказов, соединение закрывается без ответа.
+ */
+class BoundedExecutor extends ThreadPoolExecutor {
+    private static final ThreadLocal<Boolean> OVERLOADED = ThreadLocal.withInitial(() -> false);
+    // отказ — короткая запись 503, длинная очередь отказов не нужна
+    static final int REJECT_QUEUE = 64;
+
+    private final ThreadPoolExecutor rejecter;
+
+    BoundedExecutor(int poolSize, int queueLimit) {
+        this(poolSize, queueLimit, new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REJECT_QUEUE), new WorkerThreadFactory("movies-overload-"),
+                new ThreadPoolExecutor.AbortPolicy()));
+    }
+
+    private BoundedExecutor(int poolSize, int queueLimit, ThreadPoolExecutor rejecter) {
+        super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                queueLimit == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueLimit),
+                new WorkerThreadFactory("movies-worker-"), (task, executor) -> rejecter.execute(() -> {
+                    OVERLOADED.set(true);
+                    try {
+                        task.run();
+                    } finally {
+                        OVERLOADED.set(false);
+                    }
+                }));
+        this.rejecter = rejecter;
+    }
+
+    @Override
+    public void shutdown() {
+        rejecter.shutdown();
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        rejecter.shutdownNow();
+        return super.shutdownNow();
+    }
+
+    static class OverloadFilter extends Filter {
+        private static final byte[] BODY = MovieJson.toJson(
+                new ErrorResponse(503, "Сервер перегружен, повторите запрос позже"));
+
+        @Override
+        public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+            if (!OVERLOADED.get()) {
+                chain.doFilter(ex);
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Type", BaseHttpHandler.CT_JSON);
+            ex.getResponseHeaders().set("Retry-After", "1");
+            ex.getResponseHeaders().set("Connection", "close");
+            ex.sendResponseHeaders(503, BODY.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(BODY);
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Отклонение запросов при переполнении очереди";
+        }
+    }
+
+    private static class WorkerThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
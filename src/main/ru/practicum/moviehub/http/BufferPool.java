@@ -0,0 +1,42 @@
+package ru.practicum.moviehub.http;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Пул direct-буферов одного размера: выделение direct-памяти дорогое, а освобождается она только сборщиком.
+ * Всего direct-буферов не больше maxBuffers; сверх этого выдаются обычные буферы в куче, которые
+ * после отправки просто отдаются сборщику. Ждать свободного буфера нельзя: его держат очереди
+ * соединений, а клиенты, которые не читают, могут не вернуть их никогда.
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) return buffer;
+        if (allocated.incrementAndGet() <= maxBuffers) return ByteBuffer.allocateDirect(bufferSize);
+        allocated.decrementAndGet();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    // direct-буферов не больше maxBuffers, поэтому все они помещаются в очередь свободных
+    void release(ByteBuffer buffer) {
+        if (buffer.isDirect()) free.offer(buffer.clear());
+    }
+
+    // Сколько direct-буферов выделено за всё время, включая выданные сейчас
+    int allocated() {
+        return allocated.get();
+    }
+}
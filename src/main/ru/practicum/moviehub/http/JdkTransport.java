@@ -0,0 +1,40 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Транспорт на com.sun.net.httpserver.HttpServer; executor == null — обработка на потоке-диспетчере
+class JdkTransport implements Transport {
+    private final HttpServer server;
+
+    JdkTransport(int port, int backlog, Executor executor) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), backlog);
+        server.setExecutor(executor);
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler, List<Filter> filters) {
+        server.createContext(path, handler).getFilters().addAll(filters);
+    }
+
+    @Override
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import ru.practicum.moviehub.metrics.Metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+/*
+ * Первый фильтр контекста: считает время, статус и байты тел запроса и ответа.
+ * Ответ считается по исходному потоку, то есть уже после сжатия. Тело запроса с Content-Length
+ * берётся из заголовка, считающий поток нужен только для chunked. Метку маршрута отдаёт обработчик
+ * по результату своей маршрутизации, путь второй раз не сопоставляется.
+ */
+class MetricsFilter extends Filter {
+    private final Metrics metrics;
+    private final Function<HttpExchange, String> routeLabel;
+
+    MetricsFilter(Metrics metrics, Function<HttpExchange, String> routeLabel) {
+        this.metrics = metrics;
+        this.routeLabel = routeLabel;
+    }
+
+    @Override
+    public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        long declared = declaredLength(ex);
+        CountingInputStream in = declared < 0 ? new CountingInputStream(ex.getRequestBody()) : null;
+        CountingOutputStream out = new CountingOutputStream(ex.getResponseBody());
+        ex.setStreams(in, out);
+        try {
+            chain.doFilter(ex);
+        } finally {
+            int status = ex.getResponseCode();
+            metrics.route(routeLabel.apply(ex)).record(status < 0 ? 500 : status, System.nanoTime() - start,
+                    in == null ? declared : in.count, out.count);
+        }
+    }
+
+    // Длина тела запроса по заголовкам: 0 без тела, -1 — неизвестна (chunked или неразборчивый Content-Length)
+    private static long declaredLength(HttpExchange ex) {
+        String length = ex.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) return ex.getRequestHeaders().containsKey("Transfer-Encoding") ? -1 : 0;
+        try {
+            long value = Long.parseLong(length.trim());
+            return value < 0 ? -1 : value;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Метрики HTTP-запросов";
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import ru.practicum.moviehub.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+// GET /metrics в текстовом формате Prometheus
+class MetricsHandler implements HttpHandler {
+    private static final String CT_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    MetricsHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+                ex.getResponseHeaders().set("Allow", "GET");
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringWriter text = new StringWriter(4096);
+            metrics.writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", CT_PROMETHEUS);
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+}
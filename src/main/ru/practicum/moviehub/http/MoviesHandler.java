@@ -1,131 +1,685 @@
 package ru.practicum.moviehub.http;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.ChangeFeed;
+import ru.practicum.moviehub.store.MovieQuery;
 import ru.practicum.moviehub.store.MoviesStore;
+import ru.practicum.moviehub.store.SnapshotMoviesStore;
+import ru.practicum.moviehub.api.BatchResponse;
 import ru.practicum.moviehub.api.ErrorResponse;
 import ru.practicum.moviehub.api.MovieAlreadyExistsException;
 import ru.practicum.moviehub.api.MovieNotFoundException;
+import ru.practicum.moviehub.api.ResyncRequiredException;
+import ru.practicum.moviehub.json.InvalidJsonException;
+import ru.practicum.moviehub.json.MovieJson;
 
 import com.sun.net.httpserver.HttpExchange;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Year;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class MoviesHandler extends BaseHttpHandler {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int BATCH_CHUNK = 1000;
+    private static final String CT_NDJSON = "application/x-ndjson";
+    private static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final int ESTIMATED_MOVIE_JSON_BYTES = 64;
+    // ключ тела полного списка в SnapshotMoviesStore.memoize
+    private static final Object FULL_LIST = new Object();
+    // стоимость для ограничителя частоты: во сколько обычных запросов обходится дорогой
+    private static final int FULL_LIST_COST = 20;
+    private static final int BATCH_COST = 10;
+    // последнее слово поиска короче — поиск считается неселективным и оценивается как весь каталог
+    private static final int MIN_SELECTIVE_PREFIX = 3;
+    private static final String CT_EVENT_STREAM = "text/event-stream";
+    private static final String CHANGE_SEQ_HEADER = "X-Change-Seq";
+    private static final int DEFAULT_CHANGES_LIMIT = 1000;
+    private static final int MAX_CHANGES_LIMIT = 10_000;
+    private static final long MAX_CHANGES_WAIT_SECONDS = 60;
+    // комментарий в SSE-потоке без событий: прокси не рвут соединение, а отвалившийся клиент обнаруживается
+    private static final long SSE_HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final byte[] SSE_PING = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+    // тела постоянных ошибок сериализуются один раз при загрузке класса
+    private static final byte[] ALREADY_EXISTS = errorBody(409, "Фильм уже есть в списке");
+    private static final byte[] NOT_FOUND = errorBody(404, "Такого фильма нет в списке");
+    private static final byte[] BAD_ID = errorBody(400, "Некорректный ID");
+    private static final byte[] BAD_PARAM = errorBody(400, "Некорректный параметр запроса");
+    private static final byte[] UNKNOWN_ENDPOINT = errorBody(404, "Неизвестный эндпоинт");
+    private static final byte[] METHOD_NOT_ALLOWED = errorBody(405, "Метод не разрешён для этого пути");
+    private static final byte[] BAD_YEAR = errorBody(400, "Некорректный параметр запроса — 'year'");
+    private static final byte[] BAD_YEAR_RANGE = errorBody(400, "Некорректный параметр запроса — 'yearFrom'/'yearTo'");
+    private static final byte[] BAD_PAGE = errorBody(400, "Некорректный параметр запроса — 'limit'/'offset'/'after'");
+    private static final byte[] UNSUPPORTED_MEDIA_TYPE = errorBody(415, "Unsupported Media Type");
+    private static final byte[] PARSE_ERROR = errorBody(400, "Ошибка парсинга JSON");
+    private static final byte[] BAD_QUERY = errorBody(400, "Некорректный параметр запроса — 'sort'/'order'/'limit'/'offset'/'after'");
+    private static final byte[] BAD_CHANGES = errorBody(400, "Некорректный параметр запроса — 'since'/'limit'/'wait'");
+    private static final byte[] RESYNC_REQUIRED = MovieJson.toJson(new ErrorResponse(410, "Требуется полная синхронизация",
+            List.of("загрузите GET /movies и продолжайте с since из заголовка " + CHANGE_SEQ_HEADER)));
+
     private final MoviesStore moviesStore;
+    private final ResponseCache cache;
     private final Gson gson = new Gson();
+    private final TypeAdapter<JsonElement> jsonElements = gson.getAdapter(JsonElement.class);
+    // сколько запросов могут одновременно ждать изменений; null — без ограничения
+    private volatile Semaphore changeWaitSlots;
+    private final Router router = new Router()
+            .add("GET", "/movies", (ex, id) -> handleList(ex))
+            .add("GET", "/movies/changes", (ex, id) -> handleChanges(ex))
+            .add("GET", "/movies/{id}", this::handleGetById)
+            .add("POST", "/movies", (ex, id) -> handlePost(ex))
+            .add("POST", "/movies/batch", (ex, id) -> handleBatchPost(ex))
+            .add("DELETE", "/movies/batch", (ex, id) -> handleBatchDelete(ex))
+            .add("DELETE", "/movies/{id}", this::handleDelete);
 
     public MoviesHandler(MoviesStore store) {
+        this(store, DEFAULT_CACHE_BYTES);
+    }
+
+    public MoviesHandler(MoviesStore store, long cacheBytes) {
         this.moviesStore = store;
+        this.cache = new ResponseCache(cacheBytes);
     }
 
     @Override
     public void handle(HttpExchange ex) throws IOException {
         String method = ex.getRequestMethod();
         String path = ex.getRequestURI().getPath();
-        String query = ex.getRequestURI().getQuery();
 
         try {
-            if (method.equalsIgnoreCase("GET")) handleGet(ex, path, query);
-            else if (method.equalsIgnoreCase("POST")) handlePost(ex, path);
-            else if (method.equalsIgnoreCase("DELETE")) handleDelete(ex, path);
-            else sendJson(ex, 405, gson.toJson(new ErrorResponse(405, "Метод не разрешён для этого пути")));
+            if (!router.dispatch(ex, method, path)) handleUnrouted(ex, method, path);
         } catch (MovieAlreadyExistsException e) {
-            sendJson(ex, 409, gson.toJson(new ErrorResponse(409, "Фильм уже есть в списке")));
+            sendJson(ex, 409, ALREADY_EXISTS);
         } catch (MovieNotFoundException e) {
-            sendJson(ex, 404, gson.toJson(new ErrorResponse(404, "Такого фильма нет в списке")));
+            sendJson(ex, 404, NOT_FOUND);
         } catch (NumberFormatException e) {
-            sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Некорректный ID")));
+            sendJson(ex, 400, BAD_ID);
+        } catch (IllegalArgumentException e) {
+            sendJson(ex, 400, BAD_PARAM);
         } catch (Exception e) {
-            sendJson(ex, 500, gson.toJson(new ErrorResponse(500, e.getMessage())));
+            sendJson(ex, 500, MovieJson.toJson(new ErrorResponse(500, e.getMessage())));
         }
     }
 
-    private void handleGet(HttpExchange ex, String path, String query) throws IOException {
-        if ("/movies".equals(path)) {
-            if (query != null && query.startsWith("year=")) {
-                String yearParam = query.substring(5);
-                try {
-                    int year = Integer.parseInt(yearParam);
-                    sendJson(ex, 200, gson.toJson(moviesStore.getMoviesByYear(year)));
-                } catch (NumberFormatException e) {
-                    sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Некорректный параметр запроса — 'year'")));
-                }
-            } else if (query == null) {
-                sendJson(ex, 200, gson.toJson(moviesStore.getAllMovies()));
+    // Ожидание изменений держит поток обработчика. Без своих потоков на запрос (dispatcher, пул)
+    // число ожидающих ограничивается; сверх него long-poll и SSE отвечают сразу, как обычный опрос
+    void limitChangeWaits(int slots) {
+        changeWaitSlots = new Semaphore(Math.max(0, slots));
+    }
+
+    // Вызывается MetricsFilter один раз после обработки запроса
+    String routeLabel(HttpExchange ex) {
+        return router.takeLabel(ex.getRequestMethod(), ex.getRequestURI().getPath());
+    }
+
+    /*
+     * Стоимость для ограничителя частоты считается по числу фильмов, которые отдаст ветка handleList:
+     * ответ на весь каталог (в том числе с неизвестными параметрами, limit не меньше каталога или
+     * диапазоном лет на весь каталог) стоит FULL_LIST_COST, меньший — по токену на DEFAULT_PAGE_SIZE фильмов.
+     * Некорректные параметры дают 400 и стоят как обычный запрос.
+     */
+    int admissionCost(HttpExchange ex) {
+        String path = ex.getRequestURI().getPath();
+        if (path.equals("/movies/batch")) return BATCH_COST;
+        if (!path.equals("/movies") || !ex.getRequestMethod().equalsIgnoreCase("GET")) return 1;
+        int size = moviesStore.size();
+        long rows;
+        try {
+            rows = estimateRows(QueryParams.parse(ex.getRequestURI().getRawQuery()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+        if (rows == Long.MAX_VALUE || (size > 0 && rows >= size)) return FULL_LIST_COST;
+        return (int) Math.max(1, Math.min(FULL_LIST_COST, (rows + DEFAULT_PAGE_SIZE - 1) / DEFAULT_PAGE_SIZE));
+    }
+
+    // Оценка числа фильмов в ответе GET /movies с такими параметрами; Long.MAX_VALUE — весь каталог.
+    // Диапазон лет считается точно по индексу; поиск по названию точно посчитать можно только им самим,
+    // поэтому поиск с коротким последним словом оценивается как весь каталог, с длинным — как страница
+    private long estimateRows(Map<String, String> params) {
+        boolean sorted = params.containsKey("sort") || params.containsKey("order");
+        boolean years = params.containsKey("year") || params.containsKey("yearFrom") || params.containsKey("yearTo");
+        boolean title = params.containsKey("title");
+        boolean paged = params.containsKey("offset") || params.containsKey("after");
+        long rows = Long.MAX_VALUE;
+        if (params.containsKey("limit")) {
+            rows = Integer.parseInt(params.get("limit"));
+        } else if (sorted || (paged && !years && !title)) {
+            rows = DEFAULT_PAGE_SIZE;
+        }
+        if (years) {
+            int yearFrom = Integer.MIN_VALUE;
+            int yearTo = Integer.MAX_VALUE;
+            if (params.containsKey("year")) {
+                yearFrom = Integer.parseInt(params.get("year"));
+                yearTo = yearFrom;
+            }
+            yearFrom = Math.max(yearFrom, parseIntOrDefault(params.get("yearFrom"), Integer.MIN_VALUE));
+            yearTo = Math.min(yearTo, parseIntOrDefault(params.get("yearTo"), Integer.MAX_VALUE));
+            rows = Math.min(rows, moviesStore.countByYears(yearFrom, yearTo));
+        } else if (title && selectiveTitle(params.get("title"))) {
+            rows = Math.min(rows, DEFAULT_PAGE_SIZE);
+        }
+        return rows;
+    }
+
+    private static boolean selectiveTitle(String title) {
+        String prefix = "";
+        for (String word : title.trim().split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty()) prefix = word;
+        }
+        return prefix.length() >= MIN_SELECTIVE_PREFIX;
+    }
+
+    private void handleUnrouted(HttpExchange ex, String method, String path) throws IOException {
+        boolean itemPath = path.startsWith("/movies/");
+        if (itemPath && (method.equalsIgnoreCase("GET") || method.equalsIgnoreCase("DELETE"))) {
+            sendJson(ex, 400, BAD_ID);
+        } else if (method.equalsIgnoreCase("GET")) {
+            sendJson(ex, 404, UNKNOWN_ENDPOINT);
+        } else {
+            sendJson(ex, 405, METHOD_NOT_ALLOWED);
+        }
+    }
+
+    private void handleList(HttpExchange ex) throws IOException {
+        Map<String, String> params = QueryParams.parse(ex.getRequestURI().getRawQuery());
+        if (isCombinedQuery(params)) {
+            handleQuery(ex, params);
+        } else if (params.containsKey("year")) {
+            try {
+                int year = Integer.parseInt(params.get("year"));
+                sendCachedJson(ex, "year:" + year, () -> MovieJson.toJson(moviesStore.getMoviesByYear(year)));
+            } catch (NumberFormatException e) {
+                sendJson(ex, 400, BAD_YEAR);
+            }
+        } else if (params.containsKey("title")) {
+            String title = params.get("title");
+            sendCachedJson(ex, "title:" + title, () -> MovieJson.toJson(moviesStore.searchByTitle(title)));
+        } else if (params.containsKey("yearFrom") || params.containsKey("yearTo")) {
+            try {
+                int yearFrom = parseIntOrDefault(params.get("yearFrom"), Integer.MIN_VALUE);
+                int yearTo = parseIntOrDefault(params.get("yearTo"), Integer.MAX_VALUE);
+                sendCachedJson(ex, "years:" + yearFrom + ":" + yearTo,
+                        () -> MovieJson.toJson(moviesStore.getMoviesByYearRange(yearFrom, yearTo)));
+            } catch (NumberFormatException e) {
+                sendJson(ex, 400, BAD_YEAR_RANGE);
+            }
+        } else if (params.containsKey("limit") || params.containsKey("offset") || params.containsKey("after")) {
+            int limit;
+            int offset;
+            Integer after;
+            try {
+                limit = parseIntOrDefault(params.get("limit"), DEFAULT_PAGE_SIZE);
+                offset = parseIntOrDefault(params.get("offset"), 0);
+                after = params.containsKey("after") ? Integer.valueOf(params.get("after")) : null;
+            } catch (NumberFormatException e) {
+                sendJson(ex, 400, BAD_PAGE);
+                return;
+            }
+            // курсор after=<id последнего фильма> со смещением не сочетается
+            if (limit < 1 || offset < 0 || (after != null && params.containsKey("offset"))) {
+                sendJson(ex, 400, BAD_PAGE);
+                return;
+            }
+            ex.getResponseHeaders().set("X-Total-Count", String.valueOf(moviesStore.size()));
+            if (after != null) {
+                int cursor = after;
+                sendCachedJson(ex, "after:" + cursor + ":" + limit,
+                        () -> MovieJson.toJson(moviesStore.getMoviesAfter(cursor, limit)));
             } else {
-                sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Некорректный параметр запроса")));
+                sendCachedJson(ex, "page:" + offset + ":" + limit, () -> MovieJson.toJson(moviesStore.getMovies(offset, limit)));
             }
-        } else if (path.matches("/movies/\\d+")) {
-            int id = Integer.parseInt(path.split("/")[2]);
-            sendJson(ex, 200, gson.toJson(moviesStore.findMovie(id)));
-        } else if (path.matches("/movies/.*")) {
-            sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Некорректный ID")));
+        } else if (moviesStore instanceof SnapshotMoviesStore snapshots) {
+            ex.getResponseHeaders().set(CHANGE_SEQ_HEADER, Long.toString(moviesStore.changes().lastSeq()));
+            // тело полного списка строится один раз на снимок каталога, независимо от объёма кэша
+            sendEntry(ex, snapshots.memoize(FULL_LIST, all -> ResponseCache.detached(MovieJson.toJson(all))));
+        } else if (cache.accepts((long) moviesStore.size() * ESTIMATED_MOVIE_JSON_BYTES)) {
+            // номер берётся до выгрузки: все изменения до него в ответе уже есть
+            ex.getResponseHeaders().set(CHANGE_SEQ_HEADER, Long.toString(moviesStore.changes().lastSeq()));
+            sendCachedJson(ex, "all", () -> MovieJson.toJson(moviesStore.getAllMovies()));
         } else {
-            sendJson(ex, 404, gson.toJson(new ErrorResponse(404, "Неизвестный эндпоинт")));
+            ex.getResponseHeaders().set(CHANGE_SEQ_HEADER, Long.toString(moviesStore.changes().lastSeq()));
+            // каталог не помещается в кэш: пишем в ответ по одному фильму, без промежуточного списка и строки
+            sendJsonArray(ex, 200, moviesStore.moviesView());
         }
     }
 
-    private void handlePost(HttpExchange ex, String path) throws IOException {
-        if (!"/movies".equals(path)) {
-            sendJson(ex, 405, gson.toJson(new ErrorResponse(405, "Метод не разрешён для этого пути")));
+    // Сортировка, несколько фильтров сразу или фильтр с окном; одиночные фильтры обрабатываются, как раньше
+    private static boolean isCombinedQuery(Map<String, String> params) {
+        if (params.containsKey("sort") || params.containsKey("order")) return true;
+        boolean years = params.containsKey("year") || params.containsKey("yearFrom") || params.containsKey("yearTo");
+        boolean title = params.containsKey("title");
+        boolean window = params.containsKey("limit") || params.containsKey("offset") || params.containsKey("after");
+        return (years && title) || ((years || title) && window);
+    }
+
+    /*
+     * Фильтры year, yearFrom/yearTo и title складываются через И. sort=id|year|title, order=asc|desc
+     * (order без sort сортирует по id). С сортировкой limit по умолчанию DEFAULT_PAGE_SIZE,
+     * а offset + limit не больше MovieQuery.MAX_WINDOW; без сортировки — все подходящие фильмы.
+     * Курсор after — только у выдачи без фильтров и сортировки.
+     */
+    private void handleQuery(HttpExchange ex, Map<String, String> params) throws IOException {
+        MovieQuery query = parseQuery(params);
+        if (query == null) {
+            sendJson(ex, 400, BAD_QUERY);
+            return;
+        }
+        if (query.getYearFrom() > query.getYearTo()) {
+            sendCachedJson(ex, "empty", () -> MovieJson.toJson(List.<Movie>of()));
+            return;
+        }
+        // название последним: в нём самом может быть двоеточие
+        String key = "query:" + query.getYearFrom() + ":" + query.getYearTo() + ":" + query.getSort()
+                + ":" + query.isDescending() + ":" + query.getOffset() + ":" + query.getLimit() + ":" + query.getTitle();
+        sendCachedJson(ex, key, () -> MovieJson.toJson(moviesStore.query(query)));
+    }
+
+    // null, если параметры некорректны
+    private static MovieQuery parseQuery(Map<String, String> params) {
+        if (params.containsKey("after")) return null;
+        String sortValue = params.get("sort");
+        MovieQuery.Sort sort = parseSort(sortValue, params.containsKey("order"));
+        Boolean descending = parseDescending(params.get("order"));
+        if ((sortValue != null && sort == null) || descending == null) return null;
+        int yearFrom = Integer.MIN_VALUE;
+        int yearTo = Integer.MAX_VALUE;
+        int offset;
+        int limit;
+        try {
+            if (params.containsKey("year")) {
+                yearFrom = Integer.parseInt(params.get("year"));
+                yearTo = yearFrom;
+            }
+            yearFrom = Math.max(yearFrom, parseIntOrDefault(params.get("yearFrom"), Integer.MIN_VALUE));
+            yearTo = Math.min(yearTo, parseIntOrDefault(params.get("yearTo"), Integer.MAX_VALUE));
+            offset = parseIntOrDefault(params.get("offset"), 0);
+            limit = parseIntOrDefault(params.get("limit"), sort == null ? Integer.MAX_VALUE : DEFAULT_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (offset < 0 || limit < 1 || (sort != null && (long) offset + limit > MovieQuery.MAX_WINDOW)) return null;
+        return new MovieQuery()
+                .setYears(yearFrom, yearTo)
+                .setTitle(params.get("title"))
+                .setSort(sort, descending)
+                .setWindow(offset, limit);
+    }
+
+    // null — без сортировки или неизвестное значение
+    private static MovieQuery.Sort parseSort(String value, boolean ordered) {
+        if (value == null) return ordered ? MovieQuery.Sort.ID : null;
+        return switch (value.toLowerCase()) {
+            case "id" -> MovieQuery.Sort.ID;
+            case "year" -> MovieQuery.Sort.YEAR;
+            case "title" -> MovieQuery.Sort.TITLE;
+            default -> null;
+        };
+    }
+
+    // null — неизвестное значение
+    private static Boolean parseDescending(String value) {
+        if (value == null) return false;
+        return switch (value.toLowerCase()) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> null;
+        };
+    }
+
+    /*
+     * Изменения каталога после since. Без wait ответ сразу, с wait=N (секунды) — long-poll до первого
+     * изменения; с Accept: text/event-stream — поток SSE, продолжение после обрыва по Last-Event-ID.
+     * Если since уже вытеснен из журнала — 410, клиент заново выгружает каталог.
+     */
+    private void handleChanges(HttpExchange ex) throws IOException {
+        Map<String, String> params = QueryParams.parse(ex.getRequestURI().getRawQuery());
+        ChangeFeed feed = moviesStore.changes();
+        String accept = ex.getRequestHeaders().getFirst("Accept");
+        boolean stream = accept != null && accept.contains(CT_EVENT_STREAM);
+        long since;
+        int limit;
+        long waitSeconds;
+        try {
+            String lastEventId = stream ? ex.getRequestHeaders().getFirst("Last-Event-ID") : null;
+            String sinceParam = lastEventId != null ? lastEventId : params.get("since");
+            since = sinceParam == null ? feed.lastSeq() : Long.parseLong(sinceParam.trim());
+            limit = parseIntOrDefault(params.get("limit"), DEFAULT_CHANGES_LIMIT);
+            waitSeconds = params.containsKey("wait") ? Long.parseLong(params.get("wait")) : 0;
+        } catch (NumberFormatException e) {
+            sendJson(ex, 400, BAD_CHANGES);
+            return;
+        }
+        if (limit < 1 || limit > MAX_CHANGES_LIMIT || waitSeconds < 0 || waitSeconds > MAX_CHANGES_WAIT_SECONDS) {
+            sendJson(ex, 400, BAD_CHANGES);
             return;
         }
+        long waitNanos = TimeUnit.SECONDS.toNanos(waitSeconds);
 
+        Semaphore slots = changeWaitSlots;
+        boolean blocking = (stream || waitNanos > 0) && (slots == null || slots.tryAcquire());
+        try {
+            if (stream && blocking) {
+                streamChanges(ex, feed, since, limit);
+            } else {
+                List<ChangeFeed.Event> events = blocking
+                        ? feed.await(since, limit, waitNanos)
+                        : feed.read(since, limit);
+                long next = events.isEmpty() ? since : events.get(events.size() - 1).seq();
+                sendJson(ex, 200, MovieJson.toJson(next, events));
+            }
+        } catch (ResyncRequiredException e) {
+            ex.getResponseHeaders().set(CHANGE_SEQ_HEADER, Long.toString(feed.lastSeq()));
+            sendJson(ex, 410, RESYNC_REQUIRED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание изменений прервано", e);
+        } finally {
+            if (blocking && slots != null) slots.release();
+        }
+    }
+
+    // Поток идёт, пока клиент не отключится или сервер не остановится. Отставший клиент получает
+    // событие resync, и поток закрывается
+    private void streamChanges(HttpExchange ex, ChangeFeed feed, long since, int limit)
+            throws IOException, InterruptedException {
+        feed.read(since, 0);
+        ex.getResponseHeaders().set("Content-Type", CT_EVENT_STREAM + "; charset=utf-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(200, 0);
+        try (OutputStream os = ex.getResponseBody()) {
+            // заголовки уходят клиенту сразу, не дожидаясь первого события
+            os.flush();
+            long last = since;
+            while (true) {
+                List<ChangeFeed.Event> events;
+                try {
+                    events = feed.await(last, limit, SSE_HEARTBEAT_NANOS);
+                } catch (ResyncRequiredException e) {
+                    os.write("event: resync\ndata: ".getBytes(StandardCharsets.US_ASCII));
+                    os.write(RESYNC_REQUIRED);
+                    os.write(new byte[]{'\n', '\n'});
+                    return;
+                }
+                if (events.isEmpty()) os.write(SSE_PING);
+                for (ChangeFeed.Event event : events) {
+                    String head = "id: " + event.seq() + "\nevent: "
+                            + (event.kind() == ChangeFeed.Kind.ADDED ? "added" : "deleted") + "\ndata: ";
+                    os.write(head.getBytes(StandardCharsets.US_ASCII));
+                    os.write(MovieJson.toJson(event));
+                    os.write(new byte[]{'\n', '\n'});
+                    last = event.seq();
+                }
+                os.flush();
+            }
+        }
+    }
+
+    private void handleGetById(HttpExchange ex, int id) throws IOException {
+        sendCachedJson(ex, "id:" + id, () -> MovieJson.toJson(moviesStore.findMovie(id)));
+    }
+
+    // Версия берётся до построения ответа: если каталог изменится по ходу, запись сразу окажется устаревшей.
+    // key строится из параметров, которые маршрут действительно использует: лишние параметры запроса
+    // не плодят копии одного и того же тела
+    private void sendCachedJson(HttpExchange ex, String key, Supplier<byte[]> render) throws IOException {
+        long version = moviesStore.version();
+        ResponseCache.Entry entry = cache.get(key, version);
+        if (entry == null) {
+            entry = cache.put(key, version, render.get());
+        }
+        sendEntry(ex, entry);
+    }
+
+    private void sendEntry(HttpExchange ex, ResponseCache.Entry entry) throws IOException {
+        ContentEncoding encoding = entry.body().length < MIN_COMPRESS_BYTES ? ContentEncoding.IDENTITY : negotiate(ex);
+        String etag = entry.etag(encoding);
+        ex.getResponseHeaders().set("ETag", etag);
+        if (etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            sendNotModified(ex);
+        } else {
+            sendEncodedJson(ex, 200, entry.body(encoding), encoding);
+        }
+    }
+
+    private static byte[] errorBody(int status, String message) {
+        return MovieJson.toJson(new ErrorResponse(status, message));
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static int parseIntOrDefault(String value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private void handlePost(HttpExchange ex) throws IOException {
         if (!"application/json".equalsIgnoreCase(ex.getRequestHeaders().getFirst("Content-Type"))) {
-            sendJson(ex, 415, gson.toJson(new ErrorResponse(415, "Unsupported Media Type")));
+            sendJson(ex, 415, UNSUPPORTED_MEDIA_TYPE);
             return;
         }
 
-        String requestBody = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
         Movie movie;
         try {
-            movie = gson.fromJson(requestBody, Movie.class);
-        } catch (Exception e) {
-            sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Ошибка парсинга JSON")));
+            movie = MovieJson.parseMovie(ex.getRequestBody().readAllBytes());
+        } catch (InvalidJsonException e) {
+            sendJson(ex, 400, PARSE_ERROR);
             return;
         }
+        if (movie == null) {
+            sendJson(ex, 400, PARSE_ERROR);
+            return;
+        }
+
+        List<String> details = validate(movie);
+        if (!details.isEmpty()) {
+            sendJson(ex, 422, MovieJson.toJson(new ErrorResponse(422, "Ошибка валидации", details)));
+            return;
+        }
+
+        if (moviesStore.generatesIds()) {
+            // id из тела игнорируется, клиент узнаёт выданный id из ответа
+            movie = moviesStore.addWithGeneratedId(movie.getTitle(), movie.getYear());
+            ex.getResponseHeaders().set("Location", "/movies/" + movie.getId());
+        } else {
+            moviesStore.addMovies(movie);
+        }
+        sendJson(ex, 201, MovieJson.toJson(movie));
+    }
 
+    private List<String> validate(Movie movie) {
         List<String> details = new ArrayList<>();
-        boolean valid = true;
         int currentYear = Year.now().getValue();
 
         if (movie.getTitle() == null || movie.getTitle().isBlank()) {
-            valid = false;
             details.add("название не должно быть пустым");
         }
         if (movie.getTitle() != null && movie.getTitle().length() > 100) {
-            valid = false;
             details.add("название не должно превышать 100 символов");
         }
         if (movie.getYear() < 1888 || movie.getYear() > currentYear + 1) {
-            valid = false;
             details.add("год должен быть между 1888 и " + (currentYear + 1));
         }
+        return details;
+    }
+
+    /*
+     * Тело — JSON-массив фильмов или NDJSON (по фильму в строке). Элементы читаются потоково
+     * и добавляются пачками по BATCH_CHUNK, так что память не растёт с размером импорта.
+     * Элемент с полем не того типа получает 400 в errors; синтаксическая ошибка самого потока
+     * прерывает импорт с 400, а пачки, добавленные до неё, остаются в каталоге.
+     * С выдачей id сервером id из тела игнорируются, как у POST /movies, дубликаты по названию и году
+     * отклоняются с 409, а выданные id возвращаются в поле ids.
+     */
+    private void handleBatchPost(HttpExchange ex) throws IOException {
+        Boolean ndjson = batchFormat(ex);
+        if (ndjson == null) return;
+
+        List<BatchResponse.ItemError> errors = new ArrayList<>();
+        List<Integer> ids = moviesStore.generatesIds() ? new ArrayList<>() : null;
+        List<Movie> chunk = new ArrayList<>(BATCH_CHUNK);
+        int[] chunkIndexes = new int[BATCH_CHUNK];
+        int succeeded = 0;
+        int index = 0;
+        try (JsonReader reader = openBatchReader(ex, ndjson)) {
+            while (reader.hasNext()) {
+                // элемент читается целиком, поэтому поле не того типа портит только его, а не весь поток
+                JsonElement element = jsonElements.read(reader);
+                Movie movie;
+                try {
+                    movie = gson.fromJson(element, Movie.class);
+                } catch (JsonSyntaxException e) {
+                    movie = null;
+                }
+                if (movie == null) {
+                    errors.add(new BatchResponse.ItemError(index, 0, 400, "Ошибка парсинга JSON", null));
+                } else {
+                    List<String> details = validate(movie);
+                    if (details.isEmpty()) {
+                        chunkIndexes[chunk.size()] = index;
+                        chunk.add(movie);
+                    } else {
+                        errors.add(new BatchResponse.ItemError(index, movie.getId(), 422, "Ошибка валидации", details));
+                    }
+                }
+                index++;
+                if (chunk.size() == BATCH_CHUNK) succeeded += flushBatchPost(chunk, chunkIndexes, errors, ids);
+            }
+            if (!ndjson) reader.endArray();
+        } catch (IOException | IllegalStateException e) {
+            succeeded += flushBatchPost(chunk, chunkIndexes, errors, ids);
+            sendJson(ex, 400, MovieJson.toJson(new ErrorResponse(400, "Ошибка парсинга JSON",
+                    List.of("элемент " + index, "добавлено до ошибки: " + succeeded))));
+            return;
+        }
+        succeeded += flushBatchPost(chunk, chunkIndexes, errors, ids);
+        // конфликты id обнаруживаются позже ошибок валидации — возвращаем в порядке элементов
+        errors.sort(Comparator.comparingInt(BatchResponse.ItemError::getIndex));
+        sendJson(ex, 200, MovieJson.toJson(new BatchResponse(succeeded, errors, ids)));
+    }
+
+    // ids не null — id выдаёт сервер, выданные id добавляются в ids
+    private int flushBatchPost(List<Movie> chunk, int[] chunkIndexes, List<BatchResponse.ItemError> errors,
+                               List<Integer> ids) {
+        if (chunk.isEmpty()) return 0;
+        int succeeded = 0;
+        if (ids != null) {
+            Movie[] added = moviesStore.addAllWithGeneratedIds(chunk);
+            for (int i = 0; i < added.length; i++) {
+                if (added[i] != null) {
+                    succeeded++;
+                    ids.add(added[i].getId());
+                } else {
+                    errors.add(new BatchResponse.ItemError(chunkIndexes[i], 0, 409, "Фильм уже есть в списке", null));
+                }
+            }
+            chunk.clear();
+            return succeeded;
+        }
+        boolean[] added = moviesStore.addAll(chunk);
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) {
+                succeeded++;
+            } else {
+                errors.add(new BatchResponse.ItemError(chunkIndexes[i], chunk.get(i).getId(), 409,
+                        "Фильм уже есть в списке", null));
+            }
+        }
+        chunk.clear();
+        return succeeded;
+    }
 
-        if (!valid) {
-            sendJson(ex, 422, gson.toJson(new ErrorResponse(422, "Ошибка валидации", details)));
+    // Тело — JSON-массив id или NDJSON (по id в строке)
+    private void handleBatchDelete(HttpExchange ex) throws IOException {
+        Boolean ndjson = batchFormat(ex);
+        if (ndjson == null) return;
+
+        List<BatchResponse.ItemError> errors = new ArrayList<>();
+        int[] chunk = new int[BATCH_CHUNK];
+        int size = 0;
+        int succeeded = 0;
+        int index = 0;
+        try (JsonReader reader = openBatchReader(ex, ndjson)) {
+            while (reader.hasNext()) {
+                chunk[size++] = reader.nextInt();
+                index++;
+                if (size == BATCH_CHUNK) {
+                    succeeded += flushBatchDelete(chunk, size, index - size, errors);
+                    size = 0;
+                }
+            }
+            if (!ndjson) reader.endArray();
+        } catch (NumberFormatException | IOException | IllegalStateException e) {
+            succeeded += flushBatchDelete(chunk, size, index - size, errors);
+            sendJson(ex, 400, MovieJson.toJson(new ErrorResponse(400, "Ошибка парсинга JSON",
+                    List.of("элемент " + index, "удалено до ошибки: " + succeeded))));
             return;
         }
+        succeeded += flushBatchDelete(chunk, size, index - size, errors);
+        sendJson(ex, 200, MovieJson.toJson(new BatchResponse(succeeded, errors)));
+    }
 
-        moviesStore.addMovies(movie);
-        sendJson(ex, 201, gson.toJson(movie));
+    private int flushBatchDelete(int[] chunk, int size, int firstIndex, List<BatchResponse.ItemError> errors) {
+        if (size == 0) return 0;
+        boolean[] deleted = moviesStore.deleteAll(Arrays.copyOf(chunk, size));
+        int succeeded = 0;
+        for (int i = 0; i < size; i++) {
+            if (deleted[i]) {
+                succeeded++;
+            } else {
+                errors.add(new BatchResponse.ItemError(firstIndex + i, chunk[i], 404, "Такого фильма нет в списке", null));
+            }
+        }
+        return succeeded;
     }
 
-    private void handleDelete(HttpExchange ex, String path) throws IOException {
-        if (path.matches("/movies/\\d+")) {
-            int id = Integer.parseInt(path.split("/")[2]);
-            moviesStore.deleteMovieById(id);
-            sendNoContent(ex);
-        } else if (path.matches("/movies/.*")) {
-            sendJson(ex, 400, gson.toJson(new ErrorResponse(400, "Некорректный ID")));
+    // true — NDJSON, false — JSON-массив, null — неподдерживаемый тип (ответ 415 уже отправлен)
+    private Boolean batchFormat(HttpExchange ex) throws IOException {
+        String contentType = ex.getRequestHeaders().getFirst("Content-Type");
+        if ("application/json".equalsIgnoreCase(contentType)) return false;
+        if (CT_NDJSON.equalsIgnoreCase(contentType)) return true;
+        sendJson(ex, 415, UNSUPPORTED_MEDIA_TYPE);
+        return null;
+    }
+
+    private JsonReader openBatchReader(HttpExchange ex, boolean ndjson) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8), 64 * 1024));
+        if (ndjson) {
+            // в нестрогом режиме JsonReader читает несколько значений верхнего уровня подряд
+            reader.setLenient(true);
         } else {
-            sendJson(ex, 405, gson.toJson(new ErrorResponse(405, "Метод не разрешён для этого пути")));
+            reader.beginArray();
         }
+        return reader;
+    }
+
+    private void handleDelete(HttpExchange ex, int id) throws IOException {
+        moviesStore.deleteMovieById(id);
+        sendNoContent(ex);
     }
-}
\ No newline at end of file
+}
@@ -1,36 +1,134 @@
 package ru.practicum.moviehub.http;
 
-import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.Filter;
+import ru.practicum.moviehub.metrics.Metrics;
+import ru.practicum.moviehub.store.CatalogLoader;
+import ru.practicum.moviehub.store.CompactMoviesStore;
 import ru.practicum.moviehub.store.MoviesStore;
+import ru.practicum.moviehub.store.PersistentMoviesStore;
+import ru.practicum.moviehub.store.SnapshotMoviesStore;
+import ru.practicum.moviehub.store.StorageMode;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MoviesServer {
-    private final HttpServer server;
+    private final Transport transport;
     private final MoviesStore store; // теперь храним store как поле
+    private final ExecutorService executor;
+    private final Metrics metrics;
 
     public MoviesServer() {
+        this(new ServerConfig());
+    }
+
+    public MoviesServer(ServerConfig config) {
         try {
-            store = new MoviesStore();
-            server = HttpServer.create(new InetSocketAddress(8080), 0);
-            server.createContext("/movies", new MoviesHandler(store));
+            store = createStore(config);
+            if (config.getCatalog() != null) loadCatalog(config.getCatalog());
+            if (config.getIds() == ServerConfig.IdAssignment.SERVER) store.enableGeneratedIds(config.getDataDir());
+            MoviesHandler handler = new MoviesHandler(store, config.getCacheBytes());
+            // прогрев — до открытия порта и до подключения метрик, чтобы его запросы не попали в /metrics
+            if (config.getWarmupRounds() > 0) warmUp(config, handler);
+            metrics = new Metrics();
+            store.setMetrics(metrics);
+            List<Filter> filters = new ArrayList<>();
+            filters.add(new MetricsFilter(metrics, handler::routeLabel));
+            if (config.getRateLimit() > 0) {
+                RateLimiter limiter = new RateLimiter(config.getRateLimit(), config.getRateBurst());
+                filters.add(new RateLimiter.RateLimitFilter(limiter, handler::admissionCost));
+            }
+            executor = switch (config.getMode()) {
+                case DISPATCHER -> {
+                    handler.limitChangeWaits(0);
+                    yield null;
+                }
+                case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+                case BOUNDED_POOL -> {
+                    // ожидающие изменений занимают не больше половины пула
+                    handler.limitChangeWaits(config.getPoolSize() / 2);
+                    filters.add(new BoundedExecutor.OverloadFilter());
+                    yield new BoundedExecutor(config.getPoolSize(), config.getQueueLimit());
+                }
+            };
+            transport = switch (config.getTransport()) {
+                case JDK -> new JdkTransport(config.getPort(), config.getBacklog(), executor);
+                case NIO -> new NioTransport(config.getPort(), config.getBacklog(), executor, config.getKeepAlive());
+            };
+            transport.createContext("/movies", handler, filters);
+            transport.createContext("/metrics", new MetricsHandler(metrics), List.of());
         } catch (IOException e) {
             throw new RuntimeException("Не удалось создать HTTP-сервер", e);
         }
     }
 
+    private static MoviesStore createStore(ServerConfig config) throws IOException {
+        if (config.getDataDir() != null) {
+            if (config.getStorage() != StorageMode.HEAP) {
+                throw new IllegalArgumentException("С --data-dir работает только хранилище heap");
+            }
+            return new PersistentMoviesStore(config.getDataDir(), config.getDurability(), config.getSnapshotInterval());
+        }
+        return inMemoryStore(config.getStorage());
+    }
+
+    private static MoviesStore inMemoryStore(StorageMode storage) {
+        return switch (storage) {
+            case HEAP -> new MoviesStore();
+            case COMPACT -> new CompactMoviesStore(false);
+            case OFF_HEAP -> new CompactMoviesStore(true);
+            case SNAPSHOT -> new SnapshotMoviesStore();
+        };
+    }
+
+    private void loadCatalog(Path file) throws IOException {
+        CatalogLoader.Result result = CatalogLoader.load(file, store, Runtime.getRuntime().availableProcessors());
+        System.out.printf("Каталог %s: загружено %d, дубликатов %d, %d мс%n",
+                file, result.loaded(), result.duplicates(), TimeUnit.NANOSECONDS.toMillis(result.nanos()));
+    }
+
+    // Хранилище прогрева того же типа, что и основное, но всегда в памяти
+    private void warmUp(ServerConfig config, MoviesHandler handler) throws IOException {
+        long start = System.nanoTime();
+        Warmup.run(store, inMemoryStore(config.getStorage()), config.getCacheBytes(), config.getWarmupRounds());
+        if (store.size() > 0) Warmup.primeFullList(handler);
+        System.out.printf("Прогрев: %d раундов, %d мс%n",
+                config.getWarmupRounds(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
     public void start() {
-        server.start();
+        transport.start();
         System.out.println("Сервер запущен");
     }
 
     public void stop() {
-        server.stop(0);
+        transport.stop();
+        if (executor != null) executor.shutdownNow();
+        if (store instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                System.err.println("Не удалось закрыть хранилище: " + e.getMessage());
+            }
+        }
         System.out.println("Сервер остановлен");
     }
 
+    public int getPort() {
+        return transport.getPort();
+    }
+
     public MoviesStore getMoviesStore() {
         return store;
     }
-}
\ No newline at end of file
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+}
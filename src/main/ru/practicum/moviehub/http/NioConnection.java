@@ -0,0 +1,493 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Одно соединение NioTransport. Чтение, разбор запросов и запись в сокет — только на потоке-селекторе;
+ * рабочие потоки лишь кладут готовые буферы в очередь out, а сверх MAX_QUEUED_BYTES ждут сокета.
+ * Пока запрос обрабатывается, сокет не читается, а уже полученные следующие запросы ждут в буфере in.
+ */
+class NioConnection {
+    static final int MAX_HEADER_BYTES = 16 * 1024;
+    // тело целиком копится в памяти до вызова обработчика, поэтому лимит небольшой; крупный импорт — частями
+    static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    // сколько байтов ответа может ждать сокета; сверх этого рабочий поток ждёт, пока очередь не уйдёт до половины
+    static final int MAX_QUEUED_BYTES = 256 * 1024;
+    private static final int MAX_GATHER = 16;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final NioTransport transport;
+    private final SocketChannel channel;
+    private final InetSocketAddress localAddress;
+    private final InetSocketAddress remoteAddress;
+    private final Queue<Outbound> out = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queued = new AtomicLong();
+    // рабочий поток, ждущий места в очереди; у соединения одновременно обрабатывается один запрос
+    private final AtomicReference<CompletableFuture<Void>> writable = new AtomicReference<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private SelectionKey key;
+
+    // принятые, но ещё не разобранные байты: [inStart, inEnd)
+    private byte[] in = new byte[8 * 1024];
+    private int inStart;
+    private int inEnd;
+
+    // разбор текущего запроса; смещения считаются от inStart
+    private int headerEnd = -1;
+    private String method;
+    private URI uri;
+    private String protocol;
+    private Headers headers;
+    private long contentLength;
+    private boolean chunked;
+    private int chunkPos;
+    private ByteArrayOutputStream chunkedBody;
+    private boolean continueSent;
+
+    private boolean busy;
+    private volatile boolean closeAfterResponse;
+    private volatile boolean closed;
+    private long lastActivity = System.nanoTime();
+
+    NioConnection(NioTransport transport, SocketChannel channel) throws IOException {
+        this.transport = transport;
+        this.channel = channel;
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    InetSocketAddress localAddress() {
+        return localAddress;
+    }
+
+    InetSocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+
+    NioTransport transport() {
+        return transport;
+    }
+
+    boolean isCloseAfterResponse() {
+        return closeAfterResponse;
+    }
+
+    void closeAfterResponse() {
+        closeAfterResponse = true;
+    }
+
+    // Время простоя без незавершённого запроса; пока запрос обрабатывается — 0
+    long idleSince(long now) {
+        return busy || !out.isEmpty() ? 0 : now - lastActivity;
+    }
+
+    void onReadable(ByteBuffer readBuffer) {
+        try {
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.nanoTime();
+            readBuffer.flip();
+            ensureCapacity(readBuffer.remaining());
+            readBuffer.get(in, inEnd, readBuffer.remaining());
+            inEnd += read;
+            if (!busy) processInput();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // --- очередь отправки: заполняют рабочие потоки, разбирает селектор
+
+    void enqueue(ByteBuffer buffer, boolean pooled) throws IOException {
+        enqueue(new Outbound(buffer, buffer.remaining(), pooled, null, false));
+    }
+
+    // Буфер из массива вызывающего; future завершается, когда байты ушли в сокет
+    CompletableFuture<Void> enqueueBorrowed(ByteBuffer buffer) throws IOException {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        enqueue(new Outbound(buffer, buffer.remaining(), false, written, false));
+        return written;
+    }
+
+    /*
+     * Очередь отправки больше MAX_QUEUED_BYTES: рабочий поток ждёт, как при записи без копирования,
+     * пока селектор не отправит её до половины лимита. Без этого медленный клиент заставил бы держать
+     * в памяти весь ответ. Селектору ждать нельзя — он сам и отправляет.
+     */
+    void awaitWritable() throws IOException {
+        if (queued.get() <= MAX_QUEUED_BYTES || transport.onSelectorThread()) return;
+        CompletableFuture<Void> wait = new CompletableFuture<>();
+        writable.set(wait);
+        // селектор уменьшает queued и затем смотрит writable, мы — наоборот: кто-то из двоих увидит другого
+        if (queued.get() <= MAX_QUEUED_BYTES / 2) {
+            writable.compareAndSet(wait, null);
+            return;
+        }
+        if (closed) {
+            writable.compareAndSet(wait, null);
+            throw new IOException("Соединение закрыто");
+        }
+        transport.requestFlush(this);
+        try {
+            wait.join();
+        } catch (CompletionException e) {
+            throw new IOException("Соединение закрыто", e.getCause());
+        }
+    }
+
+    // Конец ответа: после отправки всего, что перед ним, соединение берётся за следующий запрос
+    void endResponse() {
+        try {
+            enqueue(new Outbound(null, 0, false, null, true));
+        } catch (IOException e) {
+            // соединение уже закрыто, ответ отправлять некому
+        }
+        transport.requestFlush(this);
+    }
+
+    private void enqueue(Outbound item) throws IOException {
+        if (closed) {
+            if (item.pooled) transport.buffers().release(item.buffer);
+            throw new IOException("Соединение закрыто");
+        }
+        queued.addAndGet(item.size);
+        out.add(item);
+        if (closed) drainOut();
+    }
+
+    void flush() {
+        if (closed) return;
+        try {
+            while (true) {
+                int count = 0;
+                for (Outbound item : out) {
+                    if (item.end || count == MAX_GATHER) break;
+                    gather[count++] = item.buffer;
+                }
+                boolean drained = true;
+                if (count > 0) {
+                    channel.write(gather, 0, count);
+                    drained = !gather[count - 1].hasRemaining();
+                    Arrays.fill(gather, 0, count, null);
+                }
+
+                Outbound head;
+                while ((head = out.peek()) != null && !head.end && !head.buffer.hasRemaining()) {
+                    out.poll();
+                    queued.addAndGet(-head.size);
+                    if (head.pooled) transport.buffers().release(head.buffer);
+                    if (head.written != null) head.written.complete(null);
+                }
+                if (queued.get() <= MAX_QUEUED_BYTES / 2) {
+                    CompletableFuture<Void> waiting = writable.getAndSet(null);
+                    if (waiting != null) waiting.complete(null);
+                }
+                if (!drained) {
+                    // сокет принял не всё — продолжим по OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (head == null) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (head.end) {
+                    out.poll();
+                    responseDone();
+                    if (closed) return;
+                }
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void responseDone() {
+        busy = false;
+        lastActivity = System.nanoTime();
+        if (closeAfterResponse) {
+            close();
+            return;
+        }
+        processInput();
+    }
+
+    void close() {
+        if (closed) return;
+        closed = true;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // закрываем в любом случае
+        }
+        drainOut();
+        transport.closed(this);
+    }
+
+    private void drainOut() {
+        Outbound item;
+        while ((item = out.poll()) != null) {
+            queued.addAndGet(-item.size);
+            if (item.pooled) transport.buffers().release(item.buffer);
+            if (item.written != null) item.written.completeExceptionally(new IOException("Соединение закрыто"));
+        }
+        CompletableFuture<Void> waiting = writable.getAndSet(null);
+        if (waiting != null) waiting.completeExceptionally(new IOException("Соединение закрыто"));
+    }
+
+    // --- разбор запросов
+
+    private void processInput() {
+        if (closed) return;
+        try {
+            NioExchange exchange = parseRequest();
+            if (exchange == null) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                return;
+            }
+            busy = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            transport.dispatch(exchange);
+        } catch (BadRequest e) {
+            rejectRequest(e.status);
+        }
+    }
+
+    // null — запрос ещё не пришёл целиком
+    private NioExchange parseRequest() throws BadRequest {
+        if (headerEnd < 0) {
+            skipEmptyLines();
+            headerEnd = indexOfHeaderEnd();
+            if (headerEnd < 0) {
+                if (inEnd - inStart > MAX_HEADER_BYTES) throw new BadRequest(431);
+                return null;
+            }
+            parseHead();
+        }
+
+        byte[] body;
+        int consumed;
+        if (chunked) {
+            if (!decodeChunks()) return null;
+            body = chunkedBody.toByteArray();
+            consumed = chunkPos;
+        } else {
+            if (inEnd - inStart - headerEnd < contentLength) {
+                sendContinueIfExpected();
+                return null;
+            }
+            int start = inStart + headerEnd;
+            body = Arrays.copyOfRange(in, start, start + (int) contentLength);
+            consumed = headerEnd + (int) contentLength;
+        }
+
+        NioExchange exchange = new NioExchange(this, method, uri, protocol, headers, body);
+        inStart += consumed;
+        resetRequest();
+        compact();
+        return exchange;
+    }
+
+    private void parseHead() throws BadRequest {
+        String head = new String(in, inStart, headerEnd - 4, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) throw new BadRequest(400);
+        method = requestLine[0];
+        protocol = requestLine[2];
+        try {
+            uri = new URI(requestLine[1]);
+        } catch (URISyntaxException e) {
+            throw new BadRequest(400);
+        }
+
+        headers = new Headers();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) throw new BadRequest(400);
+            headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+
+        String connection = headers.getFirst("Connection");
+        if ("close".equalsIgnoreCase(connection)
+                || (protocol.equals("HTTP/1.0") && !"keep-alive".equalsIgnoreCase(connection))) {
+            closeAfterResponse = true;
+        }
+
+        String transferEncoding = headers.getFirst("Transfer-Encoding");
+        chunked = transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+        if (chunked) {
+            chunkPos = headerEnd;
+            chunkedBody = new ByteArrayOutputStream();
+            return;
+        }
+        String length = headers.getFirst("Content-Length");
+        try {
+            contentLength = length == null ? 0 : Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            throw new BadRequest(400);
+        }
+        if (contentLength < 0) throw new BadRequest(400);
+        if (contentLength > MAX_BODY_BYTES) throw new BadRequest(413);
+    }
+
+    // Разбирает доступные куски chunked-тела; true — пришёл последний кусок
+    private boolean decodeChunks() throws BadRequest {
+        while (true) {
+            int lineEnd = indexOf(chunkPos, (byte) '\r', (byte) '\n');
+            if (lineEnd < 0) {
+                sendContinueIfExpected();
+                return false;
+            }
+            String sizeLine = new String(in, inStart + chunkPos, lineEnd - chunkPos, StandardCharsets.ISO_8859_1);
+            int semicolon = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new BadRequest(400);
+            }
+            if (size < 0 || chunkedBody.size() + size > MAX_BODY_BYTES) throw new BadRequest(413);
+
+            int dataStart = lineEnd + 2;
+            if (size == 0) {
+                // за последним куском могут идти заголовки-трейлеры, они пропускаются
+                int trailerEnd = startsWithCrlf(dataStart) ? dataStart + 2 : indexOfFrom(dataStart);
+                if (trailerEnd < 0) return false;
+                chunkPos = trailerEnd;
+                return true;
+            }
+            if (inEnd - inStart - dataStart < size + 2) {
+                ensureCapacity((int) size + 2);
+                return false;
+            }
+            chunkedBody.write(in, inStart + dataStart, (int) size);
+            chunkPos = dataStart + (int) size + 2;
+        }
+    }
+
+    private void sendContinueIfExpected() {
+        if (continueSent || !"100-continue".equalsIgnoreCase(headers.getFirst("Expect"))) return;
+        continueSent = true;
+        try {
+            enqueue(ByteBuffer.wrap(CONTINUE), false);
+            flush();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Ошибка разбора: короткий ответ и закрытие соединения, дальше поток байтов уже не разобрать
+    private void rejectRequest(int status) {
+        busy = true;
+        closeAfterResponse = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        String response = "HTTP/1.1 " + status + " " + NioExchange.reason(status) + "\r\n"
+                + "Content-Length: 0\r\nConnection: close\r\n\r\n";
+        try {
+            enqueue(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)), false);
+        } catch (IOException e) {
+            return;
+        }
+        endResponse();
+    }
+
+    private void resetRequest() {
+        headerEnd = -1;
+        method = null;
+        uri = null;
+        protocol = null;
+        headers = null;
+        contentLength = 0;
+        chunked = false;
+        chunkPos = 0;
+        chunkedBody = null;
+        continueSent = false;
+    }
+
+    // пустые строки между запросами допускаются (RFC 9112, 2.2)
+    private void skipEmptyLines() {
+        while (inEnd - inStart >= 2 && in[inStart] == '\r' && in[inStart + 1] == '\n') {
+            inStart += 2;
+        }
+    }
+
+    private int indexOfHeaderEnd() {
+        return indexOfFrom(0);
+    }
+
+    // Смещение за первым "\r\n\r\n", начиная с from, или -1
+    private int indexOfFrom(int from) {
+        for (int i = inStart + from; i + 3 < inEnd; i++) {
+            if (in[i] == '\r' && in[i + 1] == '\n' && in[i + 2] == '\r' && in[i + 3] == '\n') {
+                return i + 4 - inStart;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(int from, byte first, byte second) {
+        for (int i = inStart + from; i + 1 < inEnd; i++) {
+            if (in[i] == first && in[i + 1] == second) return i - inStart;
+        }
+        return -1;
+    }
+
+    private boolean startsWithCrlf(int from) {
+        int i = inStart + from;
+        return i + 1 < inEnd && in[i] == '\r' && in[i + 1] == '\n';
+    }
+
+    private void ensureCapacity(int extra) {
+        if (in.length - inEnd >= extra) return;
+        compact();
+        if (in.length - inEnd >= extra) return;
+        in = Arrays.copyOf(in, Math.max(in.length * 2, inEnd + extra));
+    }
+
+    private void compact() {
+        if (inStart == 0) return;
+        System.arraycopy(in, inStart, in, 0, inEnd - inStart);
+        inEnd -= inStart;
+        inStart = 0;
+    }
+
+    private record Outbound(ByteBuffer buffer, int size, boolean pooled, CompletableFuture<Void> written, boolean end) {
+    }
+
+    private static final class BadRequest extends Exception {
+        private final int status;
+
+        private BadRequest(int status) {
+            super(null, null, false, false);
+            this.status = status;
+        }
+    }
+}
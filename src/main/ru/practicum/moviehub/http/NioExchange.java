@@ -0,0 +1,315 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+ * HttpExchange поверх NioTransport, чтобы обработчики и фильтры не зависели от транспорта.
+ * Тело запроса к моменту вызова обработчика уже прочитано целиком. Ответ собирается в буферы из пула
+ * и уходит в очередь соединения; крупные записи отправляются прямо из массива вызывающего.
+ * И те и другие ждут сокета, так что на соединение приходится не больше MAX_QUEUED_BYTES ответа.
+ */
+class NioExchange extends HttpExchange {
+    // с этого размера запись отправляется без копирования, а write ждёт, пока сокет заберёт байты
+    private static final int BORROW_THRESHOLD = 32 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final Map<Integer, String> REASONS = Map.ofEntries(
+            Map.entry(100, "Continue"), Map.entry(200, "OK"), Map.entry(201, "Created"),
+            Map.entry(204, "No Content"), Map.entry(304, "Not Modified"), Map.entry(400, "Bad Request"),
+            Map.entry(404, "Not Found"), Map.entry(405, "Method Not Allowed"), Map.entry(409, "Conflict"),
+            Map.entry(413, "Content Too Large"), Map.entry(415, "Unsupported Media Type"),
+            Map.entry(422, "Unprocessable Content"), Map.entry(429, "Too Many Requests"),
+            Map.entry(431, "Request Header Fields Too Large"), Map.entry(500, "Internal Server Error"),
+            Map.entry(503, "Service Unavailable"));
+
+    private final NioConnection connection;
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ResponseStream rawResponse = new ResponseStream();
+    private InputStream requestBody;
+    private OutputStream responseBody = rawResponse;
+    private int responseCode = -1;
+
+    NioExchange(NioConnection connection, String method, URI uri, String protocol, Headers requestHeaders, byte[] body) {
+        this.connection = connection;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = new ByteArrayInputStream(body);
+    }
+
+    static String reason(int status) {
+        return REASONS.getOrDefault(status, "");
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    // у NioTransport нет объектов HttpContext
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            requestBody.close();
+            responseBody.close();
+        } catch (IOException e) {
+            abort();
+        }
+        rawResponse.finish();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode >= 0) throw new IOException("Заголовки ответа уже отправлены");
+        responseCode = rCode;
+
+        boolean head = "HEAD".equalsIgnoreCase(method);
+        boolean noBody = responseLength < 0 || head || rCode == 204 || rCode == 304;
+        if (rCode != 204 && rCode != 304) {
+            if (responseLength > 0) {
+                responseHeaders.set("Content-Length", Long.toString(responseLength));
+            } else if (responseLength == 0 && !head) {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+            } else if (!head) {
+                responseHeaders.set("Content-Length", "0");
+            }
+        }
+        if ("close".equalsIgnoreCase(responseHeaders.getFirst("Connection"))) connection.closeAfterResponse();
+        if (connection.isCloseAfterResponse()) responseHeaders.set("Connection", "close");
+        responseHeaders.set("Date", connection.transport().date());
+
+        StringBuilder status = new StringBuilder(256)
+                .append("HTTP/1.1 ").append(rCode).append(' ').append(reason(rCode)).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                status.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        status.append("\r\n");
+        rawResponse.begin(status.toString().getBytes(StandardCharsets.ISO_8859_1),
+                noBody ? -1 : responseLength, head);
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.remoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.localAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) requestBody = i;
+        if (o != null) responseBody = o;
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    // Ответ оборван: соединение закроется, как только уйдёт то, что уже в очереди
+    void abort() {
+        connection.closeAfterResponse();
+    }
+
+    /*
+     * Тело ответа. Байты копируются в буфер из пула, полный буфер уходит в очередь соединения;
+     * для chunked каждый отправленный буфер становится одним куском.
+     */
+    private final class ResponseStream extends OutputStream {
+        private ByteBuffer current;
+        // -1 — без тела, 0 — chunked, иначе сколько байтов ещё ожидается
+        private long remaining;
+        private boolean chunked;
+        private boolean discard;
+        private boolean started;
+        private boolean finished;
+
+        private void begin(byte[] head, long length, boolean discardBody) throws IOException {
+            started = true;
+            chunked = length == 0;
+            remaining = length;
+            discard = discardBody;
+            if (chunked) {
+                connection.enqueue(ByteBuffer.wrap(head), false);
+            } else {
+                put(head, 0, head.length);
+            }
+            if (length < 0) finish();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!started) throw new IOException("Заголовки ответа ещё не отправлены");
+            if (finished) {
+                if (discard) return;
+                throw new IOException("Тело ответа уже закрыто");
+            }
+            if (len == 0) return;
+            if (!chunked) {
+                if (len > remaining) throw new IOException("Тело длиннее заявленного Content-Length");
+                remaining -= len;
+            }
+            // на потоке-селекторе ждать отправки нельзя — он сам и отправляет
+            if (len >= BORROW_THRESHOLD && !connection.transport().onSelectorThread()) {
+                writeBorrowed(b, off, len);
+            } else {
+                put(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (finished || !started) return;
+            sendCurrent();
+            connection.transport().requestFlush(connection);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!started || finished) return;
+            if (!chunked && remaining > 0) abort();
+            sendCurrent();
+            if (chunked) connection.enqueue(ByteBuffer.wrap(LAST_CHUNK), false);
+            finish();
+        }
+
+        // Завершение обмена: без отправленных заголовков ответа нет, и соединение закрывается
+        private void finish() {
+            if (finished) return;
+            finished = true;
+            if (!started) abort();
+            if (current != null && current.position() == 0) {
+                connection.transport().buffers().release(current);
+                current = null;
+            } else if (current != null) {
+                try {
+                    sendCurrent();
+                } catch (IOException e) {
+                    abort();
+                }
+            }
+            connection.endResponse();
+        }
+
+        private void put(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (current == null) current = connection.transport().buffers().acquire();
+                int n = Math.min(len, current.remaining());
+                current.put(b, off, n);
+                off += n;
+                len -= n;
+                if (!current.hasRemaining()) sendCurrent();
+            }
+        }
+
+        private void writeBorrowed(byte[] b, int off, int len) throws IOException {
+            sendCurrent();
+            if (chunked) connection.enqueue(chunkHeader(len), false);
+            CompletableFuture<Void> written = connection.enqueueBorrowed(ByteBuffer.wrap(b, off, len));
+            connection.transport().requestFlush(connection);
+            try {
+                written.join();
+            } catch (CompletionException e) {
+                throw new IOException("Соединение закрыто", e.getCause());
+            }
+            if (chunked) connection.enqueue(ByteBuffer.wrap(CRLF), false);
+        }
+
+        private void sendCurrent() throws IOException {
+            if (current == null || current.position() == 0) return;
+            ByteBuffer buffer = current.flip();
+            current = null;
+            if (chunked) connection.enqueue(chunkHeader(buffer.remaining()), false);
+            connection.enqueue(buffer, true);
+            if (chunked) connection.enqueue(ByteBuffer.wrap(CRLF), false);
+            connection.awaitWritable();
+        }
+
+        private ByteBuffer chunkHeader(int length) {
+            return ByteBuffer.wrap((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * HTTP/1.1 на неблокирующих каналах с одним потоком-селектором. Селектор принимает соединения,
+ * читает и пишет сокеты и разбирает запросы, а обработчики выполняются на executor'е
+ * (без executor'а — прямо на селекторе). Соединения keep-alive; запросы, отправленные подряд
+ * без ожидания ответа (pipelining), обрабатываются по одному и отвечаются в порядке поступления.
+ */
+class NioTransport implements Transport {
+    static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DIRECT_BUFFERS = 1024;
+    private static final long IDLE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Executor executor;
+    private final long keepAliveNanos;
+    private final BufferPool buffers = new BufferPool(WRITE_BUFFER_SIZE, MAX_DIRECT_BUFFERS);
+    // один на селектор: из него байты сразу копируются в буфер соединения
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    // соединения, которым рабочие потоки положили байты на отправку
+    private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+    private final Set<NioConnection> connections = new HashSet<>();
+    private final Thread selectorThread;
+    private volatile boolean running;
+    private long lastIdleCheck;
+    private volatile long dateSecond;
+    private volatile String date;
+
+    NioTransport(int port, int backlog, Executor executor, Duration keepAlive) throws IOException {
+        this.executor = executor;
+        this.keepAliveNanos = keepAlive.toNanos();
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), backlog);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = new Thread(this::loop, "movies-nio-selector");
+        selectorThread.setDaemon(true);
+    }
+
+    @Override
+    public void createContext(String path, HttpHandler handler, List<Filter> filters) {
+        contexts.add(new Context(path, handler, List.copyOf(filters)));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        selectorThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Не удалось закрыть сокет сервера: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    BufferPool buffers() {
+        return buffers;
+    }
+
+    boolean onSelectorThread() {
+        return Thread.currentThread() == selectorThread;
+    }
+
+    // Байты соединения дописаны в очередь, селектор их отправит. С самого селектора — без wakeup:
+    // очередь разбирается в конце текущего прохода, а не рекурсивно из обработчика
+    void requestFlush(NioConnection connection) {
+        pendingWrites.add(connection);
+        if (!onSelectorThread()) selector.wakeup();
+    }
+
+    void dispatch(NioExchange exchange) {
+        Context context = findContext(exchange.getRequestURI().getPath());
+        Runnable task = () -> {
+            try {
+                if (context == null) {
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    new Filter.Chain(context.filters, context.handler).doFilter(exchange);
+                }
+            } catch (Exception e) {
+                exchange.abort();
+            } finally {
+                exchange.close();
+            }
+        };
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            exchange.abort();
+            exchange.close();
+        }
+    }
+
+    // Заголовок Date пересчитывается не чаще раза в секунду
+    String date() {
+        long second = System.currentTimeMillis() / 1000;
+        String current = date;
+        if (current == null || second != dateSecond) {
+            current = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+            date = current;
+            dateSecond = second;
+        }
+        return current;
+    }
+
+    private Context findContext(String path) {
+        Context best = null;
+        for (Context context : contexts) {
+            if (path.startsWith(context.path) && (best == null || context.path.length() > best.path.length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    private void loop() {
+        lastIdleCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(IDLE_CHECK_NANOS));
+            } catch (IOException | ClosedSelectorException e) {
+                break;
+            }
+            if (!running) break;
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                NioConnection connection = (NioConnection) key.attachment();
+                if (key.isReadable()) connection.onReadable(readBuffer);
+                if (key.isValid() && key.isWritable()) connection.flush();
+            }
+            NioConnection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                connection.flush();
+            }
+            closeIdle();
+        }
+        for (NioConnection open : new ArrayList<>(connections)) {
+            open.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                NioConnection connection = new NioConnection(this, channel);
+                connection.register(selector);
+                connections.add(connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось принять соединение: " + e.getMessage());
+        }
+    }
+
+    // Закрывает соединения, простаивающие между запросами дольше keep-alive
+    private void closeIdle() {
+        long now = System.nanoTime();
+        if (now - lastIdleCheck < IDLE_CHECK_NANOS) return;
+        lastIdleCheck = now;
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            if (connection.idleSince(now) > keepAliveNanos) connection.close();
+        }
+    }
+
+    void closed(NioConnection connection) {
+        connections.remove(connection);
+    }
+
+    private record Context(String path, HttpHandler handler, List<Filter> filters) {
+    }
+}
@@ -0,0 +1,38 @@
+package ru.practicum.moviehub.http;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// Разбор строки запроса "a=1&b=2": значения декодируются из URL, при повторе параметра берётся первое
+final class QueryParams {
+
+    private QueryParams() {
+    }
+
+    static Map<String, String> parse(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return Collections.emptyMap();
+        Map<String, String> params = new HashMap<>();
+        int start = 0;
+        while (start <= rawQuery.length()) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) end = rawQuery.length();
+            if (end > start) {
+                int eq = rawQuery.indexOf('=', start);
+                if (eq < 0 || eq > end) {
+                    params.putIfAbsent(decode(rawQuery.substring(start, end)), "");
+                } else {
+                    params.putIfAbsent(decode(rawQuery.substring(start, eq)), decode(rawQuery.substring(eq + 1, end)));
+                }
+            }
+            start = end + 1;
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import ru.practicum.moviehub.api.ErrorResponse;
+import ru.practicum.moviehub.json.MovieJson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+/*
+ * Token bucket на каждого клиента в форме GCRA: состояние ведра — одно число, момент, когда ведро
+ * снова станет полным. Запрос стоимостью cost сдвигает этот момент на cost интервалов и проходит,
+ * если долг не превышает burst интервалов. Обновление — один CAS, без блокировок.
+ * Полные вёдра ничем не отличаются от новых, поэтому периодически удаляются из карты.
+ * Чистка идёт по частям: запрос, которому выпала чистка, проверяет не больше SWEEP_BATCH вёдер,
+ * так что даже при наплыве активных адресов ни один запрос не обходит всю карту.
+ */
+class RateLimiter {
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // при наплыве новых адресов карта чистится, не дожидаясь интервала
+    private static final int SWEEP_SIZE = 100_000;
+    static final int SWEEP_BATCH = 256;
+
+    private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int burst;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep;
+    // чистку ведёт один поток за раз; курсор переходит от запроса к запросу, пока не пройдёт всю карту
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private Iterator<Map.Entry<Object, AtomicLong>> sweepCursor;
+
+    RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0) throw new IllegalArgumentException("Частота должна быть положительной");
+        if (burst < 1) throw new IllegalArgumentException("Размер всплеска должен быть положительным");
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * burst;
+        this.burst = burst;
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+    }
+
+    // 0 — запрос пропущен, иначе через сколько наносекунд у клиента наберётся нужное число токенов.
+    // Стоимость больше burst урезается до burst, иначе такой запрос не прошёл бы никогда
+    long tryAcquire(Object key, int cost) {
+        long now = clock.getAsLong();
+        sweepIfDue(now);
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        long charge = Math.min(Math.max(cost, 1), burst) * intervalNanos;
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + charge;
+            long debt = next - now;
+            if (debt > toleranceNanos) return debt - toleranceNanos;
+            if (bucket.compareAndSet(full, next)) return 0;
+        }
+    }
+
+    int trackedClients() {
+        return buckets.size();
+    }
+
+    // Ведро, которое уже снова полное, удаляется. Если параллельный запрос успел взять его до удаления,
+    // его списание теряется — клиент лишь получает чуть больше одного полного ведра
+    private void sweepIfDue(long now) {
+        if (now - lastSweep.get() < SWEEP_INTERVAL_NANOS && buckets.size() < SWEEP_SIZE) return;
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            if (sweepCursor == null) sweepCursor = buckets.entrySet().iterator();
+            for (int i = 0; i < SWEEP_BATCH && sweepCursor.hasNext(); i++) {
+                Map.Entry<Object, AtomicLong> entry = sweepCursor.next();
+                if (entry.getValue().get() <= now) buckets.remove(entry.getKey(), entry.getValue());
+            }
+            if (!sweepCursor.hasNext()) {
+                // проход завершён: следующий — через интервал или при новом переполнении
+                sweepCursor = null;
+                lastSweep.set(now);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /*
+     * Фильтр перед обработчиком: клиент определяется по IP-адресу, стоимость запроса задаёт обработчик.
+     * Сверх лимита — 429 с Retry-After в целых секундах.
+     */
+    static class RateLimitFilter extends Filter {
+        private static final byte[] BODY = MovieJson.toJson(
+                new ErrorResponse(429, "Слишком много запросов, повторите позже"));
+
+        private final RateLimiter limiter;
+        private final ToIntFunction<HttpExchange> cost;
+
+        RateLimitFilter(RateLimiter limiter, ToIntFunction<HttpExchange> cost) {
+            this.limiter = limiter;
+            this.cost = cost;
+        }
+
+        @Override
+        public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+            long waitNanos = limiter.tryAcquire(clientKey(ex), cost.applyAsInt(ex));
+            if (waitNanos == 0) {
+                chain.doFilter(ex);
+                return;
+            }
+            long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            ex.getResponseHeaders().set("Content-Type", BaseHttpHandler.CT_JSON);
+            ex.getResponseHeaders().set("Retry-After", Long.toString(retryAfter));
+            ex.sendResponseHeaders(429, BODY.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(BODY);
+            }
+        }
+
+        private static Object clientKey(HttpExchange ex) {
+            InetSocketAddress remote = ex.getRemoteAddress();
+            if (remote == null) return "";
+            return remote.getAddress() != null ? remote.getAddress() : remote.getHostString();
+        }
+
+        @Override
+        public String description() {
+            return "Ограничение частоты запросов по клиенту";
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.practicum.moviehub.http;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+ * Кэш готовых тел ответов по ключу маршрута. Каждая запись помнит версию хранилища,
+ * при которой была построена; после любого изменения каталога версия растёт и запись считается устаревшей.
+ * Объём ограничен в байтах вместе со сжатыми копиями. Записи лежат в LinkedHashMap в порядке доступа
+ * под одной блокировкой: давно не использованная запись — первая, вытеснение — O(1).
+ * Устаревшие записи удаляются при обращении или вытесняются, как любые другие.
+ */
+class ResponseCache {
+
+    static final class Entry {
+        private final long version;
+        private final byte[] body;
+        private final String etag;
+        // null — запись вне кэша (detached), её сжатые копии не учитываются
+        private final ResponseCache owner;
+        private final String key;
+        // тело и построенные сжатые копии; меняется под блокировкой кэша
+        private long bytes;
+        // сжатые копии строятся при первом запросе и живут, пока жива запись
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        private Entry(ResponseCache owner, String key, long version, byte[] body) {
+            this.owner = owner;
+            this.key = key;
+            this.version = version;
+            this.body = body;
+            this.bytes = body.length;
+            this.etag = etagOf(body);
+        }
+
+        // Сильный ETag зависит только от байтов тела, поэтому переживает перезапуск сервера.
+        // Совпадение ETag даёт клиенту 304 без тела, так что берутся 128 бит SHA-256, а не crc32:
+        // случайное совпадение у разных тел не должно быть достижимо
+        private static String etagOf(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256 обязана поддерживать любая JVM
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        // у каждого представления свой сильный ETag
+        String etag(ContentEncoding encoding) {
+            if (encoding == ContentEncoding.IDENTITY) return etag;
+            return etag.substring(0, etag.length() - 1) + "-" + encoding.token() + "\"";
+        }
+
+        byte[] body(ContentEncoding encoding) {
+            if (encoding == ContentEncoding.IDENTITY) return body;
+            byte[] encoded = encoding == ContentEncoding.GZIP ? gzip : deflate;
+            if (encoded != null) return encoded;
+            // параллельные запросы одной записи ждут одного сжатия, и копия учитывается один раз
+            synchronized (this) {
+                encoded = encoding == ContentEncoding.GZIP ? gzip : deflate;
+                if (encoded != null) return encoded;
+                encoded = encoding.encode(body);
+                if (encoding == ContentEncoding.GZIP) gzip = encoded;
+                else deflate = encoded;
+            }
+            if (owner != null) owner.grow(this, encoded.length);
+            return encoded;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long usedBytes;
+
+    ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // одна запись не должна занимать больше четверти кэша
+    boolean accepts(long estimatedBytes) {
+        return estimatedBytes <= maxBytes / 4;
+    }
+
+    Entry get(String key, long version) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.version != version) {
+                entries.remove(key);
+                usedBytes -= entry.bytes;
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    // Запись, которую хранит вызывающий, а не кэш: ETag и сжатые копии у неё те же, что у обычной
+    static Entry detached(byte[] body) {
+        return new Entry(null, null, -1, body);
+    }
+
+    // Запись возвращается всегда, даже если в кэш она не поместилась, — ради ETag
+    Entry put(String key, long version, byte[] body) {
+        if (!accepts(body.length)) return new Entry(null, null, version, body);
+        Entry entry = new Entry(this, key, version, body);
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) usedBytes -= previous.bytes;
+            usedBytes += entry.bytes;
+            evict();
+        }
+        return entry;
+    }
+
+    long usedBytes() {
+        synchronized (entries) {
+            return usedBytes;
+        }
+    }
+
+    // Сжатая копия учитывается, только пока запись в кэше; вытесненная запись уже вычтена целиком
+    private void grow(Entry entry, long delta) {
+        synchronized (entries) {
+            entry.bytes += delta;
+            if (entries.get(entry.key) != entry) return;
+            usedBytes += delta;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+}
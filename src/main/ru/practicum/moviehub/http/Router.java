@@ -0,0 +1,110 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Таблица маршрутов, собранная один раз при создании обработчика.
+ * Шаблон — сегменты пути, где "{id}" означает неотрицательное целое. Сопоставление идёт
+ * по символам исходной строки пути: без регулярных выражений, split и промежуточных строк.
+ */
+class Router {
+
+    @FunctionalInterface
+    interface Handler {
+        void handle(HttpExchange ex, int id) throws IOException;
+    }
+
+    private static final long NO_MATCH = -1;
+    private static final String ID = "{id}";
+    static final String UNMATCHED = "unmatched";
+
+    private Route[] routes = new Route[0];
+    // метка маршрута, выбранного dispatch на этом потоке: фильтры и обработчик выполняются на одном потоке,
+    // а атрибуты HttpExchange у HttpServer общие для всего контекста и для этого не годятся
+    private final ThreadLocal<String> matched = new ThreadLocal<>();
+
+    Router add(String method, String pattern, Handler handler) {
+        if (!pattern.startsWith("/")) throw new IllegalArgumentException("Шаблон должен начинаться с '/': " + pattern);
+        routes = Arrays.copyOf(routes, routes.length + 1);
+        routes[routes.length - 1] = new Route(method, pattern, handler);
+        return this;
+    }
+
+    // Метка маршрута для метрик: шаблон, а не сырой путь, чтобы число рядов не зависело от id
+    String label(String method, String path) {
+        for (Route route : routes) {
+            if (route.method.equalsIgnoreCase(method) && route.match(path) != NO_MATCH) return route.label;
+        }
+        return UNMATCHED;
+    }
+
+    // Метка запроса, только что прошедшего dispatch на этом потоке, без повторного сопоставления.
+    // Если до dispatch запрос не дошёл (429, 503), метка вычисляется по пути
+    String takeLabel(String method, String path) {
+        String label = matched.get();
+        if (label == null) return label(method, path);
+        matched.set(null);
+        return label;
+    }
+
+    // false — ни один маршрут не подошёл, ответ не отправлен
+    boolean dispatch(HttpExchange ex, String method, String path) throws IOException {
+        for (Route route : routes) {
+            if (!route.method.equalsIgnoreCase(method)) continue;
+            long id = route.match(path);
+            if (id != NO_MATCH) {
+                matched.set(route.label);
+                route.handler.handle(ex, (int) id);
+                return true;
+            }
+        }
+        matched.set(UNMATCHED);
+        return false;
+    }
+
+    private static final class Route {
+        private final String method;
+        private final String[] segments;
+        private final Handler handler;
+        private final String label;
+
+        private Route(String method, String pattern, Handler handler) {
+            this.method = method;
+            this.segments = pattern.substring(1).split("/");
+            this.handler = handler;
+            this.label = method + " " + pattern;
+        }
+
+        // id из пути, 0 для шаблона без "{id}" или NO_MATCH
+        private long match(String path) {
+            int pos = 0;
+            long id = 0;
+            int length = path.length();
+            for (String segment : segments) {
+                if (pos >= length || path.charAt(pos) != '/') return NO_MATCH;
+                pos++;
+                if (ID.equals(segment)) {
+                    int start = pos;
+                    long value = 0;
+                    while (pos < length && path.charAt(pos) != '/') {
+                        char c = path.charAt(pos);
+                        if (c < '0' || c > '9') return NO_MATCH;
+                        value = value * 10 + (c - '0');
+                        if (value > Integer.MAX_VALUE) return NO_MATCH;
+                        pos++;
+                    }
+                    if (pos == start) return NO_MATCH;
+                    id = value;
+                } else {
+                    if (!path.startsWith(segment, pos)) return NO_MATCH;
+                    pos += segment.length();
+                    if (pos < length && path.charAt(pos) != '/') return NO_MATCH;
+                }
+            }
+            return pos == length ? id : NO_MATCH;
+        }
+    }
+}
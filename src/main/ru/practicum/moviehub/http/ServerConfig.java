@@ -0,0 +1,319 @@
+package ru.practicum.moviehub.http;
+
+import ru.practicum.moviehub.store.Durability;
+import ru.practicum.moviehub.store.StorageMode;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+public class ServerConfig {
+
+    public enum ExecutionMode {
+        // все запросы обрабатываются одним потоком-диспетчером HttpServer
+        DISPATCHER,
+        // отдельный виртуальный поток на каждый запрос
+        VIRTUAL_THREADS,
+        // фиксированный пул платформенных потоков с ограниченной очередью, переполнение — 503
+        BOUNDED_POOL
+    }
+
+    public enum IdAssignment {
+        // id приходит в теле POST /movies, повтор id — 409
+        CLIENT,
+        // id выдаёт сервер, дубликат — фильм с тем же названием и годом
+        SERVER
+    }
+
+    public enum TransportType {
+        // com.sun.net.httpserver.HttpServer
+        JDK,
+        // собственный HTTP/1.1 на Selector, keep-alive и pipelining
+        NIO
+    }
+
+    private int port = 8080;
+    private int backlog = 0;
+    private ExecutionMode mode = ExecutionMode.VIRTUAL_THREADS;
+    private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+    private int queueLimit = 1000;
+    // без каталога данных каталог фильмов живёт только в памяти
+    private Path dataDir;
+    private Durability durability = Durability.BATCHED;
+    private Duration snapshotInterval = Duration.ofMinutes(5);
+    private long cacheBytes = 64L * 1024 * 1024;
+    private StorageMode storage = StorageMode.HEAP;
+    private IdAssignment ids = IdAssignment.CLIENT;
+    private TransportType transport = TransportType.JDK;
+    // сколько NIO-транспорт держит открытым соединение без запросов
+    private Duration keepAlive = Duration.ofSeconds(30);
+    // запросов в секунду на IP-адрес клиента, 0 — без ограничения
+    private double rateLimit;
+    // сколько запросов клиент может отправить разом; 0 — столько же, сколько за секунду
+    private int rateBurst;
+    // файл каталога, загружаемый при старте: JSON-массив фильмов или snapshot.bin
+    private Path catalog;
+    // раундов прогрева обработчиков до открытия порта, 0 — без прогрева
+    private int warmupRounds;
+    // запуститься и сразу остановиться: тренировочный прогон для архива CDS
+    private boolean exitAfterStart;
+
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Некорректный аргумент: " + arg);
+            }
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "port" -> config.setPort(Integer.parseInt(value));
+                case "backlog" -> config.setBacklog(Integer.parseInt(value));
+                case "mode" -> config.setMode(parseMode(value));
+                case "threads" -> config.setPoolSize(Integer.parseInt(value));
+                case "queue" -> config.setQueueLimit(Integer.parseInt(value));
+                case "data-dir" -> config.setDataDir(Path.of(value));
+                case "durability" -> config.setDurability(parseDurability(value));
+                case "cache-mb" -> config.setCacheBytes(Long.parseLong(value) * 1024 * 1024);
+                case "snapshot-interval" -> config.setSnapshotInterval(Duration.ofSeconds(Long.parseLong(value)));
+                case "storage" -> config.setStorage(parseStorage(value));
+                case "ids" -> config.setIds(parseIds(value));
+                case "transport" -> config.setTransport(parseTransport(value));
+                case "keep-alive" -> config.setKeepAlive(Duration.ofSeconds(Long.parseLong(value)));
+                case "rate-limit" -> config.setRateLimit(Double.parseDouble(value));
+                case "rate-burst" -> config.setRateBurst(Integer.parseInt(value));
+                case "catalog" -> config.setCatalog(Path.of(value));
+                case "warmup-rounds" -> config.setWarmupRounds(Integer.parseInt(value));
+                case "exit-after-start" -> config.setExitAfterStart(parseFlag(value));
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + key);
+            }
+        }
+        return config;
+    }
+
+    private static ExecutionMode parseMode(String value) {
+        return switch (value.toLowerCase()) {
+            case "dispatcher" -> ExecutionMode.DISPATCHER;
+            case "virtual" -> ExecutionMode.VIRTUAL_THREADS;
+            case "pool" -> ExecutionMode.BOUNDED_POOL;
+            default -> throw new IllegalArgumentException("Неизвестный режим выполнения: " + value);
+        };
+    }
+
+    private static Durability parseDurability(String value) {
+        return switch (value.toLowerCase()) {
+            case "sync" -> Durability.SYNC;
+            case "batched" -> Durability.BATCHED;
+            case "async" -> Durability.ASYNC;
+            default -> throw new IllegalArgumentException("Неизвестный режим надёжности: " + value);
+        };
+    }
+
+    private static StorageMode parseStorage(String value) {
+        return switch (value.toLowerCase()) {
+            case "heap" -> StorageMode.HEAP;
+            case "compact" -> StorageMode.COMPACT;
+            case "offheap" -> StorageMode.OFF_HEAP;
+            case "snapshot" -> StorageMode.SNAPSHOT;
+            default -> throw new IllegalArgumentException("Неизвестный тип хранилища: " + value);
+        };
+    }
+
+    private static IdAssignment parseIds(String value) {
+        return switch (value.toLowerCase()) {
+            case "client" -> IdAssignment.CLIENT;
+            case "server" -> IdAssignment.SERVER;
+            default -> throw new IllegalArgumentException("Неизвестный способ выдачи id: " + value);
+        };
+    }
+
+    private static TransportType parseTransport(String value) {
+        return switch (value.toLowerCase()) {
+            case "jdk" -> TransportType.JDK;
+            case "nio" -> TransportType.NIO;
+            default -> throw new IllegalArgumentException("Неизвестный транспорт: " + value);
+        };
+    }
+
+    private static boolean parseFlag(String value) {
+        return switch (value.toLowerCase()) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("Ожидалось true или false: " + value);
+        };
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig setPort(int port) {
+        if (port < 0 || port > 65535) throw new IllegalArgumentException("Некорректный порт: " + port);
+        this.port = port;
+        return this;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public ServerConfig setBacklog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    public ServerConfig setMode(ExecutionMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public ServerConfig setPoolSize(int poolSize) {
+        if (poolSize < 1) throw new IllegalArgumentException("Размер пула должен быть положительным");
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    public ServerConfig setQueueLimit(int queueLimit) {
+        if (queueLimit < 0) throw new IllegalArgumentException("Размер очереди не может быть отрицательным");
+        this.queueLimit = queueLimit;
+        return this;
+    }
+
+    public Path getDataDir() {
+        return dataDir;
+    }
+
+    public ServerConfig setDataDir(Path dataDir) {
+        this.dataDir = dataDir;
+        return this;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public ServerConfig setDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public ServerConfig setSnapshotInterval(Duration snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        return this;
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes;
+    }
+
+    public ServerConfig setCacheBytes(long cacheBytes) {
+        if (cacheBytes < 0) throw new IllegalArgumentException("Размер кэша не может быть отрицательным");
+        this.cacheBytes = cacheBytes;
+        return this;
+    }
+
+    public StorageMode getStorage() {
+        return storage;
+    }
+
+    public ServerConfig setStorage(StorageMode storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public IdAssignment getIds() {
+        return ids;
+    }
+
+    public ServerConfig setIds(IdAssignment ids) {
+        this.ids = ids;
+        return this;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public ServerConfig setTransport(TransportType transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public ServerConfig setKeepAlive(Duration keepAlive) {
+        if (keepAlive.isNegative() || keepAlive.isZero()) {
+            throw new IllegalArgumentException("Время keep-alive должно быть положительным");
+        }
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    public double getRateLimit() {
+        return rateLimit;
+    }
+
+    public ServerConfig setRateLimit(double rateLimit) {
+        if (!(rateLimit >= 0) || Double.isInfinite(rateLimit)) {
+            throw new IllegalArgumentException("Некорректный лимит запросов: " + rateLimit);
+        }
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    public int getRateBurst() {
+        return rateBurst > 0 ? rateBurst : (int) Math.max(1, Math.ceil(rateLimit));
+    }
+
+    public ServerConfig setRateBurst(int rateBurst) {
+        if (rateBurst < 0) throw new IllegalArgumentException("Размер всплеска не может быть отрицательным");
+        this.rateBurst = rateBurst;
+        return this;
+    }
+
+    public Path getCatalog() {
+        return catalog;
+    }
+
+    public ServerConfig setCatalog(Path catalog) {
+        this.catalog = catalog;
+        return this;
+    }
+
+    public int getWarmupRounds() {
+        return warmupRounds;
+    }
+
+    public ServerConfig setWarmupRounds(int warmupRounds) {
+        if (warmupRounds < 0) throw new IllegalArgumentException("Число раундов прогрева не может быть отрицательным");
+        this.warmupRounds = warmupRounds;
+        return this;
+    }
+
+    public boolean isExitAfterStart() {
+        return exitAfterStart;
+    }
+
+    public ServerConfig setExitAfterStart(boolean exitAfterStart) {
+        this.exitAfterStart = exitAfterStart;
+        return this;
+    }
+}
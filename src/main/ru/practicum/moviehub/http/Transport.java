@@ -0,0 +1,22 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.util.List;
+
+/*
+ * Сетевой уровень MoviesServer: принимает соединения, разбирает HTTP и вызывает обработчики контекстов.
+ * Обработчики и фильтры написаны под API com.sun.net.httpserver и не знают, какая реализация под ними.
+ */
+interface Transport {
+
+    // Запрос достаётся контексту с самым длинным совпавшим префиксом пути
+    void createContext(String path, HttpHandler handler, List<Filter> filters);
+
+    void start();
+
+    void stop();
+
+    int getPort();
+}
@@ -0,0 +1,240 @@
+package ru.practicum.moviehub.http;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.metrics.Metrics;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.MoviesStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Прогрев до открытия порта: горячие пути MoviesHandler (по id, по году, поиск, страницы, сортировка,
+ * полный список с gzip и без, 304, POST и DELETE, ошибки) прогоняются на обменах в памяти, без сокетов,
+ * чтобы первые настоящие запросы попадали в уже загруженные классы и код, скомпилированный JIT.
+ * Прогрев идёт на отдельном хранилище того же типа с выборкой из каталога и с отдельными метриками:
+ * настоящий каталог, его журнал изменений и /metrics он не трогает.
+ */
+final class Warmup {
+    // фильмов в хранилище прогрева: хватает для циклов сериализации, а раунд остаётся дешёвым
+    private static final int SAMPLE_SIZE = 500;
+    // полный список и его сжатие — самые дорогие запросы, они идут не каждый раунд
+    private static final int FULL_LIST_EVERY = 8;
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress("127.0.0.1", 0);
+
+    private final Filter.Chain chain;
+    private final List<Movie> sample;
+    // id для POST и DELETE: свободен в хранилище прогрева
+    private final int spareId;
+    private String etag;
+
+    private Warmup(MoviesStore catalog, MoviesStore scratch, long cacheBytes) {
+        sample = new ArrayList<>(SAMPLE_SIZE);
+        for (Movie movie : catalog.moviesView()) {
+            if (sample.size() == SAMPLE_SIZE) break;
+            if (movie.getTitle() != null && !movie.getTitle().isBlank()) sample.add(movie);
+        }
+        if (sample.isEmpty()) {
+            for (int id = 1; id <= SAMPLE_SIZE; id++) sample.add(new Movie(id, "Фильм номер " + id, 1950 + id % 75));
+        }
+        scratch.addAll(sample);
+        int maxId = 0;
+        for (Movie movie : sample) maxId = Math.max(maxId, movie.getId());
+        spareId = maxId == Integer.MAX_VALUE ? 0 : maxId + 1;
+
+        Metrics metrics = new Metrics();
+        scratch.setMetrics(metrics);
+        MoviesHandler handler = new MoviesHandler(scratch, cacheBytes);
+        chain = new Filter.Chain(List.of(new MetricsFilter(metrics, handler::routeLabel)), handler);
+    }
+
+    static void run(MoviesStore catalog, MoviesStore scratch, long cacheBytes, int rounds) throws IOException {
+        Warmup warmup = new Warmup(catalog, scratch, cacheBytes);
+        for (int round = 0; round < rounds; round++) {
+            warmup.round(round);
+        }
+    }
+
+    // Тело полного списка строится заранее, чтобы первый GET /movies не ждал выгрузки всего каталога.
+    // Сжатая копия по-прежнему строится при первом запросе с gzip: сжатие всего каталога заметно удлинило бы старт
+    static void primeFullList(HttpHandler handler) throws IOException {
+        handler.handle(new Exchange("GET", "/movies", null));
+    }
+
+    private void round(int round) throws IOException {
+        Movie movie = sample.get(round % sample.size());
+        String title = movie.getTitle();
+        // последнее слово названия обычно самое редкое, поиск по нему не выдаёт половину выборки
+        String[] words = title.trim().split("\\s+");
+        String word = URLEncoder.encode(words[words.length - 1], StandardCharsets.UTF_8);
+
+        etag = null;
+        send("GET", "/movies/" + movie.getId(), null, null);
+        send("GET", "/movies/" + movie.getId(), null, etag);
+        send("GET", "/movies?year=" + movie.getYear(), null, null);
+        send("GET", "/movies?yearFrom=" + movie.getYear() + "&yearTo=" + (movie.getYear() + 10), null, null);
+        send("GET", "/movies?title=" + word, null, null);
+        send("GET", "/movies?limit=20&offset=" + (round * 20) % sample.size(), null, null);
+        send("GET", "/movies?sort=year&order=desc&limit=20", null, null);
+        send("GET", "/movies?title=" + word + "&yearFrom=" + movie.getYear() + "&sort=title", null, null);
+        send("GET", "/movies/changes?limit=10", null, null);
+        if (round % FULL_LIST_EVERY == 0) {
+            Exchange ex = exchange("GET", "/movies", null);
+            ex.getRequestHeaders().set("Accept-Encoding", "gzip");
+            send(ex);
+            send("GET", "/movies", null, null);
+        }
+
+        // изменение сбрасывает кэш ответов, так что следующий раунд снова строит тела
+        byte[] body = MovieJson.toJson(new Movie(spareId, title, movie.getYear()));
+        send("POST", "/movies", body, null);
+        send("DELETE", "/movies/" + spareId, null, null);
+        send("GET", "/movies/" + spareId, null, null);
+        send("GET", "/movies/abc", null, null);
+    }
+
+    private void send(String method, String uri, byte[] body, String ifNoneMatch) throws IOException {
+        Exchange ex = exchange(method, uri, body);
+        if (ifNoneMatch != null) ex.getRequestHeaders().set("If-None-Match", ifNoneMatch);
+        send(ex);
+    }
+
+    private void send(Exchange ex) throws IOException {
+        chain.doFilter(ex);
+        if (ex.getResponseCode() >= 500) {
+            throw new IllegalStateException("Прогрев: " + ex.getRequestMethod() + " " + ex.getRequestURI()
+                    + " ответил " + ex.getResponseCode());
+        }
+        String tag = ex.getResponseHeaders().getFirst("ETag");
+        if (tag != null) etag = tag;
+    }
+
+    private static Exchange exchange(String method, String uri, byte[] body) {
+        Exchange ex = new Exchange(method, uri, body);
+        if (body != null) {
+            ex.getRequestHeaders().set("Content-Type", "application/json");
+            ex.getRequestHeaders().set("Content-Length", Integer.toString(body.length));
+        }
+        return ex;
+    }
+
+    // Обмен в памяти: тело запроса из массива, тело ответа выбрасывается. Им же пользуется MetricsFilterBenchmark
+    static final class Exchange extends HttpExchange {
+        private final String method;
+        private final URI uri;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private InputStream requestBody;
+        private OutputStream responseBody = OutputStream.nullOutputStream();
+        private int responseCode = -1;
+
+        Exchange(String method, String uri, byte[] body) {
+            this.method = method;
+            this.uri = URI.create(uri);
+            this.requestBody = new ByteArrayInputStream(body == null ? new byte[0] : body);
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return responseHeaders;
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return requestBody;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return responseBody;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+            if (responseCode >= 0) throw new IOException("Заголовки ответа уже отправлены");
+            responseCode = rCode;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return LOOPBACK;
+        }
+
+        @Override
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return LOOPBACK;
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+            if (i != null) requestBody = i;
+            if (o != null) responseBody = o;
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.moviehub.json;
+
+public class InvalidJsonException extends RuntimeException {
+    public InvalidJsonException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,160 @@
+package ru.practicum.moviehub.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Растущий буфер, в который JSON пишется сразу в UTF-8. Буферы переиспользуются через acquire/release:
+ * ответ собирается без промежуточной строки и без нового массива на каждый запрос.
+ * Экранирование совпадает с Gson по умолчанию (включая HTML-символы), поэтому байты ответов не меняются.
+ */
+final class JsonOutput {
+    private static final int INITIAL_SIZE = 4096;
+    // большие буферы (полный каталог) в пул не возвращаются, чтобы пул не держал лишнюю память
+    private static final int MAX_POOLED_SIZE = 1 << 20;
+    private static final int POOL_LIMIT = 256;
+    private static final Queue<JsonOutput> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = new byte[]{'\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xF]};
+        }
+        ESCAPES['\t'] = new byte[]{'\\', 't'};
+        ESCAPES['\b'] = new byte[]{'\\', 'b'};
+        ESCAPES['\n'] = new byte[]{'\\', 'n'};
+        ESCAPES['\r'] = new byte[]{'\\', 'r'};
+        ESCAPES['\f'] = new byte[]{'\\', 'f'};
+        ESCAPES['"'] = new byte[]{'\\', '"'};
+        ESCAPES['\\'] = new byte[]{'\\', '\\'};
+        for (char c : new char[]{'<', '>', '&', '=', '\''}) {
+            ESCAPES[c] = new byte[]{'\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xF]};
+        }
+    }
+
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int size;
+
+    private JsonOutput() {
+    }
+
+    static JsonOutput acquire() {
+        JsonOutput out = POOL.poll();
+        if (out == null) return new JsonOutput();
+        POOLED.decrementAndGet();
+        return out;
+    }
+
+    void release() {
+        size = 0;
+        if (buf.length > MAX_POOLED_SIZE) return;
+        if (POOLED.incrementAndGet() > POOL_LIMIT) {
+            POOLED.decrementAndGet();
+            return;
+        }
+        POOL.offer(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, size);
+        size = 0;
+    }
+
+    void raw(char ascii) {
+        ensure(1);
+        buf[size++] = (byte) ascii;
+    }
+
+    void raw(byte[] ascii) {
+        ensure(ascii.length);
+        System.arraycopy(ascii, 0, buf, size, ascii.length);
+        size += ascii.length;
+    }
+
+    void number(long value) {
+        if (value == Long.MIN_VALUE) {
+            raw("-9223372036854775808".getBytes());
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buf[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+        int pos = size + digits;
+        do {
+            buf[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        size += digits;
+    }
+
+    void string(String value) {
+        int length = value.length();
+        // худший случай — \\uXXXX на каждый символ
+        ensure(length * 6 + 2);
+        byte[] b = buf;
+        int p = size;
+        b[p++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                byte[] escape = ESCAPES[c];
+                if (escape == null) {
+                    b[p++] = (byte) c;
+                } else {
+                    System.arraycopy(escape, 0, b, p, escape.length);
+                    p += escape.length;
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c == '\u2028' || c == '\u2029') {
+                b[p++] = '\\';
+                b[p++] = 'u';
+                b[p++] = '2';
+                b[p++] = '0';
+                b[p++] = '2';
+                b[p++] = c == '\u2028' ? (byte) '8' : (byte) '9';
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xF0 | (codePoint >> 18));
+                b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // одиночный суррогат в UTF-8 не кодируется, как и у String.getBytes
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        b[p++] = '"';
+        size = p;
+    }
+
+    private void ensure(int extra) {
+        if (buf.length - size >= extra) return;
+        long capacity = Math.max((long) buf.length * 2, (long) size + extra);
+        if (capacity > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("JSON-ответ слишком большой");
+        buf = Arrays.copyOf(buf, (int) capacity);
+    }
+}
@@ -0,0 +1,573 @@
+package ru.practicum.moviehub.json;
+
+import ru.practicum.moviehub.api.BatchResponse;
+import ru.practicum.moviehub.api.ErrorResponse;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.ChangeFeed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Сериализация Movie, ErrorResponse и BatchResponse сразу в UTF-8 и разбор Movie прямо из байтов тела запроса,
+ * без рефлексии Gson и без промежуточных String. Вывод байт в байт совпадает с Gson по умолчанию:
+ * тот же порядок полей, null-поля пропускаются, то же экранирование.
+ */
+public final class MovieJson {
+    // при потоковой записи массива буфер сбрасывается в ответ, как только наберёт столько байтов
+    private static final int STREAM_FLUSH_BYTES = 64 * 1024;
+    private static final byte[] ID = ascii("{\"id\":");
+    private static final byte[] TITLE = ascii(",\"title\":");
+    private static final byte[] YEAR = ascii(",\"year\":");
+    private static final byte[] STATUS = ascii("{\"status\":");
+    private static final byte[] ERROR = ascii(",\"error\":");
+    private static final byte[] DETAILS = ascii(",\"details\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] SEQ = ascii("{\"seq\":");
+    private static final byte[] ADDED = ascii(",\"type\":\"added\",\"movie\":");
+    private static final byte[] DELETED = ascii(",\"type\":\"deleted\",\"movie\":");
+    private static final byte[] NEXT = ascii("{\"next\":");
+    private static final byte[] SUCCEEDED = ascii("{\"succeeded\":");
+    private static final byte[] FAILED = ascii(",\"failed\":");
+    private static final byte[] ERRORS = ascii(",\"errors\":[");
+    private static final byte[] IDS = ascii(",\"ids\":[");
+    private static final byte[] INDEX = ascii("{\"index\":");
+    private static final byte[] ITEM_ID = ascii(",\"id\":");
+    private static final byte[] ITEM_STATUS = ascii(",\"status\":");
+    private static final byte[] CHANGES = ascii(",\"changes\":[");
+
+    private MovieJson() {
+    }
+
+    public static byte[] toJson(Movie movie) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            write(out, movie);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    public static byte[] toJson(Iterable<Movie> movies) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            writeArray(out, movies, null);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            out.release();
+        }
+    }
+
+    public static byte[] toJson(ErrorResponse error) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            out.raw(STATUS);
+            out.number(error.getStatus());
+            writeError(out, error.getError(), error.getDetails());
+            out.raw('}');
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    // {"succeeded":N,"failed":N,"errors":[{"index":..,"id":..,"status":..,"error":..,"details":[..]}],"ids":[..]}
+    public static byte[] toJson(BatchResponse batch) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            out.raw(SUCCEEDED);
+            out.number(batch.getSucceeded());
+            out.raw(FAILED);
+            out.number(batch.getFailed());
+            List<BatchResponse.ItemError> errors = batch.getErrors();
+            if (errors != null) {
+                out.raw(ERRORS);
+                for (int i = 0; i < errors.size(); i++) {
+                    if (i > 0) out.raw(',');
+                    BatchResponse.ItemError error = errors.get(i);
+                    out.raw(INDEX);
+                    out.number(error.getIndex());
+                    out.raw(ITEM_ID);
+                    out.number(error.getId());
+                    out.raw(ITEM_STATUS);
+                    out.number(error.getStatus());
+                    writeError(out, error.getError(), error.getDetails());
+                    out.raw('}');
+                }
+                out.raw(']');
+            }
+            List<Integer> ids = batch.getIds();
+            if (ids != null) {
+                out.raw(IDS);
+                for (int i = 0; i < ids.size(); i++) {
+                    if (i > 0) out.raw(',');
+                    Integer id = ids.get(i);
+                    if (id == null) {
+                        out.raw(NULL);
+                    } else {
+                        out.number(id);
+                    }
+                }
+                out.raw(']');
+            }
+            out.raw('}');
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    // {"seq":N,"type":"added"|"deleted","movie":{...}}
+    public static byte[] toJson(ChangeFeed.Event event) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            write(out, event);
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    // {"next":N,"changes":[...]}: next — since для следующего запроса
+    public static byte[] toJson(long next, List<ChangeFeed.Event> events) {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            out.raw(NEXT);
+            out.number(next);
+            out.raw(CHANGES);
+            for (int i = 0; i < events.size(); i++) {
+                if (i > 0) out.raw(',');
+                write(out, events.get(i));
+            }
+            out.raw(']');
+            out.raw('}');
+            return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    // Массив пишется кусками по STREAM_FLUSH_BYTES: память не зависит от размера коллекции
+    public static void writeArray(Iterable<Movie> movies, OutputStream os) throws IOException {
+        JsonOutput out = JsonOutput.acquire();
+        try {
+            writeArray(out, movies, os);
+            out.writeTo(os);
+        } finally {
+            out.release();
+        }
+    }
+
+    // Пустое тело и литерал null дают null, как у Gson.fromJson
+    public static Movie parseMovie(byte[] json) {
+        return new MovieParser(json, 0, json.length).parse();
+    }
+
+    /*
+     * Разметка массива фильмов для разбора по частям в нескольких потоках. Возвращает позиции
+     * разделителей: '[', запятые верхнего уровня, ']'. Часть i — элементы строго между cuts[i] и cuts[i + 1],
+     * частей не больше parts, и режутся они примерно поровну по байтам. Здесь проверяются только
+     * строки и скобки, сами элементы проверяет parseArrayPart.
+     */
+    public static int[] splitArray(byte[] json, int parts) {
+        int end = json.length;
+        int pos = 0;
+        while (pos < end && isWhitespace(json[pos])) pos++;
+        if (pos == end || json[pos] != '[') throw new InvalidJsonException("ожидался массив фильмов");
+        int[] cuts = new int[parts + 1];
+        cuts[0] = pos;
+        int count = 1;
+        long step = Math.max(1, (end - pos) / parts);
+        long target = pos + step;
+        int depth = 0;
+        for (pos++; pos < end; pos++) {
+            byte b = json[pos];
+            if (b == '"') {
+                pos++;
+                while (pos < end && json[pos] != '"') {
+                    if (json[pos] == '\\') pos++;
+                    pos++;
+                }
+                if (pos >= end) throw new InvalidJsonException("незакрытая строка (позиция " + end + ")");
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    if (b == '}') throw new InvalidJsonException("лишняя '}' (позиция " + pos + ")");
+                    break;
+                }
+                depth--;
+            } else if (b == ',' && depth == 0 && pos >= target && count < parts) {
+                cuts[count++] = pos;
+                target = pos + step;
+            }
+        }
+        if (pos >= end) throw new InvalidJsonException("незакрытый массив");
+        cuts[count++] = pos;
+        for (pos++; pos < end; pos++) {
+            if (!isWhitespace(json[pos])) {
+                throw new InvalidJsonException("лишние данные после массива (позиция " + pos + ")");
+            }
+        }
+        return Arrays.copyOf(cuts, count);
+    }
+
+    // Элементы массива между разделителями from и to из splitArray; элементы null пропускаются
+    public static List<Movie> parseArrayPart(byte[] json, int from, int to) {
+        return new MovieParser(json, from + 1, to).parseElements();
+    }
+
+    private static void writeArray(JsonOutput out, Iterable<Movie> movies, OutputStream os) throws IOException {
+        out.raw('[');
+        boolean first = true;
+        for (Movie movie : movies) {
+            if (!first) out.raw(',');
+            first = false;
+            write(out, movie);
+            if (os != null && out.size() >= STREAM_FLUSH_BYTES) out.writeTo(os);
+        }
+        out.raw(']');
+    }
+
+    private static void write(JsonOutput out, Movie movie) {
+        if (movie == null) {
+            out.raw(NULL);
+            return;
+        }
+        out.raw(ID);
+        out.number(movie.getId());
+        if (movie.getTitle() != null) {
+            out.raw(TITLE);
+            out.string(movie.getTitle());
+        }
+        out.raw(YEAR);
+        out.number(movie.getYear());
+        out.raw('}');
+    }
+
+    // Поля error и details, общие у ErrorResponse и ошибки элемента пакета
+    private static void writeError(JsonOutput out, String error, List<String> details) {
+        if (error != null) {
+            out.raw(ERROR);
+            out.string(error);
+        }
+        if (details == null) return;
+        out.raw(DETAILS);
+        out.raw('[');
+        for (int i = 0; i < details.size(); i++) {
+            if (i > 0) out.raw(',');
+            String detail = details.get(i);
+            if (detail == null) {
+                out.raw(NULL);
+            } else {
+                out.string(detail);
+            }
+        }
+        out.raw(']');
+    }
+
+    private static void write(JsonOutput out, ChangeFeed.Event event) {
+        out.raw(SEQ);
+        out.number(event.seq());
+        out.raw(event.kind() == ChangeFeed.Kind.ADDED ? ADDED : DELETED);
+        out.raw(ID);
+        out.number(event.id());
+        if (event.title() != null) {
+            out.raw(TITLE);
+            out.string(event.title());
+        }
+        out.raw(YEAR);
+        out.number(event.year());
+        out.raw('}');
+        out.raw('}');
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Разбор одного объекта Movie. Строгий JSON: неизвестные поля пропускаются, null в числовом поле
+     * оставляет 0, числа вида 1.0 и числа в кавычках принимаются для int, как у Gson.
+     */
+    private static final class MovieParser {
+        private final byte[] in;
+        // разбор идёт в [pos, end): целый документ или часть массива
+        private final int end;
+        private int pos;
+
+        MovieParser(byte[] in, int from, int to) {
+            this.in = in;
+            this.pos = from;
+            this.end = to;
+        }
+
+        Movie parse() {
+            skipWhitespace();
+            if (pos == end) return null;
+            Movie movie;
+            if (in[pos] == 'n') {
+                literal("null");
+                movie = null;
+            } else {
+                movie = readMovie();
+            }
+            skipWhitespace();
+            if (pos != end) throw error("лишние данные после JSON-документа");
+            return movie;
+        }
+
+        List<Movie> parseElements() {
+            List<Movie> movies = new ArrayList<>();
+            skipWhitespace();
+            if (pos == end) return movies;
+            while (true) {
+                skipWhitespace();
+                if (peek() == 'n') {
+                    literal("null");
+                } else {
+                    movies.add(readMovie());
+                }
+                skipWhitespace();
+                if (pos == end) return movies;
+                expect(',');
+            }
+        }
+
+        private Movie readMovie() {
+            expect('{');
+            Movie movie = new Movie();
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return movie;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                switch (name) {
+                    case "id" -> {
+                        if (!skipNull()) movie.setId(readInt());
+                    }
+                    case "year" -> {
+                        if (!skipNull()) movie.setYear(readInt());
+                    }
+                    case "title" -> movie.setTitle(readStringValue());
+                    default -> skipValue(0);
+                }
+                skipWhitespace();
+                byte next = next();
+                if (next == '}') return movie;
+                if (next != ',') throw error("ожидалась ',' или '}'");
+            }
+        }
+
+        private boolean skipNull() {
+            if (peek() != 'n') return false;
+            literal("null");
+            return true;
+        }
+
+        // Строковое поле: как и Gson, принимает число или true/false в виде текста
+        private String readStringValue() {
+            byte b = peek();
+            if (b == '"') return readString();
+            if (b == 'n') {
+                literal("null");
+                return null;
+            }
+            if (b == 't') {
+                literal("true");
+                return "true";
+            }
+            if (b == 'f') {
+                literal("false");
+                return "false";
+            }
+            int start = pos;
+            skipNumber();
+            return new String(in, start, pos - start, StandardCharsets.US_ASCII);
+        }
+
+        private int readInt() {
+            boolean quoted = peek() == '"';
+            if (quoted) pos++;
+            int start = pos;
+            boolean negative = peek() == '-';
+            if (negative) pos++;
+            long value = 0;
+            int digitsStart = pos;
+            while (pos < end && in[pos] >= '0' && in[pos] <= '9' && pos - digitsStart < 11) {
+                value = value * 10 + (in[pos++] - '0');
+            }
+            boolean plain = pos > digitsStart && (pos == end || !isNumberChar(in[pos]));
+            int result;
+            if (plain && (negative ? -value : value) == (int) (negative ? -value : value)) {
+                result = (int) (negative ? -value : value);
+            } else {
+                pos = start;
+                skipNumber();
+                result = integralValue(new String(in, start, pos - start, StandardCharsets.US_ASCII));
+            }
+            if (quoted) expect('"');
+            return result;
+        }
+
+        private int integralValue(String number) {
+            double value;
+            try {
+                value = Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                throw error("некорректное число " + number);
+            }
+            if (value != (int) value) throw error("ожидалось целое число, получено " + number);
+            return (int) value;
+        }
+
+        private String readString() {
+            expect('"');
+            int start = pos;
+            while (pos < end) {
+                byte b = in[pos];
+                if (b == '"') {
+                    String value = new String(in, start, pos - start, StandardCharsets.UTF_8);
+                    pos++;
+                    return value;
+                }
+                if (b == '\\') return readEscapedString(start);
+                pos++;
+            }
+            throw error("незакрытая строка");
+        }
+
+        private String readEscapedString(int start) {
+            StringBuilder sb = new StringBuilder(pos - start + 16);
+            int runStart = start;
+            while (pos < end) {
+                byte b = in[pos];
+                if (b == '"') {
+                    sb.append(new String(in, runStart, pos - runStart, StandardCharsets.UTF_8));
+                    pos++;
+                    return sb.toString();
+                }
+                if (b != '\\') {
+                    pos++;
+                    continue;
+                }
+                sb.append(new String(in, runStart, pos - runStart, StandardCharsets.UTF_8));
+                pos++;
+                byte escape = next();
+                switch (escape) {
+                    case '"', '\\', '/' -> sb.append((char) escape);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > end) throw error("незаконченная \\u-последовательность");
+                        int c = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(in[pos++], 16);
+                            if (digit < 0) throw error("некорректная \\u-последовательность");
+                            c = c * 16 + digit;
+                        }
+                        sb.append((char) c);
+                    }
+                    default -> throw error("некорректная escape-последовательность");
+                }
+                runStart = pos;
+            }
+            throw error("незакрытая строка");
+        }
+
+        private void skipValue(int depth) {
+            if (depth > 64) throw error("слишком глубокая вложенность");
+            byte b = peek();
+            switch (b) {
+                case '"' -> readString();
+                case 't' -> literal("true");
+                case 'f' -> literal("false");
+                case 'n' -> literal("null");
+                case '{', '[' -> {
+                    byte close = b == '{' ? (byte) '}' : (byte) ']';
+                    pos++;
+                    skipWhitespace();
+                    if (peek() == close) {
+                        pos++;
+                        return;
+                    }
+                    while (true) {
+                        skipWhitespace();
+                        if (b == '{') {
+                            readString();
+                            skipWhitespace();
+                            expect(':');
+                            skipWhitespace();
+                        }
+                        skipValue(depth + 1);
+                        skipWhitespace();
+                        byte next = next();
+                        if (next == close) return;
+                        if (next != ',') throw error("ожидалась ',' или '" + (char) close + "'");
+                    }
+                }
+                default -> skipNumber();
+            }
+        }
+
+        private void skipNumber() {
+            int start = pos;
+            while (pos < end && isNumberChar(in[pos])) pos++;
+            if (pos == start) throw error("неожиданный символ");
+        }
+
+        private static boolean isNumberChar(byte b) {
+            return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+        }
+
+        private void literal(String word) {
+            for (int i = 0; i < word.length(); i++) {
+                if (pos >= end || in[pos] != word.charAt(i)) throw error("ожидалось " + word);
+                pos++;
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < end && isWhitespace(in[pos])) pos++;
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw error("ожидался символ '" + c + "'");
+        }
+
+        private byte peek() {
+            if (pos >= end) throw error("неожиданный конец JSON");
+            return in[pos];
+        }
+
+        private byte next() {
+            byte b = peek();
+            pos++;
+            return b;
+        }
+
+        private InvalidJsonException error(String message) {
+            return new InvalidJsonException(message + " (позиция " + pos + ")");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.practicum.moviehub.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Гистограмма задержек с фиксированными границами в стиле Prometheus.
+ * Каждая корзина — отдельный LongAdder, поэтому запись из многих потоков идёт без блокировок и почти без конфликтов.
+ */
+public class LatencyHistogram {
+    // границы корзин в секундах: от 50 мкс до 10 с
+    private static final double[] BOUNDS_SECONDS = {
+            0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * 1_000_000_000L);
+        }
+    }
+
+    // последняя корзина — +Inf
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) i++;
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) count += bucket.sum();
+        return count;
+    }
+
+    void write(Writer out, String name, String labels) throws IOException {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < BOUNDS_SECONDS.length ? Double.toString(BOUNDS_SECONDS[i]) : "+Inf";
+            out.write(name + "_bucket{" + prefix + "le=\"" + le + "\"} " + cumulative + "\n");
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.write(name + "_sum" + suffix + " " + sumNanos.sum() / 1e9 + "\n");
+        out.write(name + "_count" + suffix + " " + cumulative + "\n");
+    }
+}
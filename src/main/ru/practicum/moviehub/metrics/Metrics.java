@@ -0,0 +1,123 @@
+package ru.practicum.moviehub.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * Реестр метрик сервера. На горячем пути только LongAdder и поиск по ConcurrentHashMap
+ * с заранее построенными ключами, без аллокаций; текст для Prometheus собирается только при чтении /metrics.
+ */
+public class Metrics {
+
+    public enum StoreOperation {
+        ADD, ADD_BATCH, FIND, DELETE, DELETE_BATCH, LIST, PAGE, BY_YEAR, BY_YEAR_RANGE, SEARCH, QUERY
+    }
+
+    public static final class RouteMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(600);
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+
+        public void record(int status, long nanos, long requestBytes, long responseBytes) {
+            latency.record(nanos);
+            status(status).increment();
+            this.requestBytes.add(requestBytes);
+            this.responseBytes.add(responseBytes);
+        }
+
+        private LongAdder status(int status) {
+            int index = status >= 0 && status < 600 ? status : 0;
+            LongAdder counter = statuses.get(index);
+            if (counter == null) {
+                statuses.compareAndSet(index, null, new LongAdder());
+                counter = statuses.get(index);
+            }
+            return counter;
+        }
+    }
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final Map<StoreOperation, LatencyHistogram> storeOperations = new EnumMap<>(StoreOperation.class);
+    private volatile LongSupplier storeSize = () -> 0;
+
+    public Metrics() {
+        for (StoreOperation op : StoreOperation.values()) {
+            storeOperations.put(op, new LatencyHistogram());
+        }
+    }
+
+    public RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        return metrics != null ? metrics : routes.computeIfAbsent(route, r -> new RouteMetrics());
+    }
+
+    public void recordStore(StoreOperation op, long startNanos) {
+        storeOperations.get(op).record(System.nanoTime() - startNanos);
+    }
+
+    public void setStoreSize(LongSupplier storeSize) {
+        this.storeSize = storeSize;
+    }
+
+    // Текстовый формат Prometheus 0.0.4
+    public void writePrometheus(Writer out) throws IOException {
+        Map<String, RouteMetrics> sorted = new TreeMap<>(routes);
+
+        out.write("# HELP movies_http_requests_total Количество HTTP-запросов по маршруту и статусу.\n");
+        out.write("# TYPE movies_http_requests_total counter\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            AtomicReferenceArray<LongAdder> statuses = e.getValue().statuses;
+            for (int status = 0; status < statuses.length(); status++) {
+                LongAdder counter = statuses.get(status);
+                if (counter == null) continue;
+                out.write("movies_http_requests_total{route=\"" + escape(e.getKey()) + "\",status=\"" + status + "\"} "
+                        + counter.sum() + "\n");
+            }
+        }
+
+        out.write("# HELP movies_http_request_duration_seconds Время обработки HTTP-запроса.\n");
+        out.write("# TYPE movies_http_request_duration_seconds histogram\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            e.getValue().latency.write(out, "movies_http_request_duration_seconds",
+                    "route=\"" + escape(e.getKey()) + "\"");
+        }
+
+        out.write("# HELP movies_http_request_bytes_total Байты тел запросов.\n");
+        out.write("# TYPE movies_http_request_bytes_total counter\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            out.write("movies_http_request_bytes_total{route=\"" + escape(e.getKey()) + "\"} "
+                    + e.getValue().requestBytes.sum() + "\n");
+        }
+
+        out.write("# HELP movies_http_response_bytes_total Байты тел ответов (после сжатия).\n");
+        out.write("# TYPE movies_http_response_bytes_total counter\n");
+        for (Map.Entry<String, RouteMetrics> e : sorted.entrySet()) {
+            out.write("movies_http_response_bytes_total{route=\"" + escape(e.getKey()) + "\"} "
+                    + e.getValue().responseBytes.sum() + "\n");
+        }
+
+        out.write("# HELP movies_store_size Количество фильмов в каталоге.\n");
+        out.write("# TYPE movies_store_size gauge\n");
+        out.write("movies_store_size " + storeSize.getAsLong() + "\n");
+
+        out.write("# HELP movies_store_operation_duration_seconds Время операций MoviesStore.\n");
+        out.write("# TYPE movies_store_operation_duration_seconds histogram\n");
+        for (Map.Entry<StoreOperation, LatencyHistogram> e : storeOperations.entrySet()) {
+            if (e.getValue().count() == 0) continue;
+            e.getValue().write(out, "movies_store_operation_duration_seconds",
+                    "op=\"" + e.getKey().name().toLowerCase() + "\"");
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,103 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.json.InvalidJsonException;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Загрузка каталога при старте из файла: JSON-массива фильмов (в том виде, в каком его отдаёт GET /movies)
+ * или бинарного снимка snapshot.bin из --data-dir. Формат определяется по первым байтам.
+ * Файл режется на части по границам элементов, части разбираются в нескольких потоках
+ * и добавляются в хранилище пакетами через addAll. Каталог считается доверенным: проверки POST /movies
+ * к нему не применяются, фильмы с занятым id считаются дубликатами и пропускаются.
+ */
+public final class CatalogLoader {
+    // частей больше, чем потоков: потоки, получившие лёгкие части, берут следующие
+    private static final int PARTS_PER_THREAD = 4;
+
+    private CatalogLoader() {
+    }
+
+    public record Result(int loaded, int duplicates, long nanos) {
+    }
+
+    public static Result load(Path file, MoviesStore store, int threads) throws IOException {
+        long start = System.nanoTime();
+        int parts = Math.max(1, threads) * PARTS_PER_THREAD;
+        List<Callable<int[]>> tasks = new ArrayList<>(parts);
+        if (isSnapshot(file)) {
+            for (SnapshotFile.Records records : SnapshotFile.open(file).split(parts)) {
+                tasks.add(() -> {
+                    List<Movie> batch = new ArrayList<>(records.count());
+                    records.forEach(batch::add);
+                    return add(store, batch);
+                });
+            }
+        } else {
+            byte[] json = Files.readAllBytes(file);
+            int[] cuts;
+            try {
+                cuts = MovieJson.splitArray(json, parts);
+            } catch (InvalidJsonException e) {
+                throw invalid(file, e);
+            }
+            for (int i = 0; i + 1 < cuts.length; i++) {
+                int from = cuts[i];
+                int to = cuts[i + 1];
+                tasks.add(() -> add(store, MovieJson.parseArrayPart(json, from, to)));
+            }
+        }
+
+        int loaded = 0;
+        int duplicates = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            for (Future<int[]> future : pool.invokeAll(tasks)) {
+                int[] counts = future.get();
+                loaded += counts[0];
+                duplicates += counts[1];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка каталога прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidJsonException json) throw invalid(file, json);
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IOException("Не удалось загрузить каталог " + file, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(loaded, duplicates, System.nanoTime() - start);
+    }
+
+    private static boolean isSnapshot(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return SnapshotFile.hasMagic(in.readNBytes(4));
+        }
+    }
+
+    private static IOException invalid(Path file, InvalidJsonException e) {
+        return new IOException("Некорректный каталог " + file + ": " + e.getMessage(), e);
+    }
+
+    // {добавлено, дубликатов}
+    private static int[] add(MoviesStore store, List<Movie> batch) {
+        int added = 0;
+        for (boolean ok : store.addAll(batch)) {
+            if (ok) added++;
+        }
+        return new int[]{added, batch.size() - added};
+    }
+}
@@ -0,0 +1,174 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.api.ResyncRequiredException;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Кольцевой буфер последних изменений каталога с порядковыми номерами.
+ * Номер присваивается внутри изменения (под блокировкой по id), поэтому порядок событий одного id
+ * совпадает с порядком применения. Читателям событие видно только после published: к этому
+ * моменту изменение уже видно и в самом хранилище, и снимок каталога, снятый после lastSeq(),
+ * содержит все события до lastSeq() включительно.
+ * Запись идёт без общей блокировки: номер берётся из AtomicLong, published отмечает номер в своей
+ * ячейке и сдвигает visible по CAS, пока следующий номер отмечен. Ждать свободной ячейки писатель
+ * не может — он ещё внутри compute хранилища, — поэтому редкие номера, чья ячейка занята, идут в overflow.
+ * Блокировка осталась только для ожидающих в await, и published берёт её, лишь когда такие есть.
+ */
+public class ChangeFeed {
+
+    public enum Kind {
+        ADDED,
+        DELETED
+    }
+
+    public record Event(long seq, Kind kind, int id, String title, int year) {
+        public Movie movie() {
+            return new Movie(id, title, year);
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<ChangeFeed> VISIBLE =
+            AtomicLongFieldUpdater.newUpdater(ChangeFeed.class, "visible");
+
+    private final AtomicReferenceArray<Event> ring;
+    // номер, опубликованный в ячейке и ещё не учтённый в visible (или уже учтённый — тогда ячейка свободна)
+    private final AtomicLongArray done;
+    // опубликованные номера, чья ячейка была занята: отставший писатель задержал visible больше чем на ёмкость
+    private final Set<Long> overflow = new ConcurrentSkipListSet<>();
+    private final int mask;
+    // номер перед первым событием; отсчёт от текущего времени, чтобы номера росли и через перезапуски
+    private final long start;
+    private final AtomicLong last;
+    private volatile long visible;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private volatile int waiting;
+
+    ChangeFeed(int capacity) {
+        this(capacity, System.currentTimeMillis() * 1000);
+    }
+
+    ChangeFeed(int capacity, long start) {
+        if (capacity < 1) throw new IllegalArgumentException("Ёмкость журнала изменений должна быть положительной");
+        int length = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        ring = new AtomicReferenceArray<>(length);
+        done = new AtomicLongArray(length);
+        mask = length - 1;
+        this.start = start;
+        last = new AtomicLong(start);
+        visible = start;
+    }
+
+    // Номер последнего видимого события; с него клиент продолжает после полной выгрузки каталога
+    public long lastSeq() {
+        return visible;
+    }
+
+    // События с номерами после since, не больше limit
+    public List<Event> read(long since, int limit) {
+        long upTo = visible;
+        checkSince(since, upTo);
+        return copy(since, upTo, limit);
+    }
+
+    // Как read, но если новых событий нет, ждёт их не дольше timeoutNanos
+    public List<Event> await(long since, int limit, long timeoutNanos) throws InterruptedException {
+        checkSince(since, visible);
+        if (visible == since && timeoutNanos > 0) {
+            lock.lock();
+            try {
+                // waiting растёт до проверки visible: published либо увидит ожидающего, либо сдвиг увидим мы
+                waiting++;
+                try {
+                    long remaining = timeoutNanos;
+                    while (visible == since && remaining > 0) {
+                        remaining = published.awaitNanos(remaining);
+                    }
+                } finally {
+                    waiting--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        // пока ждали, буфер мог уйти вперёд дальше since
+        return read(since, limit);
+    }
+
+    long append(Kind kind, Movie movie) {
+        long seq = last.incrementAndGet();
+        // если в полёте больше изменений, чем ячеек, событие затирает неопубликованное; его читатель получит resync
+        ring.set((int) (seq & mask), new Event(seq, kind, movie.getId(), movie.getTitle(), movie.getYear()));
+        return seq;
+    }
+
+    // Изменение с номером seq стало видно в хранилище
+    void published(long seq) {
+        if (seq <= visible || seq > last.get()) return;
+        mark(seq);
+        boolean advanced = false;
+        while (true) {
+            long current = visible;
+            long next = current + 1;
+            if (done.get((int) (next & mask)) != next && !overflow.remove(next)) break;
+            // сдвинуть мог и другой писатель; тогда проверяем следующую ячейку уже за ним
+            if (VISIBLE.compareAndSet(this, current, next)) advanced = true;
+        }
+        if (advanced && waiting > 0) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Ячейку занимает другой ещё не учтённый номер только при отставании больше ёмкости; тогда номер идёт в overflow
+    private void mark(long seq) {
+        int slot = (int) (seq & mask);
+        while (true) {
+            long previous = done.get(slot);
+            if (previous > visible) {
+                overflow.add(seq);
+                return;
+            }
+            if (done.compareAndSet(slot, previous, seq)) return;
+        }
+    }
+
+    private void checkSince(long since, long upTo) {
+        if (since < oldest() || since > upTo) throw resync(since);
+    }
+
+    private long oldest() {
+        return Math.max(start, last.get() - done.length());
+    }
+
+    private ResyncRequiredException resync(long since) {
+        return new ResyncRequiredException("Изменения после " + since + " недоступны, доступны после " + oldest());
+    }
+
+    // Без блокировки ячейку могли перезаписать, пока копировали: номер события это покажет
+    private List<Event> copy(long since, long upTo, int limit) {
+        long to = Math.min(upTo, since + Math.max(limit, 0));
+        List<Event> events = new ArrayList<>((int) (to - since));
+        for (long seq = since + 1; seq <= to; seq++) {
+            Event event = ring.get((int) (seq & mask));
+            if (event == null || event.seq() != seq) throw resync(since);
+            events.add(event);
+        }
+        return events;
+    }
+}
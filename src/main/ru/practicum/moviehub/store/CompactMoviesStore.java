@@ -0,0 +1,543 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Каталог без объекта на каждый фильм. id, год и ссылка на название лежат в параллельных
+ * int-массивах по номеру слота, id -> слот — открытая адресация по int без упаковки,
+ * названия — UTF-8 в одном буфере, в куче или вне её. Movie создаётся только при выдаче наружу.
+ * Изменения идут под блокировкой записи, чтения — под блокировкой чтения.
+ */
+public class CompactMoviesStore extends MoviesStore {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int VIEW_BATCH = 256;
+    // значения titleLengths, кроме длины названия
+    private static final int NULL_TITLE = -1;
+    private static final int FREE = -2;
+    // ячейки таблицы id -> слот хранят slot + 1
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    // индекс слов чистится от удалённых id целиком, когда их становится больше половины
+    private static final int MIN_STALE_TOKENS_TO_REBUILD = 4096;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TitleArena titles;
+
+    private int[] ids;
+    private int[] years;
+    private int[] titleOffsets;
+    private int[] titleLengths;
+    // позиция слота в списке его года; у свободного слота — следующий свободный слот
+    private int[] yearPositions;
+    private int slotCount;
+    private int freeHead = -1;
+    private volatile int size;
+
+    private int[] table;
+    private int tableUsed;
+
+    private final NavigableMap<Integer, IntList> byYear = new TreeMap<>();
+    // слово -> id фильмов; при удалении не трогается, лишние id отсеиваются проверкой названия
+    private final NavigableMap<String, IntList> byToken = new TreeMap<>();
+    private long tokenEntries;
+    private long staleTokenEntries;
+
+    public CompactMoviesStore() {
+        this(false);
+    }
+
+    public CompactMoviesStore(boolean offHeapTitles) {
+        this(offHeapTitles, INITIAL_SLOTS);
+    }
+
+    public CompactMoviesStore(boolean offHeapTitles, int expectedSize) {
+        int slots = Math.max(expectedSize, 16);
+        ids = new int[slots];
+        years = new int[slots];
+        titleOffsets = new int[slots];
+        titleLengths = new int[slots];
+        yearPositions = new int[slots];
+        table = new int[tableSizeFor(slots)];
+        titles = new TitleArena(offHeapTitles, slots * 16);
+    }
+
+    @Override
+    public Collection<Movie> moviesView() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Movie> iterator() {
+                return new ViewIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (titleLengths[slot] != FREE) remove(ids[slot]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    List<Movie> snapshotAll() {
+        lock.readLock().lock();
+        try {
+            List<Movie> all = new ArrayList<>(size);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (titleLengths[slot] != FREE) all.add(movieAt(slot));
+            }
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    List<Movie> page(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Movie> page = new ArrayList<>(Math.min(limit, size));
+            int skipped = 0;
+            for (int slot = 0; slot < slotCount && page.size() < limit; slot++) {
+                if (titleLengths[slot] == FREE) continue;
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(movieAt(slot));
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Упорядоченного по id индекса здесь нет ради памяти: обход слотов с кучей из limit меньших id,
+    // фильмы собираются только для попавших в страницу
+    @Override
+    List<Movie> pageAfter(int after, int limit) {
+        lock.readLock().lock();
+        try {
+            PriorityQueue<Integer> top = new PriorityQueue<>(Math.min(limit, 1024) + 1,
+                    (a, b) -> Integer.compare(ids[b], ids[a]));
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (titleLengths[slot] == FREE || ids[slot] <= after) continue;
+                if (top.size() < limit) {
+                    top.add(slot);
+                } else if (ids[slot] < ids[top.peek()]) {
+                    top.poll();
+                    top.add(slot);
+                }
+            }
+            List<Movie> page = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                page.add(movieAt(top.poll()));
+            }
+            Collections.reverse(page);
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    Movie lookup(int id) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            return slot < 0 ? null : movieAt(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    int yearCount(int yearFrom, int yearTo) {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (IntList bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+                count += bucket.size;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    List<Movie> moviesOfYear(int year) {
+        lock.readLock().lock();
+        try {
+            IntList bucket = byYear.get(year);
+            List<Movie> result = new ArrayList<>(bucket == null ? 0 : bucket.size);
+            if (bucket != null) addMovies(bucket, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    List<Movie> yearRange(int yearFrom, int yearTo) {
+        lock.readLock().lock();
+        try {
+            List<Movie> result = new ArrayList<>();
+            for (IntList bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+                addMovies(bucket, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Вся выборка под одной блокировкой чтения — это снимок каталога, повторять её не придётся
+    @Override
+    List<Movie> select(MovieQuery query) {
+        lock.readLock().lock();
+        try {
+            return super.select(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    Iterable<Integer> years(int yearFrom, int yearTo, boolean descending) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, IntList> range = byYear.subMap(yearFrom, true, yearTo, true);
+            return new ArrayList<>(descending ? range.descendingKeySet() : range.navigableKeySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    void scan(int yearFrom, int yearTo, Predicate<Movie> sink) {
+        lock.readLock().lock();
+        try {
+            if (yearFrom == Integer.MIN_VALUE && yearTo == Integer.MAX_VALUE) {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (titleLengths[slot] != FREE && !sink.test(movieAt(slot))) return;
+                }
+                return;
+            }
+            for (IntList bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+                for (int i = 0; i < bucket.size; i++) {
+                    if (!sink.test(movieAt(bucket.values[i]))) return;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Та же семантика, что у TitleIndex: все слова, кроме последнего, целиком, последнее — префиксом
+    @Override
+    List<Movie> titleSearch(String query) {
+        List<String> tokens = new ArrayList<>(TitleIndex.tokenize(query));
+        List<Movie> result = new ArrayList<>();
+        if (tokens.isEmpty()) return result;
+        String prefix = tokens.remove(tokens.size() - 1);
+
+        lock.readLock().lock();
+        try {
+            Collection<IntList> candidates;
+            if (tokens.isEmpty()) {
+                candidates = byToken.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+            } else {
+                IntList smallest = null;
+                for (String token : tokens) {
+                    IntList bucket = byToken.get(token);
+                    if (bucket == null) return result;
+                    if (smallest == null || bucket.size < smallest.size) smallest = bucket;
+                }
+                candidates = List.of(smallest);
+            }
+
+            Set<Integer> seen = new HashSet<>();
+            for (IntList bucket : candidates) {
+                for (int i = 0; i < bucket.size; i++) {
+                    int slot = findSlot(bucket.values[i]);
+                    if (slot < 0 || titleLengths[slot] == NULL_TITLE) continue;
+                    Movie movie = movieAt(slot);
+                    if (matches(TitleIndex.tokenize(movie.getTitle()), tokens, prefix) && seen.add(movie.getId())) {
+                        result.add(movie);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    boolean insert(Movie movie) {
+        String title = movie.getTitle();
+        byte[] encoded = title == null ? null : title.getBytes(StandardCharsets.UTF_8);
+        Set<String> tokens = TitleIndex.tokenize(title);
+
+        long seq = 0;
+        lock.writeLock().lock();
+        try {
+            int id = movie.getId();
+            if (findSlot(id) >= 0) return false;
+            onAdded(movie);
+
+            int slot = allocateSlot();
+            ids[slot] = id;
+            years[slot] = movie.getYear();
+            if (encoded == null) {
+                titleOffsets[slot] = 0;
+                titleLengths[slot] = NULL_TITLE;
+            } else {
+                titleOffsets[slot] = appendTitle(encoded);
+                titleLengths[slot] = encoded.length;
+            }
+            putSlot(id, slot);
+
+            IntList bucket = byYear.computeIfAbsent(movie.getYear(), y -> new IntList());
+            yearPositions[slot] = bucket.size;
+            bucket.add(slot);
+            for (String token : tokens) {
+                byToken.computeIfAbsent(token, t -> new IntList()).add(id);
+            }
+            tokenEntries += tokens.size();
+
+            size++;
+            seq = added(movie);
+            changed();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+            // читатели берут блокировку на чтение, поэтому изменение видно им только после unlock
+            if (seq != 0) changes().published(seq);
+        }
+    }
+
+    @Override
+    Movie remove(int id) {
+        long seq = 0;
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(id);
+            if (slot < 0) return null;
+            Movie removed = movieAt(slot);
+            onDeleted(removed);
+
+            removeSlot(id);
+            IntList bucket = byYear.get(years[slot]);
+            int moved = bucket.removeAt(yearPositions[slot]);
+            if (moved != slot) yearPositions[moved] = yearPositions[slot];
+            if (bucket.size == 0) byYear.remove(years[slot]);
+            if (titleLengths[slot] > 0) titles.release(titleLengths[slot]);
+            staleTokenEntries += TitleIndex.tokenize(removed.getTitle()).size();
+
+            titleLengths[slot] = FREE;
+            yearPositions[slot] = freeHead;
+            freeHead = slot;
+            size--;
+            seq = deleted(removed);
+            changed();
+            rebuildTokensIfStale();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+            if (seq != 0) changes().published(seq);
+        }
+    }
+
+    private Movie movieAt(int slot) {
+        int length = titleLengths[slot];
+        String title = length == NULL_TITLE ? null : titles.read(titleOffsets[slot], length);
+        return new Movie(ids[slot], title, years[slot]);
+    }
+
+    private void addMovies(IntList slots, List<Movie> result) {
+        for (int i = 0; i < slots.size; i++) {
+            result.add(movieAt(slots.values[i]));
+        }
+    }
+
+    private static boolean matches(Set<String> titleTokens, List<String> tokens, String prefix) {
+        if (!titleTokens.containsAll(tokens)) return false;
+        for (String token : titleTokens) {
+            if (token.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private int allocateSlot() {
+        if (freeHead >= 0) {
+            int slot = freeHead;
+            freeHead = yearPositions[slot];
+            return slot;
+        }
+        if (slotCount == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            years = Arrays.copyOf(years, capacity);
+            titleOffsets = Arrays.copyOf(titleOffsets, capacity);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+            yearPositions = Arrays.copyOf(yearPositions, capacity);
+        }
+        return slotCount++;
+    }
+
+    private int appendTitle(byte[] title) {
+        if (!titles.fits(title.length) && titles.worthCompacting()) {
+            titles.compact(titleOffsets, titleLengths, slotCount);
+        }
+        return titles.append(title);
+    }
+
+    private void rebuildTokensIfStale() {
+        if (staleTokenEntries < MIN_STALE_TOKENS_TO_REBUILD || staleTokenEntries * 2 < tokenEntries) return;
+        byToken.clear();
+        tokenEntries = 0;
+        staleTokenEntries = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (titleLengths[slot] < 0) continue;
+            Set<String> tokens = TitleIndex.tokenize(titles.read(titleOffsets[slot], titleLengths[slot]));
+            for (String token : tokens) {
+                byToken.computeIfAbsent(token, t -> new IntList()).add(ids[slot]);
+            }
+            tokenEntries += tokens.size();
+        }
+    }
+
+    // --- таблица id -> слот: линейное пробирование, заполнение не больше половины
+
+    private int findSlot(int id) {
+        int mask = table.length - 1;
+        for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry == EMPTY) return -1;
+            if (entry > 0 && ids[entry - 1] == id) return entry - 1;
+        }
+    }
+
+    // id ещё нет в таблице — это проверено вызывающим
+    private void putSlot(int id, int slot) {
+        if ((tableUsed + 1) * 2 > table.length) rehash();
+        int mask = table.length - 1;
+        int i = hash(id) & mask;
+        while (table[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == EMPTY) tableUsed++;
+        table[i] = slot + 1;
+    }
+
+    private void removeSlot(int id) {
+        int mask = table.length - 1;
+        for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry > 0 && ids[entry - 1] == id) {
+                table[i] = TOMBSTONE;
+                return;
+            }
+        }
+    }
+
+    // Новый размер считается по живым записям, надгробия при этом отбрасываются
+    private void rehash() {
+        int[] old = table;
+        table = new int[tableSizeFor(size + 1)];
+        tableUsed = 0;
+        int mask = table.length - 1;
+        for (int entry : old) {
+            if (entry <= 0) continue;
+            int i = hash(ids[entry - 1]) & mask;
+            while (table[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            table[i] = entry;
+            tableUsed++;
+        }
+    }
+
+    private static int tableSizeFor(int entries) {
+        int size = 16;
+        while (size < entries * 4L && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        // Удаление перестановкой последнего элемента на место удаляемого; возвращает переставленный
+        private int removeAt(int index) {
+            int last = values[--size];
+            values[index] = last;
+            return last;
+        }
+    }
+
+    // Обходит слоты порциями, каждая порция читается под своей блокировкой чтения
+    private final class ViewIterator implements Iterator<Movie> {
+        private final List<Movie> batch = new ArrayList<>(VIEW_BATCH);
+        private int cursor;
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            if (index < batch.size()) return true;
+            batch.clear();
+            index = 0;
+            lock.readLock().lock();
+            try {
+                while (cursor < slotCount && batch.size() < VIEW_BATCH) {
+                    if (titleLengths[cursor] != FREE) batch.add(movieAt(cursor));
+                    cursor++;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return !batch.isEmpty();
+        }
+
+        @Override
+        public Movie next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return batch.get(index++);
+        }
+    }
+}
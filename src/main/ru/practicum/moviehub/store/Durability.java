@@ -0,0 +1,10 @@
+package ru.practicum.moviehub.store;
+
+public enum Durability {
+    // fsync после каждой записи, запись ждёт своего fsync
+    SYNC,
+    // групповой коммит: один fsync подтверждает все записи, накопившиеся за время предыдущего
+    BATCHED,
+    // запись не ждёт диска, журнал сбрасывается фоновым потоком
+    ASYNC
+}
@@ -0,0 +1,78 @@
+package ru.practicum.moviehub.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Монотонный генератор id: обычный вызов — один getAndIncrement без блокировок.
+ * id резервируются блоками, и граница блока (high-water mark) попадает на диск раньше,
+ * чем выдан первый id из блока, поэтому после перезапуска выдача продолжается за границей.
+ */
+public class IdGenerator {
+    static final String FILE_NAME = "ids.hwm";
+
+    private static final int BLOCK = 1024;
+
+    // null — граница живёт только в памяти
+    private final Path file;
+    private final AtomicLong next;
+    private volatile long reserved;
+
+    public IdGenerator(int first) {
+        this.file = null;
+        this.next = new AtomicLong(Math.max(first, 1));
+        this.reserved = Long.MAX_VALUE;
+    }
+
+    // floor — id, ниже которого выдавать нельзя (обычно максимальный id каталога + 1)
+    public IdGenerator(Path dir, int floor) throws IOException {
+        this.file = dir.resolve(FILE_NAME);
+        long start = Math.max(Math.max(readHighWaterMark(file), floor), 1);
+        this.next = new AtomicLong(start);
+        this.reserved = start;
+    }
+
+    public int next() {
+        long id = next.getAndIncrement();
+        if (id > Integer.MAX_VALUE) throw new IllegalStateException("Диапазон id исчерпан");
+        if (id >= reserved) reserve(id);
+        return (int) id;
+    }
+
+    private synchronized void reserve(long id) {
+        if (id < reserved) return;
+        long bound = Math.min(id + BLOCK, (long) Integer.MAX_VALUE + 1);
+        try {
+            writeHighWaterMark(bound);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить границу выданных id", e);
+        }
+        reserved = bound;
+    }
+
+    private void writeHighWaterMark(long bound) throws IOException {
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, bound);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // иначе после сбоя на диске может остаться старая граница, и id из блока выдадутся повторно
+        SnapshotFile.syncDirectory(file.getParent());
+    }
+
+    private static long readHighWaterMark(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        byte[] bytes = Files.readAllBytes(file);
+        return bytes.length == Long.BYTES ? ByteBuffer.wrap(bytes).getLong() : 0;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.Comparator;
+
+/*
+ * Выборка с фильтрами, сортировкой и окном offset/limit. Фильтры складываются через И:
+ * диапазон лет и поиск по названию с той же семантикой, что у searchByTitle.
+ * При равных ключах порядок задаёт id, поэтому результат детерминирован.
+ */
+public final class MovieQuery {
+
+    public enum Sort {
+        ID,
+        YEAR,
+        TITLE
+    }
+
+    // при сортировке выборка держит в памяти offset + limit фильмов
+    public static final int MAX_WINDOW = 10_000;
+
+    private static final Comparator<Movie> BY_ID = Comparator.comparingInt(Movie::getId);
+    private static final Comparator<Movie> BY_YEAR = Comparator.comparingInt(Movie::getYear).thenComparing(BY_ID);
+    private static final Comparator<Movie> BY_TITLE = Comparator
+            .comparing(Movie::getTitle, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(BY_ID);
+
+    private int yearFrom = Integer.MIN_VALUE;
+    private int yearTo = Integer.MAX_VALUE;
+    private String title;
+    // null — порядок хранилища, как у getMovies
+    private Sort sort;
+    private boolean descending;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    public int getYearFrom() {
+        return yearFrom;
+    }
+
+    public int getYearTo() {
+        return yearTo;
+    }
+
+    public MovieQuery setYears(int yearFrom, int yearTo) {
+        this.yearFrom = yearFrom;
+        this.yearTo = yearTo;
+        return this;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public MovieQuery setTitle(String title) {
+        this.title = title;
+        return this;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public MovieQuery setSort(Sort sort, boolean descending) {
+        this.sort = sort;
+        this.descending = descending;
+        return this;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public MovieQuery setWindow(int offset, int limit) {
+        if (offset < 0 || limit < 1) throw new IllegalArgumentException("Некорректное окно выборки");
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    // Сколько первых фильмов по порядку нужно, чтобы вырезать окно
+    int window() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    }
+
+    boolean filtersYears() {
+        return yearFrom != Integer.MIN_VALUE || yearTo != Integer.MAX_VALUE;
+    }
+
+    boolean matchesYear(Movie movie) {
+        return movie.getYear() >= yearFrom && movie.getYear() <= yearTo;
+    }
+
+    Comparator<Movie> comparator() {
+        if (sort == null) return null;
+        Comparator<Movie> order = switch (sort) {
+            case ID -> BY_ID;
+            case YEAR -> BY_YEAR;
+            case TITLE -> BY_TITLE;
+        };
+        return descending ? order.reversed() : order;
+    }
+}
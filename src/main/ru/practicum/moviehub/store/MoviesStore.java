@@ -3,45 +3,544 @@ package ru.practicum.moviehub.store;
 import ru.practicum.moviehub.model.Movie;
 import ru.practicum.moviehub.api.MovieAlreadyExistsException;
 import ru.practicum.moviehub.api.MovieNotFoundException;
+import ru.practicum.moviehub.metrics.Metrics;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 public class MoviesStore {
-    private final Map<Integer, Movie> movies = new HashMap<>();
+    private static final int CHANGE_FEED_CAPACITY = 1 << 16;
+    // сколько раз выборка повторяется, если каталог менялся во время неё
+    private static final int QUERY_ATTEMPTS = 3;
+
+    // ConcurrentHashMap: атомарные putIfAbsent/remove, чтение без блокировок
+    private final ConcurrentMap<Integer, Movie> movies = new ConcurrentHashMap<>();
+    // те же фильмы по возрастанию id: страницы по курсору за O(log n + limit); обновляется внутри compute
+    private final ConcurrentNavigableMap<Integer, Movie> byId = new ConcurrentSkipListMap<>();
+    // вторичный индекс год -> (id -> фильм); обновляется внутри compute по id,
+    // поэтому для каждого id основная карта и индекс меняются вместе. Опустевший год удаляется из индекса
+    private final ConcurrentNavigableMap<Integer, YearBucket> byYear = new ConcurrentSkipListMap<>();
+    private final TitleIndex byTitle = new TitleIndex();
+    // растёт при каждом изменении каталога; по ней кэши понимают, что их данные устарели
+    private final AtomicLong version = new AtomicLong();
+    private final ChangeFeed changes = new ChangeFeed(CHANGE_FEED_CAPACITY);
+    private volatile Metrics metrics;
+    // включаются enableGeneratedIds: выдача id сервером и поиск дубликатов по названию и году
+    private volatile IdGenerator idGenerator;
+    private volatile Map<TitleYear, Integer> naturalKeys;
 
     public List<Movie> getAllMovies() {
-        return new ArrayList<>(movies.values());
+        long start = startTimer();
+        try {
+            return snapshotAll();
+        } finally {
+            stopTimer(Metrics.StoreOperation.LIST, start);
+        }
+    }
+
+    // Страница по номеру; порядок стабилен, пока каталог не меняется. Пропуск offset фильмов — O(offset)
+    public List<Movie> getMovies(int offset, int limit) {
+        long start = startTimer();
+        List<Movie> page = page(offset, limit);
+        stopTimer(Metrics.StoreOperation.PAGE, start);
+        return page;
+    }
+
+    /*
+     * Страница по курсору: до limit фильмов с id больше after по возрастанию id. Следующая страница
+     * продолжается с id последнего фильма, поэтому параллельные изменения не сдвигают страницы:
+     * фильм не повторяется и не пропускается, если его не удалили.
+     */
+    public List<Movie> getMoviesAfter(int after, int limit) {
+        long start = startTimer();
+        List<Movie> page = after == Integer.MAX_VALUE ? new ArrayList<>() : pageAfter(after, limit);
+        stopTimer(Metrics.StoreOperation.PAGE, start);
+        return page;
+    }
+
+    // Живое представление без копирования; итерация слабо согласована с параллельными изменениями
+    public Collection<Movie> moviesView() {
+        return Collections.unmodifiableCollection(movies.values());
     }
 
     public List<Movie> getMoviesByYear(int year) {
-        List<Movie> filtered = new ArrayList<>();
-        for (Movie movie : movies.values()) {
-            if (movie.getYear() == year) {
-                filtered.add(movie);
-            }
-        }
+        long start = startTimer();
+        List<Movie> result = moviesOfYear(year);
+        stopTimer(Metrics.StoreOperation.BY_YEAR, start);
+        return result;
+    }
+
+    public List<Movie> getMoviesByYearRange(int yearFrom, int yearTo) {
+        if (yearFrom > yearTo) return new ArrayList<>();
+        long start = startTimer();
+        List<Movie> filtered = yearRange(yearFrom, yearTo);
+        stopTimer(Metrics.StoreOperation.BY_YEAR_RANGE, start);
         return filtered;
     }
 
+    // Сколько фильмов в диапазоне лет, по индексу лет без выборки самих фильмов
+    public int countByYears(int yearFrom, int yearTo) {
+        return yearFrom > yearTo ? 0 : yearCount(yearFrom, yearTo);
+    }
+
+    public List<Movie> searchByTitle(String query) {
+        long start = startTimer();
+        List<Movie> result = titleSearch(query);
+        stopTimer(Metrics.StoreOperation.SEARCH, start);
+        return result;
+    }
+
+    /*
+     * Выборка по MovieQuery. Чтение оптимистичное: если версия каталога сдвинулась, пока шла выборка,
+     * она повторяется, так что результат соответствует одному состоянию каталога. При непрерывной записи
+     * после QUERY_ATTEMPTS попыток возвращается последний результат — слабо согласованный, как у moviesView.
+     */
+    public List<Movie> query(MovieQuery query) {
+        if (query.getSort() != null && query.window() > MovieQuery.MAX_WINDOW) {
+            throw new IllegalArgumentException("Окно сортированной выборки больше " + MovieQuery.MAX_WINDOW);
+        }
+        long start = startTimer();
+        try {
+            List<Movie> result;
+            int attempt = 0;
+            do {
+                long before = version();
+                result = select(query);
+                if (version() == before) break;
+            } while (++attempt < QUERY_ATTEMPTS);
+            return result;
+        } finally {
+            stopTimer(Metrics.StoreOperation.QUERY, start);
+        }
+    }
+
     public void addMovies(Movie movie) {
-        if (movies.containsKey(movie.getId())) {
+        long start = startTimer();
+        boolean added = insert(movie);
+        stopTimer(Metrics.StoreOperation.ADD, start);
+        if (!added) {
             throw new MovieAlreadyExistsException("Фильм уже есть в списке");
         }
-        movies.put(movie.getId(), movie);
+    }
+
+    /*
+     * Добавляет фильм с id от генератора. Дубликатом считается фильм с тем же названием и годом.
+     * id, занятый фильмом, добавленным с id клиента, пропускается.
+     */
+    public Movie addWithGeneratedId(String title, int year) {
+        long start = startTimer();
+        try {
+            Movie movie = insertWithGeneratedId(title, year);
+            if (movie == null) throw new MovieAlreadyExistsException("Фильм уже есть в списке");
+            return movie;
+        } finally {
+            stopTimer(Metrics.StoreOperation.ADD, start);
+        }
+    }
+
+    // id из фильмов пачки игнорируются. Для каждого фильма: добавленный с выданным id или null — дубликат
+    public Movie[] addAllWithGeneratedIds(List<Movie> batch) {
+        long start = startTimer();
+        try {
+            Movie[] added = new Movie[batch.size()];
+            for (int i = 0; i < added.length; i++) {
+                added[i] = insertWithGeneratedId(batch.get(i).getTitle(), batch.get(i).getYear());
+            }
+            return added;
+        } finally {
+            stopTimer(Metrics.StoreOperation.ADD_BATCH, start);
+        }
+    }
+
+    // Для каждого фильма: true — добавлен, false — id уже занят
+    public boolean[] addAll(List<Movie> batch) {
+        long start = startTimer();
+        boolean[] added = insertAll(batch);
+        stopTimer(Metrics.StoreOperation.ADD_BATCH, start);
+        return added;
     }
 
     public Movie findMovie(int id) {
-        Movie movie = movies.get(id);
+        long start = startTimer();
+        Movie movie = lookup(id);
+        stopTimer(Metrics.StoreOperation.FIND, start);
         if (movie == null) throw new MovieNotFoundException("Такого фильма нет в списке");
         return movie;
     }
 
     public void deleteMovieById(int id) {
-        if (!movies.containsKey(id)) throw new MovieNotFoundException("Такого фильма нет в списке");
-        movies.remove(id);
+        long start = startTimer();
+        Movie removed = remove(id);
+        stopTimer(Metrics.StoreOperation.DELETE, start);
+        if (removed == null) throw new MovieNotFoundException("Такого фильма нет в списке");
+    }
+
+    // Для каждого id: true — удалён, false — такого фильма не было
+    public boolean[] deleteAll(int[] ids) {
+        long start = startTimer();
+        boolean[] deleted = removeAll(ids);
+        stopTimer(Metrics.StoreOperation.DELETE_BATCH, start);
+        return deleted;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null) metrics.setStoreSize(this::size);
+    }
+
+    // Вызывается при старте, до приёма запросов. dir — где хранить границу выданных id, null — только в памяти
+    public void enableGeneratedIds(Path dir) throws IOException {
+        Map<TitleYear, Integer> keys = new ConcurrentHashMap<>();
+        int maxId = 0;
+        for (Movie movie : moviesView()) {
+            keys.putIfAbsent(new TitleYear(movie.getTitle(), movie.getYear()), movie.getId());
+            maxId = Math.max(maxId, movie.getId());
+        }
+        int floor = maxId == Integer.MAX_VALUE ? maxId : maxId + 1;
+        idGenerator = dir == null ? new IdGenerator(floor) : new IdGenerator(dir, floor);
+        naturalKeys = keys;
+    }
+
+    public boolean generatesIds() {
+        return naturalKeys != null;
+    }
+
+    // Последние добавления и удаления по порядку, для инкрементальной синхронизации клиентов
+    public ChangeFeed changes() {
+        return changes;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public int size() {
+        return movies.size();
     }
 
     public void clear() {
-        movies.clear();
+        for (Integer id : movies.keySet()) {
+            remove(id);
+        }
+    }
+
+    /*
+     * Ниже — операции над самими данными. Публичные методы выше добавляют к ним метрики и ошибки API,
+     * а другие представления каталога (CompactMoviesStore, SnapshotMoviesStore) переопределяют только этот слой.
+     */
+
+    List<Movie> snapshotAll() {
+        return new ArrayList<>(movies.values());
+    }
+
+    List<Movie> page(int offset, int limit) {
+        List<Movie> page = new ArrayList<>(Math.min(limit, movies.size()));
+        Iterator<Movie> it = byId.values().iterator();
+        for (int skipped = 0; skipped < offset && it.hasNext(); skipped++) {
+            it.next();
+        }
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    List<Movie> pageAfter(int after, int limit) {
+        List<Movie> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Movie movie : byId.tailMap(after, false).values()) {
+            if (page.size() == limit) break;
+            page.add(movie);
+        }
+        return page;
+    }
+
+    Movie lookup(int id) {
+        return movies.get(id);
+    }
+
+    List<Movie> moviesOfYear(int year) {
+        Map<Integer, Movie> bucket = byYear.get(year);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.values());
+    }
+
+    List<Movie> yearRange(int yearFrom, int yearTo) {
+        List<Movie> filtered = new ArrayList<>();
+        for (Map<Integer, Movie> bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+            filtered.addAll(bucket.values());
+        }
+        return filtered;
+    }
+
+    int yearCount(int yearFrom, int yearTo) {
+        int count = 0;
+        for (Map<Integer, Movie> bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    List<Movie> titleSearch(String query) {
+        return byTitle.search(query);
+    }
+
+    // Годы каталога в диапазоне, по возрастанию или убыванию
+    Iterable<Integer> years(int yearFrom, int yearTo, boolean descending) {
+        NavigableSet<Integer> years = byYear.subMap(yearFrom, true, yearTo, true).navigableKeySet();
+        return descending ? years.descendingSet() : years;
+    }
+
+    // Обход фильмов диапазона лет без промежуточного списка; sink возвращает false, чтобы остановить обход
+    void scan(int yearFrom, int yearTo, Predicate<Movie> sink) {
+        if (yearFrom == Integer.MIN_VALUE && yearTo == Integer.MAX_VALUE) {
+            for (Movie movie : movies.values()) {
+                if (!sink.test(movie)) return;
+            }
+            return;
+        }
+        for (Map<Integer, Movie> bucket : byYear.subMap(yearFrom, true, yearTo, true).values()) {
+            for (Movie movie : bucket.values()) {
+                if (!sink.test(movie)) return;
+            }
+        }
+    }
+
+    /*
+     * Полную сортировку выборка не делает. Сортировка по году идёт по индексу лет и останавливается,
+     * набрав окно; остальные сортировки, в том числе совпадений поиска по названию,
+     * держат кучу из offset + limit лучших фильмов.
+     */
+    List<Movie> select(MovieQuery query) {
+        Comparator<Movie> order = query.comparator();
+        int window = query.window();
+        if (query.getTitle() != null) {
+            List<Movie> found = titleSearch(query.getTitle());
+            if (query.filtersYears()) found.removeIf(movie -> !query.matchesYear(movie));
+            if (order == null) return slice(found, query.getOffset(), query.getLimit());
+            // короткий префикс находит большую часть каталога: сортируется только окно, а не все совпадения
+            TopK top = new TopK(order, window);
+            found.forEach(top::test);
+            return slice(top.sorted(), query.getOffset(), query.getLimit());
+        }
+        if (query.getSort() == MovieQuery.Sort.YEAR) {
+            List<Movie> ordered = new ArrayList<>();
+            for (int year : years(query.getYearFrom(), query.getYearTo(), query.isDescending())) {
+                List<Movie> bucket = moviesOfYear(year);
+                bucket.sort(order);
+                ordered.addAll(bucket);
+                if (ordered.size() >= window) break;
+            }
+            return slice(ordered, query.getOffset(), query.getLimit());
+        }
+        if (order != null) {
+            TopK top = new TopK(order, window);
+            scan(query.getYearFrom(), query.getYearTo(), top);
+            return slice(top.sorted(), query.getOffset(), query.getLimit());
+        }
+        List<Movie> page = new ArrayList<>();
+        int[] skipped = new int[1];
+        scan(query.getYearFrom(), query.getYearTo(), movie -> {
+            if (skipped[0] < query.getOffset()) {
+                skipped[0]++;
+                return true;
+            }
+            page.add(movie);
+            return page.size() < query.getLimit();
+        });
+        return page;
+    }
+
+    // Лучшие window фильмов по order; в вершине кучи — худший из отобранных,
+    // новый фильм вытесняет его, только если лучше
+    private static final class TopK implements Predicate<Movie> {
+        private final Comparator<Movie> order;
+        private final int window;
+        private final PriorityQueue<Movie> heap;
+
+        TopK(Comparator<Movie> order, int window) {
+            this.order = order;
+            this.window = window;
+            this.heap = new PriorityQueue<>(Math.min(window, 1024) + 1, order.reversed());
+        }
+
+        @Override
+        public boolean test(Movie movie) {
+            if (heap.size() < window) {
+                heap.add(movie);
+            } else if (order.compare(movie, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(movie);
+            }
+            return true;
+        }
+
+        List<Movie> sorted() {
+            List<Movie> best = new ArrayList<>(heap);
+            best.sort(order);
+            return best;
+        }
+    }
+
+    private static List<Movie> slice(List<Movie> movies, int offset, int limit) {
+        if (offset >= movies.size()) return new ArrayList<>();
+        int end = (int) Math.min(movies.size(), (long) offset + limit);
+        return offset == 0 && end == movies.size() ? movies : new ArrayList<>(movies.subList(offset, end));
+    }
+
+    // Версия и журнал изменений сдвигаются после compute, когда новое значение уже видно в карте:
+    // ответ, построенный после чтения версии или номера события, это изменение уже содержит
+    boolean insert(Movie movie) {
+        long[] seq = new long[1];
+        try {
+            movies.compute(movie.getId(), (id, existing) -> {
+                if (existing != null) return existing;
+                onAdded(movie);
+                byId.put(id, movie);
+                addToYear(movie);
+                byTitle.add(movie);
+                seq[0] = added(movie);
+                return movie;
+            });
+        } finally {
+            applied(seq[0]);
+        }
+        return seq[0] != 0;
+    }
+
+    Movie remove(int id) {
+        Movie[] removed = new Movie[1];
+        long[] seq = new long[1];
+        try {
+            movies.computeIfPresent(id, (key, existing) -> {
+                onDeleted(existing);
+                byId.remove(key);
+                removeFromYear(existing);
+                byTitle.remove(existing);
+                seq[0] = deleted(existing);
+                removed[0] = existing;
+                return null;
+            });
+        } finally {
+            applied(seq[0]);
+        }
+        return removed[0];
+    }
+
+    // null — фильм с тем же названием и годом уже есть
+    private Movie insertWithGeneratedId(String title, int year) {
+        Map<TitleYear, Integer> keys = naturalKeys;
+        if (keys == null) throw new IllegalStateException("Выдача id сервером не включена");
+        TitleYear key = new TitleYear(title, year);
+        if (keys.containsKey(key)) return null;
+        while (true) {
+            int id = idGenerator.next();
+            if (keys.putIfAbsent(key, id) != null) return null;
+            Movie movie = new Movie(id, title, year);
+            boolean added = false;
+            try {
+                added = insert(movie);
+            } finally {
+                if (!added) keys.remove(key, id);
+            }
+            if (added) return movie;
+        }
+    }
+
+    // compute у ConcurrentSkipListMap не атомарен для изменения корзины внутри функции, поэтому, как в TitleIndex,
+    // корзина меняется под своим монитором, а вставка, заставшая удалённую корзину, берёт новую
+    private void addToYear(Movie movie) {
+        while (true) {
+            YearBucket bucket = byYear.computeIfAbsent(movie.getYear(), y -> new YearBucket());
+            synchronized (bucket) {
+                if (bucket.detached) continue;
+                bucket.put(movie.getId(), movie);
+                return;
+            }
+        }
+    }
+
+    private void removeFromYear(Movie movie) {
+        YearBucket bucket = byYear.get(movie.getYear());
+        if (bucket == null) return;
+        synchronized (bucket) {
+            bucket.remove(movie.getId());
+            if (bucket.isEmpty() && !bucket.detached) {
+                bucket.detached = true;
+                byYear.remove(movie.getYear(), bucket);
+            }
+        }
+    }
+
+    boolean[] insertAll(List<Movie> batch) {
+        boolean[] added = new boolean[batch.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = insert(batch.get(i));
+        }
+        return added;
+    }
+
+    boolean[] removeAll(int[] ids) {
+        boolean[] deleted = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            deleted[i] = remove(ids[i]) != null;
+        }
+        return deleted;
+    }
+
+    private void applied(long seq) {
+        if (seq == 0) return;
+        changed();
+        changes.published(seq);
+    }
+
+    void changed() {
+        version.incrementAndGet();
+    }
+
+    // без подключённых метрик таймеры не вызывают даже System.nanoTime
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    private void stopTimer(Metrics.StoreOperation op, long start) {
+        Metrics current = metrics;
+        if (current != null && start != 0) current.recordStore(op, start);
+    }
+
+    // Вызываются после onAdded/onDeleted и изменения индексов, когда изменение уже не может сорваться.
+    // Возвращают номер события в журнале изменений; после применения изменения его нужно передать
+    // в changes().published
+    long added(Movie movie) {
+        Map<TitleYear, Integer> keys = naturalKeys;
+        if (keys != null) keys.putIfAbsent(new TitleYear(movie.getTitle(), movie.getYear()), movie.getId());
+        return changes.append(ChangeFeed.Kind.ADDED, movie);
+    }
+
+    long deleted(Movie movie) {
+        Map<TitleYear, Integer> keys = naturalKeys;
+        if (keys != null) keys.remove(new TitleYear(movie.getTitle(), movie.getYear()), movie.getId());
+        return changes.append(ChangeFeed.Kind.DELETED, movie);
+    }
+
+    // Вызываются под блокировкой записи по id, поэтому для одного id видят изменения в порядке применения.
+    // Вызываются первыми, до изменения карты и индексов: если запись в журнал сорвётся, каталог не меняется
+    void onAdded(Movie movie) {
+    }
+
+    void onDeleted(Movie movie) {
+    }
+
+    private record TitleYear(String title, int year) {
+    }
+
+    // удалённая из byYear корзина помечается, и добавление в неё уходит в новую корзину
+    private static final class YearBucket extends ConcurrentHashMap<Integer, Movie> {
+        private boolean detached;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,502 @@
+package ru.practicum.moviehub.store;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Неизменяемая карта int -> V — B+-дерево с копированием пути и ветвлением до WIDTH.
+ * Ключи лежат в узлах int-массивами без упаковки, поэтому на 1 млн ключей чтение проходит 4 узла,
+ * а изменение копирует столько же массивов. Остальное дерево разделяется со старой версией.
+ * Узлы знают число ключей под собой, доступ по номеру — O(log n).
+ *
+ * edit — метка пакета изменений, как у PersistentTreeMap: узлы с той же меткой правятся на месте.
+ */
+final class PersistentIntMap<V> {
+    private static final int WIDTH = 64;
+    // узел, в котором после удаления осталось меньше, сливается с соседом, если вместе они помещаются
+    private static final int MIN_FILL = WIDTH / 4;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null);
+
+    private final Node root;
+
+    private PersistentIntMap(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Node node = root;
+        if (node == null) return null;
+        while (node instanceof Branch branch) {
+            node = branch.children[branch.route(key)];
+        }
+        Leaf leaf = (Leaf) node;
+        int[] keys = leaf.keys;
+        for (int i = 0, n = leaf.count; i < n; i++) {
+            if (keys[i] >= key) return keys[i] == key ? (V) leaf.values[i] : null;
+        }
+        return null;
+    }
+
+    PersistentIntMap<V> with(int key, V value, Object edit) {
+        if (root == null) {
+            Leaf leaf = new Leaf(edit);
+            leaf.insert(0, key, value);
+            return new PersistentIntMap<>(leaf);
+        }
+        Node updated = put(root, key, value, edit);
+        if (updated.count > WIDTH) {
+            Node sibling = updated.split(edit);
+            Branch top = new Branch(edit);
+            top.insert(0, updated.keys[0], updated);
+            top.insert(1, sibling.keys[0], sibling);
+            top.size = updated.size + sibling.size;
+            updated = top;
+        }
+        return updated == root && !owned(root, edit) ? this : new PersistentIntMap<>(updated);
+    }
+
+    PersistentIntMap<V> without(int key, Object edit) {
+        if (root == null) return this;
+        int before = root.size;
+        Node updated = delete(root, key, edit);
+        if (updated.size == before) return this;
+        while (updated instanceof Branch branch && branch.count == 1) {
+            updated = branch.children[0];
+        }
+        return updated.count == 0 ? empty() : new PersistentIntMap<>(updated);
+    }
+
+    // Все значения по возрастанию ключа: представление без копирования, get(i) — O(log n)
+    AbstractList<V> values() {
+        return new AbstractList<>() {
+            @Override
+            public V get(int index) {
+                if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+                Cursor cursor = new Cursor(Integer.MAX_VALUE, false);
+                cursor.seekRank(index);
+                return cursor.nextValue();
+            }
+
+            @Override
+            public int size() {
+                return PersistentIntMap.this.size();
+            }
+
+            @Override
+            public Iterator<V> iterator() {
+                return valuesFrom(0);
+            }
+        };
+    }
+
+    // Значения, начиная с номера from
+    Iterator<V> valuesFrom(int from) {
+        Cursor cursor = new Cursor(Integer.MAX_VALUE, false);
+        cursor.seekRank(from);
+        return cursor.values();
+    }
+
+    // Значения с ключами в [from, to]
+    Iterable<V> values(int from, int to, boolean descending) {
+        return () -> cursor(from, to, descending).values();
+    }
+
+    Iterable<Integer> keys(int from, int to, boolean descending) {
+        return () -> cursor(from, to, descending).keys();
+    }
+
+    private Cursor cursor(int from, int to, boolean descending) {
+        Cursor cursor = descending ? new Cursor(from, true) : new Cursor(to, false);
+        cursor.seekKey(descending ? to : from);
+        return cursor;
+    }
+
+    // Узел после вставки может держать WIDTH + 1 ключей; такой узел делит его родитель
+    private static Node put(Node node, int key, Object value, Object edit) {
+        if (node instanceof Leaf leaf) {
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            if (i >= 0 && leaf.values[i] == value) return leaf;
+            Leaf copy = leaf.editable(edit);
+            if (i >= 0) {
+                copy.values[i] = value;
+            } else {
+                copy.insert(-i - 1, key, value);
+            }
+            return copy;
+        }
+        Branch branch = (Branch) node;
+        int ci = branch.route(key);
+        Node child = branch.children[ci];
+        int before = child.size;
+        Node updated = put(child, key, value, edit);
+        if (updated == child && !owned(child, edit)) return branch;
+        Branch copy = branch.editable(edit);
+        copy.children[ci] = updated;
+        copy.size += updated.size - before;
+        if (updated.count > WIDTH) {
+            Node sibling = updated.split(edit);
+            copy.insert(ci + 1, sibling.keys[0], sibling);
+        }
+        return copy;
+    }
+
+    private static Node delete(Node node, int key, Object edit) {
+        if (node instanceof Leaf leaf) {
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            if (i < 0) return leaf;
+            Leaf copy = leaf.editable(edit);
+            copy.removeAt(i);
+            return copy;
+        }
+        Branch branch = (Branch) node;
+        int ci = branch.route(key);
+        Node child = branch.children[ci];
+        int before = child.size;
+        Node updated = delete(child, key, edit);
+        if (updated.size == before) return branch;
+        Branch copy = branch.editable(edit);
+        copy.children[ci] = updated;
+        copy.size--;
+        if (updated.count == 0) {
+            copy.removeAt(ci);
+        } else if (updated.count < MIN_FILL && copy.count > 1) {
+            int left = ci > 0 ? ci - 1 : ci;
+            Node a = copy.children[left];
+            Node b = copy.children[left + 1];
+            if (a.count + b.count <= WIDTH) {
+                Node merged = a.editable(edit);
+                merged.absorb(b, copy.keys[left + 1]);
+                copy.children[left] = merged;
+                copy.removeAt(left + 1);
+            }
+        }
+        return copy;
+    }
+
+    private static boolean owned(Node node, Object edit) {
+        return edit != null && node.edit == edit;
+    }
+
+    /*
+     * keys у листа — сами ключи, у ветви — нижние границы детей: в children[i] лежат ключи
+     * не меньше keys[i] и меньше keys[i + 1]; keys[0] ветви при поиске не смотрится.
+     * Узел может ненадолго держать WIDTH + 1 элементов — такой делит его родитель. Массивы единственного
+     * листа маленькой карты растут по мере заполнения: в большинстве корзин индекса слов один-два фильма.
+     * Листья большой карты сразу полного размера и лежат в памяти рядом со своими массивами.
+     */
+    private abstract static class Node {
+        final Object edit;
+        int[] keys;
+        int count;
+        int size;
+
+        Node(Object edit, int[] keys, int count, int size) {
+            this.edit = edit;
+            this.keys = keys;
+            this.count = count;
+            this.size = size;
+        }
+
+        abstract Node editable(Object edit);
+
+        // переносит верхнюю половину в новый узел и возвращает его
+        abstract Node split(Object edit);
+
+        // дописывает в конец содержимое правого соседа; separator — его нижняя граница у родителя
+        abstract void absorb(Node right, int separator);
+    }
+
+    private static final class Leaf extends Node {
+        Object[] values;
+
+        Leaf(Object edit) {
+            this(edit, new int[1], new Object[1], 0);
+        }
+
+        private Leaf(Object edit, int[] keys, Object[] values, int count) {
+            super(edit, keys, count, count);
+            this.values = values;
+        }
+
+        @Override
+        Leaf editable(Object edit) {
+            if (owned(this, edit)) return this;
+            // место под один элемент: копия обычно нужна, чтобы вставить
+            int capacity = keys.length == WIDTH + 1 ? WIDTH + 1 : Math.min(WIDTH + 1, count + 1);
+            return new Leaf(edit, Arrays.copyOf(keys, capacity), Arrays.copyOf(values, capacity), count);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (keys.length >= needed) return;
+            int capacity = Math.min(WIDTH + 1, Math.max(needed, keys.length * 2));
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        void insert(int i, int key, Object value) {
+            ensureCapacity(count + 1);
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            keys[i] = key;
+            values[i] = value;
+            size = ++count;
+        }
+
+        void removeAt(int i) {
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            System.arraycopy(values, i + 1, values, i, count - i - 1);
+            values[--count] = null;
+            size = count;
+        }
+
+        @Override
+        Node split(Object edit) {
+            int half = count / 2;
+            Leaf right = new Leaf(edit, new int[WIDTH + 1], new Object[WIDTH + 1], count - half);
+            System.arraycopy(keys, half, right.keys, 0, count - half);
+            System.arraycopy(values, half, right.values, 0, count - half);
+            Arrays.fill(values, half, count, null);
+            count = size = half;
+            return right;
+        }
+
+        @Override
+        void absorb(Node right, int separator) {
+            Leaf leaf = (Leaf) right;
+            ensureCapacity(count + leaf.count);
+            System.arraycopy(leaf.keys, 0, keys, count, leaf.count);
+            System.arraycopy(leaf.values, 0, values, count, leaf.count);
+            count += leaf.count;
+            size = count;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node[] children;
+
+        Branch(Object edit) {
+            this(edit, new int[WIDTH + 1], new Node[WIDTH + 1], 0, 0);
+        }
+
+        private Branch(Object edit, int[] keys, Node[] children, int count, int size) {
+            super(edit, keys, count, size);
+            this.children = children;
+        }
+
+        @Override
+        Branch editable(Object edit) {
+            return owned(this, edit) ? this : new Branch(edit, keys.clone(), children.clone(), count, size);
+        }
+
+        // последний ребёнок, чья нижняя граница не больше key. В узле не больше WIDTH ключей:
+        // линейный проход с одним непредсказанным переходом быстрее двоичного поиска
+        int route(int key) {
+            int i = 1;
+            while (i < count && keys[i] <= key) {
+                i++;
+            }
+            return i - 1;
+        }
+
+        // размер ветви не меняется: ключи нового ребёнка уже учтены
+        void insert(int i, int separator, Node child) {
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(children, i, children, i + 1, count - i);
+            keys[i] = separator;
+            children[i] = child;
+            count++;
+        }
+
+        void removeAt(int i) {
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            System.arraycopy(children, i + 1, children, i, count - i - 1);
+            children[--count] = null;
+        }
+
+        @Override
+        Node split(Object edit) {
+            int half = count / 2;
+            Branch right = new Branch(edit);
+            System.arraycopy(keys, half, right.keys, 0, count - half);
+            System.arraycopy(children, half, right.children, 0, count - half);
+            right.count = count - half;
+            for (int i = 0; i < right.count; i++) {
+                right.size += right.children[i].size;
+            }
+            Arrays.fill(children, half, count, null);
+            count = half;
+            size -= right.size;
+            return right;
+        }
+
+        @Override
+        void absorb(Node right, int separator) {
+            Branch branch = (Branch) right;
+            System.arraycopy(branch.keys, 0, keys, count, branch.count);
+            System.arraycopy(branch.children, 0, children, count, branch.count);
+            keys[count] = separator;
+            count += branch.count;
+            size += branch.size;
+        }
+    }
+
+    /*
+     * Обход по листьям с путём от корня. bound — последний ключ обхода включительно:
+     * верхний при обходе по возрастанию, нижний — по убыванию.
+     */
+    private final class Cursor {
+        private final Branch[] path = new Branch[height()];
+        private final int[] index = new int[path.length];
+        private final int bound;
+        private final boolean descending;
+        private int depth;
+        private Leaf leaf;
+        private int pos;
+
+        private Cursor(int bound, boolean descending) {
+            this.bound = bound;
+            this.descending = descending;
+        }
+
+        // встаёт на первый ключ не раньше key
+        private void seekKey(int key) {
+            Node node = root;
+            if (node == null) return;
+            while (node instanceof Branch branch) {
+                int ci = branch.route(key);
+                path[depth] = branch;
+                index[depth++] = ci;
+                node = branch.children[ci];
+            }
+            leaf = (Leaf) node;
+            int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+            if (i >= 0) {
+                pos = i;
+            } else {
+                pos = descending ? -i - 2 : -i - 1;
+            }
+            settle();
+        }
+
+        private void seekRank(int rank) {
+            Node node = root;
+            if (node == null) return;
+            while (node instanceof Branch branch) {
+                int ci = 0;
+                while (ci < branch.count - 1 && rank >= branch.children[ci].size) {
+                    rank -= branch.children[ci].size;
+                    ci++;
+                }
+                path[depth] = branch;
+                index[depth++] = ci;
+                node = branch.children[ci];
+            }
+            leaf = (Leaf) node;
+            pos = rank;
+            settle();
+        }
+
+        private int height() {
+            int height = 0;
+            for (Node node = root; node instanceof Branch branch; node = branch.children[0]) {
+                height++;
+            }
+            return height;
+        }
+
+        // позиция вышла за лист — переход к соседнему листу, пока такой есть
+        private void settle() {
+            while (leaf != null && (pos < 0 || pos >= leaf.count)) {
+                while (depth > 0 && (descending ? index[depth - 1] == 0 : index[depth - 1] + 1 >= path[depth - 1].count)) {
+                    depth--;
+                }
+                if (depth == 0) {
+                    leaf = null;
+                    return;
+                }
+                index[depth - 1] += descending ? -1 : 1;
+                Node node = path[depth - 1].children[index[depth - 1]];
+                while (node instanceof Branch branch) {
+                    int ci = descending ? branch.count - 1 : 0;
+                    path[depth] = branch;
+                    index[depth++] = ci;
+                    node = branch.children[ci];
+                }
+                leaf = (Leaf) node;
+                pos = descending ? leaf.count - 1 : 0;
+            }
+        }
+
+        private boolean hasNext() {
+            if (leaf == null) return false;
+            int key = leaf.keys[pos];
+            return descending ? key >= bound : key <= bound;
+        }
+
+        private int step() {
+            if (!hasNext()) throw new NoSuchElementException();
+            int at = pos;
+            pos += descending ? -1 : 1;
+            return at;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V nextValue() {
+            Leaf current = leaf;
+            V value = (V) current.values[step()];
+            settle();
+            return value;
+        }
+
+        private int nextKey() {
+            Leaf current = leaf;
+            int key = current.keys[step()];
+            settle();
+            return key;
+        }
+
+        private Iterator<V> values() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return Cursor.this.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return nextValue();
+                }
+            };
+        }
+
+        private Iterator<Integer> keys() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return Cursor.this.hasNext();
+                }
+
+                @Override
+                public Integer next() {
+                    return nextKey();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Хранилище с журналом операций и периодическими снимками.
+ * При старте загружается последний снимок и поверх него проигрываются сегменты журнала;
+ * проигрывание идемпотентно, поэтому операции, попавшие и в снимок, и в журнал, не мешают.
+ */
+public class PersistentMoviesStore extends MoviesStore implements Closeable {
+    private static final Duration ASYNC_FLUSH_INTERVAL = Duration.ofMillis(50);
+
+    private final Path dir;
+    private final WriteAheadLog wal;
+    // изменения берут блокировку на чтение, смена сегмента перед снимком — на запись,
+    // чтобы все записи старого сегмента уже были видны в карте к началу обхода
+    private final ReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService background;
+    private boolean recovering;
+
+    public PersistentMoviesStore(Path dir, Durability durability, Duration snapshotInterval) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(SnapshotFile.FILE_NAME + ".tmp"));
+
+        recovering = true;
+        long generation = Math.max(SnapshotFile.load(dir, this::insert), 0);
+        long last = generation;
+        for (Path segment : WriteAheadLog.segments(dir)) {
+            long segmentGeneration = WriteAheadLog.generationOf(segment);
+            if (segmentGeneration < generation) continue;
+            WriteAheadLog.replay(segment, (type, movie) -> {
+                if (type == WriteAheadLog.ADD) insert(movie);
+                else remove(movie.getId());
+            });
+            last = segmentGeneration;
+        }
+        recovering = false;
+
+        wal = new WriteAheadLog(dir, last, durability);
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "movies-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (durability == Durability.ASYNC) {
+            long period = ASYNC_FLUSH_INTERVAL.toMillis();
+            background.scheduleWithFixedDelay(wal::flush, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotInterval != null && !snapshotInterval.isZero()) {
+            long period = snapshotInterval.toMillis();
+            background.scheduleWithFixedDelay(this::snapshotQuietly, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void addMovies(Movie movie) {
+        rollLock.readLock().lock();
+        try {
+            super.addMovies(movie);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+    }
+
+    @Override
+    public Movie addWithGeneratedId(String title, int year) {
+        Movie movie;
+        rollLock.readLock().lock();
+        try {
+            movie = super.addWithGeneratedId(title, year);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+        return movie;
+    }
+
+    @Override
+    public Movie[] addAllWithGeneratedIds(List<Movie> batch) {
+        Movie[] added;
+        rollLock.readLock().lock();
+        try {
+            added = super.addAllWithGeneratedIds(batch);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+        return added;
+    }
+
+    // вся пачка подтверждается одним коммитом журнала
+    @Override
+    public boolean[] addAll(List<Movie> batch) {
+        boolean[] added;
+        rollLock.readLock().lock();
+        try {
+            added = super.addAll(batch);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+        return added;
+    }
+
+    @Override
+    public boolean[] deleteAll(int[] ids) {
+        boolean[] deleted;
+        rollLock.readLock().lock();
+        try {
+            deleted = super.deleteAll(ids);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+        return deleted;
+    }
+
+    @Override
+    public void deleteMovieById(int id) {
+        rollLock.readLock().lock();
+        try {
+            super.deleteMovieById(id);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+    }
+
+    @Override
+    public void clear() {
+        rollLock.readLock().lock();
+        try {
+            super.clear();
+        } finally {
+            rollLock.readLock().unlock();
+        }
+        wal.commit();
+    }
+
+    // Пишет снимок текущего каталога и удаляет сегменты журнала, которые он покрывает
+    public void snapshot() throws IOException {
+        long generation;
+        rollLock.writeLock().lock();
+        try {
+            generation = wal.roll();
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+        SnapshotFile.write(dir, generation, moviesView());
+        wal.deleteSegmentsBefore(generation);
+    }
+
+    @Override
+    public void close() throws IOException {
+        background.shutdownNow();
+        wal.close();
+    }
+
+    @Override
+    void onAdded(Movie movie) {
+        if (!recovering) wal.append(WriteAheadLog.ADD, movie);
+    }
+
+    @Override
+    void onDeleted(Movie movie) {
+        if (!recovering) wal.append(WriteAheadLog.DELETE, movie);
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Не удалось сохранить снимок каталога: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package ru.practicum.moviehub.store;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Неизменяемая отсортированная карта — AVL-дерево с копированием пути: изменение копирует
+ * O(log n) узлов от корня до ключа, остальное дерево разделяется со старой версией.
+ * Для ключей-int есть PersistentIntMap; эта карта — для строковых ключей индекса слов.
+ *
+ * edit — метка пакета изменений. Узлы, созданные с той же меткой, правятся на месте, а не копируются
+ * ещё раз; после публикации карты метку больше никто не передаёт, и её узлы уже не меняются.
+ */
+final class PersistentTreeMap<K extends Comparable<? super K>, V> {
+    private static final PersistentTreeMap<?, ?> EMPTY = new PersistentTreeMap<>(null);
+
+    private final Node<K, V> root;
+
+    private PersistentTreeMap(Node<K, V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V> empty() {
+        return (PersistentTreeMap<K, V>) EMPTY;
+    }
+
+    V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int c = key.compareTo(node.key);
+            if (c == 0) return node.value;
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    PersistentTreeMap<K, V> with(K key, V value, Object edit) {
+        Node<K, V> updated = put(root, key, value, edit);
+        return updated == root ? this : new PersistentTreeMap<>(updated);
+    }
+
+    PersistentTreeMap<K, V> without(K key, Object edit) {
+        Node<K, V> updated = delete(root, key, edit);
+        return updated == root ? this : new PersistentTreeMap<>(updated);
+    }
+
+    // Значения с ключами в [from, to] по возрастанию
+    Iterable<V> values(K from, K to) {
+        return () -> {
+            Cursor<K, V> cursor = new Cursor<>(from, to);
+            cursor.push(root);
+            return cursor;
+        };
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> put(Node<K, V> node, K key, V value, Object edit) {
+        if (node == null) return new Node<>(edit, key, value, null, null);
+        int c = key.compareTo(node.key);
+        if (c == 0) {
+            if (node.value == value) return node;
+            Node<K, V> copy = editable(node, edit);
+            copy.value = value;
+            return copy;
+        }
+        Node<K, V> child = put(c < 0 ? node.left : node.right, key, value, edit);
+        if (unchanged(child, c < 0 ? node.left : node.right, edit)) return node;
+        Node<K, V> copy = editable(node, edit);
+        if (c < 0) {
+            copy.left = child;
+        } else {
+            copy.right = child;
+        }
+        return balance(copy, edit);
+    }
+
+    private static <K extends Comparable<? super K>, V> Node<K, V> delete(Node<K, V> node, K key, Object edit) {
+        if (node == null) return null;
+        int c = key.compareTo(node.key);
+        if (c != 0) {
+            Node<K, V> child = delete(c < 0 ? node.left : node.right, key, edit);
+            if (unchanged(child, c < 0 ? node.left : node.right, edit)) return node;
+            Node<K, V> copy = editable(node, edit);
+            if (c < 0) {
+                copy.left = child;
+            } else {
+                copy.right = child;
+            }
+            return balance(copy, edit);
+        }
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        // узел с двумя детьми занимает наименьший ключ правого поддерева
+        Node<K, V> min = node.right;
+        while (min.left != null) min = min.left;
+        Node<K, V> copy = editable(node, edit);
+        copy.key = min.key;
+        copy.value = min.value;
+        copy.right = delete(node.right, min.key, edit);
+        return balance(copy, edit);
+    }
+
+    // node уже принадлежит пакету edit
+    private static <K, V> Node<K, V> balance(Node<K, V> node, Object edit) {
+        int skew = height(node.left) - height(node.right);
+        if (skew > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(editable(node.left, edit), edit);
+            }
+            return rotateRight(node, edit);
+        }
+        if (skew < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(editable(node.right, edit), edit);
+            }
+            return rotateLeft(node, edit);
+        }
+        node.update();
+        return node;
+    }
+
+    private static <K, V> Node<K, V> rotateRight(Node<K, V> node, Object edit) {
+        Node<K, V> pivot = editable(node.left, edit);
+        node.left = pivot.right;
+        node.update();
+        pivot.right = node;
+        pivot.update();
+        return pivot;
+    }
+
+    private static <K, V> Node<K, V> rotateLeft(Node<K, V> node, Object edit) {
+        Node<K, V> pivot = editable(node.right, edit);
+        node.right = pivot.left;
+        node.update();
+        pivot.left = node;
+        pivot.update();
+        return pivot;
+    }
+
+    // тот же узел мог быть изменён на месте, если он из этого же пакета
+    private static boolean unchanged(Node<?, ?> child, Node<?, ?> before, Object edit) {
+        return child == before && (child == null || edit == null || child.edit != edit);
+    }
+
+    private static <K, V> Node<K, V> editable(Node<K, V> node, Object edit) {
+        if (edit != null && node.edit == edit) return node;
+        return new Node<>(edit, node.key, node.value, node.left, node.right);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<K, V> {
+        private final Object edit;
+        private K key;
+        private V value;
+        private Node<K, V> left;
+        private Node<K, V> right;
+        private int height;
+
+        private Node(Object edit, K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.edit = edit;
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            update();
+        }
+
+        private void update() {
+            height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    // Обход по возрастанию на явном стеке
+    private static final class Cursor<K extends Comparable<? super K>, V> implements Iterator<V> {
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final K from;
+        private final K to;
+
+        private Cursor(K from, K to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        // спуск к наименьшему ключу не меньше from
+        private void push(Node<K, V> node) {
+            while (node != null) {
+                if (node.key.compareTo(from) < 0) {
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty() && stack.peek().key.compareTo(to) <= 0;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<K, V> node = stack.pop();
+            push(node.right);
+            return node.value;
+        }
+    }
+}
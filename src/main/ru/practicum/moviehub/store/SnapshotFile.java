@@ -0,0 +1,192 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * Бинарный снимок каталога: [магия][версия][поколение журнала][количество][записи...][crc32 записей].
+ * Запись: [id][год][длина названия][название в UTF-8]. Файл пишется во временный и атомарно переименовывается,
+ * а читается через отображение в память, без разбора JSON.
+ */
+class SnapshotFile {
+    static final String FILE_NAME = "snapshot.bin";
+
+    private static final int MAGIC = 0x4D564853; // "MVHS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private SnapshotFile() {
+    }
+
+    static void write(Path dir, long generation, Iterable<Movie> movies) throws IOException {
+        Path tmp = dir.resolve(FILE_NAME + ".tmp");
+        CRC32 crc = new CRC32();
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(new ChannelOutput(channel, HEADER_SIZE), crc), 256 * 1024));
+            for (Movie movie : movies) {
+                out.writeInt(movie.getId());
+                out.writeInt(movie.getYear());
+                if (movie.getTitle() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] title = movie.getTitle().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(title.length);
+                    out.write(title);
+                }
+                count++;
+            }
+            out.flush();
+
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+            trailer.flip();
+            channel.write(trailer, channel.size());
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(count);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // без этого после сбоя на месте снимка может оказаться старый, а покрытые сегменты журнала уже удалены
+        syncDirectory(dir);
+    }
+
+    // Сбрасывает на диск запись каталога: переименование внутри него становится устойчивым к сбою
+    static void syncDirectory(Path dir) throws IOException {
+        // на Windows каталог нельзя открыть как файл, а NTFS журналирует переименования сама
+        if (File.separatorChar == '\\') return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    // Возвращает поколение журнала, с которого нужно продолжить восстановление, или -1, если снимка нет
+    static long load(Path dir, Consumer<Movie> consumer) throws IOException {
+        Path file = dir.resolve(FILE_NAME);
+        if (!Files.exists(file)) return -1;
+        Records records = open(file);
+        records.forEach(consumer);
+        return records.generation;
+    }
+
+    static boolean hasMagic(byte[] head) {
+        return head.length >= 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+    }
+
+    // Проверяет заголовок и crc; отображение в память остаётся доступным и после закрытия канала
+    static Records open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4) throw new IOException("Снимок повреждён: " + file);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Неизвестный формат снимка: " + file);
+            }
+            long generation = buf.getLong();
+            int count = buf.getInt();
+
+            CRC32 crc = new CRC32();
+            ByteBuffer records = buf.slice(HEADER_SIZE, (int) (size - HEADER_SIZE - 4));
+            crc.update(records.duplicate());
+            if ((int) crc.getValue() != buf.getInt((int) size - 4)) {
+                throw new IOException("Снимок повреждён: " + file);
+            }
+            return new Records(generation, records, count);
+        }
+    }
+
+    // Записи снимка или их часть. Части из split независимы и декодируются в разных потоках
+    static final class Records {
+        private final long generation;
+        private final ByteBuffer buffer;
+        private final int count;
+
+        private Records(long generation, ByteBuffer buffer, int count) {
+            this.generation = generation;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        int count() {
+            return count;
+        }
+
+        // Делит по границам записей примерно поровну по байтам; для этого пробегает только заголовки записей
+        List<Records> split(int parts) {
+            List<Records> result = new ArrayList<>(parts);
+            int step = Math.max(1, buffer.limit() / parts);
+            int partStart = 0;
+            int partCount = 0;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt(pos + 8);
+                pos += 12 + Math.max(length, 0);
+                partCount++;
+                if (pos - partStart >= step && result.size() < parts - 1) {
+                    result.add(new Records(generation, buffer.slice(partStart, pos - partStart), partCount));
+                    partStart = pos;
+                    partCount = 0;
+                }
+            }
+            if (partCount > 0) result.add(new Records(generation, buffer.slice(partStart, pos - partStart), partCount));
+            return result;
+        }
+
+        void forEach(Consumer<Movie> consumer) {
+            ByteBuffer records = buffer.duplicate();
+            byte[] title = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int id = records.getInt();
+                int year = records.getInt();
+                int length = records.getInt();
+                String value = null;
+                if (length >= 0) {
+                    if (title.length < length) title = new byte[length];
+                    records.get(title, 0, length);
+                    value = new String(title, 0, length, StandardCharsets.UTF_8);
+                }
+                consumer.accept(new Movie(id, value, year));
+            }
+        }
+    }
+
+    private static class ChannelOutput extends OutputStream {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelOutput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        }
+    }
+}
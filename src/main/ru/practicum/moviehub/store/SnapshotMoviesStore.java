@@ -0,0 +1,373 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+ * Каталог для нагрузки почти из одних чтений. Всё состояние — неизменяемый снимок за volatile-ссылкой:
+ * чтения не берут блокировок, getAllMovies и moviesView отдают представление снимка без копирования.
+ * Запись собирает новый снимок на постоянных картах (PersistentIntMap, для слов — PersistentTreeMap),
+ * копируя O(log n) узлов, и публикует его.
+ * Писатели, пришедшие одновременно, объединяются: взявший блокировку применяет все ожидающие
+ * изменения одним пакетом, и на всех публикуется один снимок.
+ */
+public class SnapshotMoviesStore extends MoviesStore {
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Queue<Write> pending = new ConcurrentLinkedQueue<>();
+    private volatile Snapshot current = new Snapshot(
+            PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentTreeMap.empty(), 0);
+
+    @Override
+    public Collection<Movie> moviesView() {
+        return current.byId.values();
+    }
+
+    @Override
+    public int size() {
+        return current.byId.size();
+    }
+
+    // Номер снимка: версия и содержимое меняются одной volatile-записью
+    @Override
+    public long version() {
+        return current.version;
+    }
+
+    @Override
+    public void clear() {
+        Snapshot snapshot = current;
+        int[] ids = new int[snapshot.byId.size()];
+        int i = 0;
+        for (int id : snapshot.byId.keys(Integer.MIN_VALUE, Integer.MAX_VALUE, false)) {
+            ids[i++] = id;
+        }
+        removeAll(ids);
+    }
+
+    /*
+     * Значение, посчитанное один раз на снимок: render получает все фильмы снимка,
+     * результат живёт, пока снимок текущий. Так готовые тела ответов переживают любое число чтений
+     * и сбрасываются первой же записью.
+     */
+    public <T> T memoize(Object key, Function<Collection<Movie>, T> render) {
+        return current.memoize(key, render);
+    }
+
+    @Override
+    List<Movie> snapshotAll() {
+        return current.byId.values();
+    }
+
+    @Override
+    List<Movie> page(int offset, int limit) {
+        Snapshot snapshot = current;
+        List<Movie> page = new ArrayList<>(Math.min(limit, snapshot.byId.size()));
+        Iterator<Movie> it = snapshot.byId.valuesFrom(offset);
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    @Override
+    List<Movie> pageAfter(int after, int limit) {
+        List<Movie> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Movie movie : current.byId.values(after + 1, Integer.MAX_VALUE, false)) {
+            if (page.size() == limit) break;
+            page.add(movie);
+        }
+        return page;
+    }
+
+    @Override
+    Movie lookup(int id) {
+        return current.byId.get(id);
+    }
+
+    @Override
+    List<Movie> moviesOfYear(int year) {
+        PersistentIntMap<Movie> bucket = current.byYear.get(year);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket.values());
+    }
+
+    @Override
+    List<Movie> yearRange(int yearFrom, int yearTo) {
+        List<Movie> result = new ArrayList<>();
+        for (PersistentIntMap<Movie> bucket : current.byYear.values(yearFrom, yearTo, false)) {
+            result.addAll(bucket.values());
+        }
+        return result;
+    }
+
+    @Override
+    int yearCount(int yearFrom, int yearTo) {
+        int count = 0;
+        for (PersistentIntMap<Movie> bucket : current.byYear.values(yearFrom, yearTo, false)) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    @Override
+    Iterable<Integer> years(int yearFrom, int yearTo, boolean descending) {
+        return current.byYear.keys(yearFrom, yearTo, descending);
+    }
+
+    @Override
+    void scan(int yearFrom, int yearTo, Predicate<Movie> sink) {
+        Snapshot snapshot = current;
+        if (yearFrom == Integer.MIN_VALUE && yearTo == Integer.MAX_VALUE) {
+            for (Movie movie : snapshot.byId.values()) {
+                if (!sink.test(movie)) return;
+            }
+            return;
+        }
+        for (PersistentIntMap<Movie> bucket : snapshot.byYear.values(yearFrom, yearTo, false)) {
+            for (Movie movie : bucket.values()) {
+                if (!sink.test(movie)) return;
+            }
+        }
+    }
+
+    // Та же семантика, что у TitleIndex: все слова, кроме последнего, целиком, последнее — префиксом
+    @Override
+    List<Movie> titleSearch(String query) {
+        List<String> tokens = new ArrayList<>(TitleIndex.tokenize(query));
+        List<Movie> result = new ArrayList<>();
+        if (tokens.isEmpty()) return result;
+        String prefix = tokens.remove(tokens.size() - 1);
+
+        Snapshot snapshot = current;
+        PersistentIntMap<Movie> smallest = null;
+        for (String token : tokens) {
+            PersistentIntMap<Movie> bucket = snapshot.byToken.get(token);
+            if (bucket == null) return result;
+            if (smallest == null || bucket.size() < smallest.size()) smallest = bucket;
+        }
+
+        if (smallest == null) {
+            // Character.MAX_VALUE не буква и не цифра, поэтому в словах не встречается
+            Set<Integer> seen = new HashSet<>();
+            for (PersistentIntMap<Movie> bucket : snapshot.byToken.values(prefix, prefix + Character.MAX_VALUE)) {
+                for (Movie movie : bucket.values()) {
+                    if (seen.add(movie.getId())) result.add(movie);
+                }
+            }
+            return result;
+        }
+        for (Movie movie : smallest.values()) {
+            if (matches(TitleIndex.tokenize(movie.getTitle()), tokens, prefix)) result.add(movie);
+        }
+        return result;
+    }
+
+    @Override
+    boolean insert(Movie movie) {
+        Write write = new Write(movie, movie.getId());
+        submit(List.of(write));
+        return write.result != null;
+    }
+
+    @Override
+    Movie remove(int id) {
+        Write write = new Write(null, id);
+        submit(List.of(write));
+        return write.result;
+    }
+
+    // Весь пакет — один снимок, если его не разбил параллельный писатель
+    @Override
+    boolean[] insertAll(List<Movie> batch) {
+        List<Write> writes = new ArrayList<>(batch.size());
+        for (Movie movie : batch) {
+            writes.add(new Write(movie, movie.getId()));
+        }
+        submit(writes);
+        boolean[] added = new boolean[writes.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = writes.get(i).result != null;
+        }
+        return added;
+    }
+
+    @Override
+    boolean[] removeAll(int[] ids) {
+        List<Write> writes = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            writes.add(new Write(null, id));
+        }
+        submit(writes);
+        boolean[] deleted = new boolean[writes.size()];
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = writes.get(i).result != null;
+        }
+        return deleted;
+    }
+
+    /*
+     * Изменения встают в очередь, затем писатель берёт блокировку. Если его изменения уже применил
+     * другой писатель, делать нечего; иначе он сам применяет всё, что накопилось в очереди.
+     * Очередь FIFO, поэтому применена последняя запись — применены и все предыдущие.
+     * Ошибку изменения получает его владелец, даже если изменение применял другой писатель.
+     */
+    private void submit(List<Write> writes) {
+        if (writes.isEmpty()) return;
+        pending.addAll(writes);
+        writeLock.lock();
+        try {
+            if (!writes.get(writes.size() - 1).done) drain();
+        } finally {
+            writeLock.unlock();
+        }
+        for (Write write : writes) {
+            if (write.failure instanceof Error e) throw e;
+            if (write.failure != null) throw (RuntimeException) write.failure;
+        }
+    }
+
+    // Сорвавшееся изменение не трогает построитель: onAdded/onDeleted вызываются до изменения индексов,
+    // поэтому остальные изменения пакета применяются как обычно
+    private void drain() {
+        Builder next = new Builder(current);
+        try {
+            Write write;
+            while ((write = pending.poll()) != null) {
+                try {
+                    write.result = write.movie != null ? next.add(write.movie) : next.delete(write.id);
+                } catch (RuntimeException | Error e) {
+                    write.failure = e;
+                }
+                write.done = true;
+            }
+        } finally {
+            // журнал изменений отдаёт события только после того, как их снимок виден читателям
+            if (next.seqCount > 0) {
+                current = next.build();
+                for (int i = 0; i < next.seqCount; i++) {
+                    changes().published(next.seqs[i]);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(Set<String> titleTokens, List<String> tokens, String prefix) {
+        if (!titleTokens.containsAll(tokens)) return false;
+        for (String token : titleTokens) {
+            if (token.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static final class Snapshot {
+        private final PersistentIntMap<Movie> byId;
+        private final PersistentIntMap<PersistentIntMap<Movie>> byYear;
+        private final PersistentTreeMap<String, PersistentIntMap<Movie>> byToken;
+        private final long version;
+        private volatile Map<Object, Object> memo;
+
+        private Snapshot(PersistentIntMap<Movie> byId,
+                         PersistentIntMap<PersistentIntMap<Movie>> byYear,
+                         PersistentTreeMap<String, PersistentIntMap<Movie>> byToken,
+                         long version) {
+            this.byId = byId;
+            this.byYear = byYear;
+            this.byToken = byToken;
+            this.version = version;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T memoize(Object key, Function<Collection<Movie>, T> render) {
+            Map<Object, Object> values = memo;
+            if (values == null) {
+                synchronized (this) {
+                    if (memo == null) memo = new ConcurrentHashMap<>();
+                    values = memo;
+                }
+            }
+            // параллельные читатели одного снимка ждут одного построения, а не строят каждый своё
+            return (T) values.computeIfAbsent(key, k -> render.apply(byId.values()));
+        }
+    }
+
+    // Новый снимок поверх текущего; узлы, созданные в этом пакете, правятся на месте
+    private final class Builder {
+        private final Object edit = new Object();
+        private final long version;
+        private PersistentIntMap<Movie> byId;
+        private PersistentIntMap<PersistentIntMap<Movie>> byYear;
+        private PersistentTreeMap<String, PersistentIntMap<Movie>> byToken;
+        private long[] seqs = new long[8];
+        private int seqCount;
+
+        private Builder(Snapshot base) {
+            byId = base.byId;
+            byYear = base.byYear;
+            byToken = base.byToken;
+            version = base.version + 1;
+        }
+
+        private Movie add(Movie movie) {
+            int id = movie.getId();
+            if (byId.get(id) != null) return null;
+            onAdded(movie);
+            byId = byId.with(id, movie, edit);
+            byYear = byYear.with(movie.getYear(), bucket(byYear.get(movie.getYear())).with(id, movie, edit), edit);
+            for (String token : TitleIndex.tokenize(movie.getTitle())) {
+                byToken = byToken.with(token, bucket(byToken.get(token)).with(id, movie, edit), edit);
+            }
+            appendSeq(added(movie));
+            return movie;
+        }
+
+        private Movie delete(int id) {
+            Movie movie = byId.get(id);
+            if (movie == null) return null;
+            onDeleted(movie);
+            byId = byId.without(id, edit);
+            // пустые корзины удаляются, чтобы по ключам годов и слов не попадались пустые диапазоны
+            PersistentIntMap<Movie> bucket = byYear.get(movie.getYear()).without(id, edit);
+            byYear = bucket.isEmpty() ? byYear.without(movie.getYear(), edit) : byYear.with(movie.getYear(), bucket, edit);
+            for (String token : TitleIndex.tokenize(movie.getTitle())) {
+                bucket = byToken.get(token).without(id, edit);
+                byToken = bucket.isEmpty() ? byToken.without(token, edit) : byToken.with(token, bucket, edit);
+            }
+            appendSeq(deleted(movie));
+            return movie;
+        }
+
+        private PersistentIntMap<Movie> bucket(PersistentIntMap<Movie> bucket) {
+            return bucket == null ? PersistentIntMap.empty() : bucket;
+        }
+
+        private void appendSeq(long seq) {
+            if (seqCount == seqs.length) seqs = Arrays.copyOf(seqs, seqCount * 2);
+            seqs[seqCount++] = seq;
+        }
+
+        private Snapshot build() {
+            return new Snapshot(byId, byYear, byToken, version);
+        }
+    }
+
+    private static final class Write {
+        // movie задан у добавления, у удаления — null
+        private final Movie movie;
+        private final int id;
+        // добавленный или удалённый фильм; null, если изменение не применилось
+        private Movie result;
+        // исключение, с которым сорвалось изменение; его бросает submit владельца
+        private Throwable failure;
+        private boolean done;
+
+        private Write(Movie movie, int id) {
+            this.movie = movie;
+            this.id = id;
+        }
+    }
+}
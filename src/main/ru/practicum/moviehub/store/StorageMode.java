@@ -0,0 +1,12 @@
+package ru.practicum.moviehub.store;
+
+public enum StorageMode {
+    // MoviesStore: объект Movie и узлы ConcurrentHashMap на каждый фильм
+    HEAP,
+    // CompactMoviesStore: примитивные массивы, названия в UTF-8 в буфере в куче
+    COMPACT,
+    // то же, но буфер названий вне кучи (direct ByteBuffer)
+    OFF_HEAP,
+    // SnapshotMoviesStore: неизменяемый снимок за volatile-ссылкой, чтения без блокировок
+    SNAPSHOT
+}
@@ -0,0 +1,83 @@
+package ru.practicum.moviehub.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Названия фильмов подряд в UTF-8. Место удалённых названий освобождается только при уплотнении.
+class TitleArena {
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private final boolean direct;
+    private ByteBuffer buffer;
+    private int used;
+    private int dead;
+
+    TitleArena(boolean direct, int capacity) {
+        this.direct = direct;
+        this.buffer = allocate(Math.max(capacity, 64));
+    }
+
+    // Смещение записанного названия. Вызывающий держит блокировку записи.
+    int append(byte[] title) {
+        if (buffer.capacity() - used < title.length) grow(title.length);
+        int offset = used;
+        buffer.put(offset, title);
+        used += title.length;
+        return offset;
+    }
+
+    String read(int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void release(int length) {
+        dead += length;
+    }
+
+    boolean fits(int length) {
+        return buffer.capacity() - used >= length;
+    }
+
+    // Мусора больше половины — уплотнение освободит не меньше, чем дало бы удвоение буфера
+    boolean worthCompacting() {
+        return dead > 0 && dead >= used / 2;
+    }
+
+    // Переписывает живые названия в начало нового буфера и обновляет их смещения в слотах
+    void compact(int[] offsets, int[] lengths, int slots) {
+        ByteBuffer compacted = allocate(buffer.capacity());
+        int position = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            int length = lengths[slot];
+            if (length <= 0) continue;
+            compacted.put(position, buffer, offsets[slot], length);
+            offsets[slot] = position;
+            position += length;
+        }
+        buffer = compacted;
+        used = position;
+        dead = 0;
+    }
+
+    long capacity() {
+        return buffer.capacity();
+    }
+
+    private void grow(int needed) {
+        long required = (long) used + needed;
+        if (required > MAX_CAPACITY) throw new IllegalStateException("Буфер названий переполнен");
+        int capacity = (int) Math.min(MAX_CAPACITY, Math.max(required, (long) buffer.capacity() * 2));
+        ByteBuffer grown = allocate(capacity);
+        grown.put(0, buffer, 0, used);
+        buffer = grown;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,121 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Инвертированный индекс по словам названия: слово -> (id -> фильм).
+// Слова хранятся в отсортированной карте, поэтому поиск по префиксу — это диапазон ключей, а не обход каталога.
+// Опустевшее слово удаляется из карты, чтобы при постоянной смене каталога она не росла мёртвыми словами.
+class TitleIndex {
+    private final ConcurrentNavigableMap<String, Bucket> byToken = new ConcurrentSkipListMap<>();
+
+    void add(Movie movie) {
+        for (String token : tokenize(movie.getTitle())) {
+            while (true) {
+                Bucket bucket = byToken.computeIfAbsent(token, t -> new Bucket());
+                synchronized (bucket) {
+                    // корзину успели убрать из карты как пустую: берём новую
+                    if (bucket.detached) continue;
+                    bucket.put(movie.getId(), movie);
+                }
+                break;
+            }
+        }
+    }
+
+    void remove(Movie movie) {
+        for (String token : tokenize(movie.getTitle())) {
+            Bucket bucket = byToken.get(token);
+            if (bucket == null) continue;
+            synchronized (bucket) {
+                bucket.remove(movie.getId());
+                if (bucket.isEmpty() && !bucket.detached) {
+                    bucket.detached = true;
+                    byToken.remove(token, bucket);
+                }
+            }
+        }
+    }
+
+    int tokenCount() {
+        return byToken.size();
+    }
+
+    // Все слова запроса, кроме последнего, должны совпасть целиком, последнее — как префикс слова.
+    List<Movie> search(String query) {
+        List<String> tokens = new ArrayList<>(tokenize(query));
+        if (tokens.isEmpty()) return new ArrayList<>();
+        String prefix = tokens.remove(tokens.size() - 1);
+
+        Map<Integer, Movie> smallest = null;
+        for (String token : tokens) {
+            Map<Integer, Movie> bucket = byToken.get(token);
+            if (bucket == null || bucket.isEmpty()) return new ArrayList<>();
+            if (smallest == null || bucket.size() < smallest.size()) smallest = bucket;
+        }
+
+        List<Movie> result = new ArrayList<>();
+        if (smallest == null) {
+            Set<Integer> seen = new HashSet<>();
+            for (Map<Integer, Movie> bucket : prefixRange(prefix).values()) {
+                for (Movie movie : bucket.values()) {
+                    if (seen.add(movie.getId())) result.add(movie);
+                }
+            }
+            return result;
+        }
+
+        for (Movie movie : smallest.values()) {
+            if (matches(movie, tokens, prefix)) result.add(movie);
+        }
+        return result;
+    }
+
+    private ConcurrentNavigableMap<String, Bucket> prefixRange(String prefix) {
+        return byToken.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private boolean matches(Movie movie, List<String> tokens, String prefix) {
+        for (String token : tokens) {
+            Map<Integer, Movie> bucket = byToken.get(token);
+            if (bucket == null || !bucket.containsKey(movie.getId())) return false;
+        }
+        for (String token : tokenize(movie.getTitle())) {
+            if (token.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return tokens;
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(normalize(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) tokens.add(current.toString());
+        return tokens;
+    }
+
+    private static char normalize(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    // Чтение без блокировок; добавление и удаление с опустошением идут под монитором корзины.
+    // compute у ConcurrentSkipListMap не атомарен для функций, меняющих значение на месте, поэтому
+    // удалённая из карты корзина помечается, и добавление в неё уходит в новую корзину
+    private static final class Bucket extends ConcurrentHashMap<Integer, Movie> {
+        private boolean detached;
+    }
+}
@@ -0,0 +1,234 @@
+package ru.practicum.moviehub.store;
+
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ * Журнал операций, разбитый на сегменты wal-<поколение>.log.
+ * Запись: [длина данных][crc32 данных][тип][id][год][длина названия][название в UTF-8].
+ * Недописанная или повреждённая запись в конце сегмента при восстановлении отбрасывается, а файл обрезается.
+ */
+class WriteAheadLog implements Closeable {
+    static final byte ADD = 1;
+    static final byte DELETE = 2;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d+)\\.log");
+
+    interface Replay {
+        void apply(byte type, Movie movie);
+    }
+
+    private final Path dir;
+    private final Durability durability;
+    private final Object syncLock = new Object();
+    private final CRC32 crc = new CRC32();
+
+    // поля ниже защищены монитором this
+    private FileChannel channel;
+    private long generation;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long appended;
+
+    private volatile long durable;
+
+    WriteAheadLog(Path dir, long generation, Durability durability) throws IOException {
+        this.dir = dir;
+        this.durability = durability;
+        this.generation = generation;
+        this.channel = openSegment(generation);
+    }
+
+    synchronized void append(byte type, Movie movie) {
+        byte[] title = movie.getTitle() == null ? null : movie.getTitle().getBytes(StandardCharsets.UTF_8);
+        int payloadSize = 1 + 4 + 4 + 4 + (title == null ? 0 : title.length);
+        int recordSize = HEADER_SIZE + payloadSize;
+        try {
+            if (buffer.remaining() < recordSize) {
+                drain();
+                if (buffer.capacity() < recordSize) buffer = ByteBuffer.allocate(recordSize);
+            }
+            int start = buffer.position();
+            buffer.putInt(payloadSize).putInt(0)
+                    .put(type).putInt(movie.getId()).putInt(movie.getYear())
+                    .putInt(title == null ? -1 : title.length);
+            if (title != null) buffer.put(title);
+            crc.reset();
+            crc.update(buffer.array(), start + HEADER_SIZE, payloadSize);
+            buffer.putInt(start + 4, (int) crc.getValue());
+            appended += recordSize;
+            if (durability == Durability.SYNC) {
+                drain();
+                channel.force(false);
+                durable = appended;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать журнал операций", e);
+        }
+    }
+
+    // Возвращает управление, когда всё записанное до вызова лежит на диске (кроме режима ASYNC)
+    void commit() {
+        if (durability != Durability.BATCHED) return;
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        sync(target);
+    }
+
+    void sync(long target) {
+        synchronized (syncLock) {
+            // пока предыдущий лидер делал fsync, другой поток мог уже подтвердить и наши записи
+            if (durable >= target) return;
+            long upTo;
+            FileChannel current;
+            synchronized (this) {
+                upTo = appended;
+                current = channel;
+                try {
+                    drain();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Не удалось записать журнал операций", e);
+                }
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось сбросить журнал операций на диск", e);
+            }
+            durable = upTo;
+        }
+    }
+
+    void flush() {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        sync(target);
+    }
+
+    // Закрывает текущий сегмент и начинает следующий; возвращает номер нового поколения
+    long roll() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                drain();
+                channel.force(false);
+                channel.close();
+                durable = appended;
+                generation++;
+                channel = openSegment(generation);
+                return generation;
+            }
+        }
+    }
+
+    void deleteSegmentsBefore(long generation) throws IOException {
+        for (Path segment : segments(dir)) {
+            if (generationOf(segment) < generation) Files.deleteIfExists(segment);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                drain();
+                channel.force(false);
+                channel.close();
+                durable = appended;
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private FileChannel openSegment(long generation) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(dir, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        return ch;
+    }
+
+    static Path segmentPath(Path dir, long generation) {
+        return dir.resolve("wal-" + generation + ".log");
+    }
+
+    static List<Path> segments(Path dir) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches()).forEach(result::add);
+        }
+        result.sort((a, b) -> Long.compare(generationOf(a), generationOf(b)));
+        return result;
+    }
+
+    static long generationOf(Path segment) {
+        Matcher matcher = SEGMENT_NAME.matcher(segment.getFileName().toString());
+        if (!matcher.matches()) throw new IllegalArgumentException("Не сегмент журнала: " + segment);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    // Проигрывает сегмент до первой неполной или повреждённой записи и обрезает файл по ней
+    static void replay(Path segment, Replay replay) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                int payloadSize;
+                int checksum;
+                byte[] payload;
+                try {
+                    payloadSize = in.readInt();
+                    checksum = in.readInt();
+                    if (payloadSize < 13) break;
+                    payload = in.readNBytes(payloadSize);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payload.length < payloadSize) break;
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) break;
+
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte type = record.get();
+                int id = record.getInt();
+                int year = record.getInt();
+                int titleLength = record.getInt();
+                if (titleLength > record.remaining()) break;
+                String title = titleLength < 0 ? null
+                        : new String(payload, record.position(), titleLength, StandardCharsets.UTF_8);
+                replay.apply(type, new Movie(id, title, year));
+                valid += HEADER_SIZE + payloadSize;
+            }
+        }
+        if (valid < Files.size(segment)) {
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                ch.truncate(valid);
+                ch.force(true);
+            }
+        }
+    }
+}
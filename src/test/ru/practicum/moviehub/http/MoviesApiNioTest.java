@@ -0,0 +1,43 @@
+package ru.practicum.moviehub.http;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Все тесты MoviesApiTest на NioTransport плюс то, чего нет у HttpServer
+public class MoviesApiNioTest extends MoviesApiTest {
+
+    @Override
+    protected ServerConfig serverConfig() {
+        return super.serverConfig().setTransport(ServerConfig.TransportType.NIO);
+    }
+
+    @Test
+    void pipelinedRequests_answeredInOrderOnOneConnection() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Брат", 1997));
+        server.getMoviesStore().addMovies(new Movie(2, "Брат 2", 2000));
+
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /movies/2 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /movies/99 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /movies/1 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            String responses = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            int second = responses.indexOf("HTTP/1.1 404");
+            int third = responses.lastIndexOf("HTTP/1.1 200");
+            assertTrue(responses.startsWith("HTTP/1.1 200"), responses);
+            assertTrue(second > 0 && third > second, responses);
+            assertTrue(responses.indexOf("Брат 2") < second);
+            assertTrue(responses.indexOf("\"Брат\"", third) > third);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.practicum.moviehub.http;
+
+import ru.practicum.moviehub.store.StorageMode;
+
+// Все тесты MoviesApiTest на SnapshotMoviesStore: полный список отдаётся из тела, запомненного снимком
+public class MoviesApiSnapshotTest extends MoviesApiTest {
+
+    @Override
+    protected ServerConfig serverConfig() {
+        return super.serverConfig().setStorage(StorageMode.SNAPSHOT);
+    }
+}
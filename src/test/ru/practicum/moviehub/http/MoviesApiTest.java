@@ -3,35 +3,48 @@ package ru.practicum.moviehub.http;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.api.BatchResponse;
 import ru.practicum.moviehub.model.Movie;
 import ru.practicum.moviehub.http.MoviesServer;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class MoviesApiTest {
 
-    private static final String BASE = "http://localhost:8080";
-    private MoviesServer server;
+    protected String baseUrl;
+    protected MoviesServer server;
     private HttpClient client;
     private Gson gson;
 
     @BeforeAll
     void beforeAll() {
-        server = new MoviesServer();
+        server = new MoviesServer(serverConfig());
         server.start();
+        baseUrl = "http://localhost:" + server.getPort();
         client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
         gson = new Gson();
     }
 
+    // Подклассы гоняют те же тесты на другом транспорте
+    protected ServerConfig serverConfig() {
+        return new ServerConfig().setPort(0);
+    }
+
     @AfterAll
     void afterAll() {
         if (server != null) server.stop();
@@ -44,7 +57,7 @@ public class MoviesApiTest {
 
     @Test
     void getMovies_whenEmpty_returnsEmptyArray() throws Exception {
-        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(BASE + "/movies")).GET().build();
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(baseUrl + "/movies")).GET().build();
         HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
 
         assertEquals(200, resp.statusCode());
@@ -56,7 +69,7 @@ public class MoviesApiTest {
     void postMovie_valid_returns201() throws Exception {
         Movie movie = new Movie(1, "Фильм", 2025);
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build();
@@ -70,7 +83,7 @@ public class MoviesApiTest {
     void postMovie_emptyTitle_returns422() throws Exception {
         Movie movie = new Movie(1, "", 2025);
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build();
@@ -84,7 +97,7 @@ public class MoviesApiTest {
         String longTitle = "A".repeat(101);
         Movie movie = new Movie(1, longTitle, 2025);
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build();
@@ -97,7 +110,7 @@ public class MoviesApiTest {
     void postMovie_yearInvalid_returns422() throws Exception {
         Movie movie = new Movie(1, "Фильм", 1800);
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build();
@@ -110,7 +123,7 @@ public class MoviesApiTest {
     void postMovie_wrongContentType_returns415() throws Exception {
         Movie movie = new Movie(1, "Фильм", 2025);
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "text/plain")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build();
@@ -122,13 +135,13 @@ public class MoviesApiTest {
     void getMovie_byId_success() throws Exception {
         Movie movie = new Movie(1, "Фильм", 2025);
         client.send(HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
 
         HttpRequest getReq = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/1"))
+                .uri(URI.create(baseUrl + "/movies/1"))
                 .GET()
                 .build();
         HttpResponse<String> resp = client.send(getReq, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -140,7 +153,7 @@ public class MoviesApiTest {
     @Test
     void getMovie_byId_notFound() throws Exception {
         HttpRequest getReq = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/99"))
+                .uri(URI.create(baseUrl + "/movies/99"))
                 .GET()
                 .build();
         HttpResponse<String> resp = client.send(getReq, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -150,7 +163,7 @@ public class MoviesApiTest {
     @Test
     void getMovie_byId_invalid_returns400() throws Exception {
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/abc"))
+                .uri(URI.create(baseUrl + "/movies/abc"))
                 .GET()
                 .build();
         HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -161,13 +174,13 @@ public class MoviesApiTest {
     void deleteMovie_byId_success() throws Exception {
         Movie movie = new Movie(1, "Фильм", 2025);
         client.send(HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
                 .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
 
         HttpRequest deleteReq = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/1"))
+                .uri(URI.create(baseUrl + "/movies/1"))
                 .DELETE()
                 .build();
         HttpResponse<String> resp = client.send(deleteReq, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -177,7 +190,7 @@ public class MoviesApiTest {
     @Test
     void deleteMovie_byId_notFound() throws Exception {
         HttpRequest deleteReq = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/99"))
+                .uri(URI.create(baseUrl + "/movies/99"))
                 .DELETE()
                 .build();
         HttpResponse<String> resp = client.send(deleteReq, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -187,7 +200,7 @@ public class MoviesApiTest {
     @Test
     void deleteMovie_byId_invalid_returns400() throws Exception {
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies/abc"))
+                .uri(URI.create(baseUrl + "/movies/abc"))
                 .DELETE()
                 .build();
         HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -199,18 +212,18 @@ public class MoviesApiTest {
         Movie movie1 = new Movie(1, "Фильм1", 2025);
         Movie movie2 = new Movie(2, "Фильм2", 2024);
         client.send(HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie1)))
                 .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
         client.send(HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies"))
+                .uri(URI.create(baseUrl + "/movies"))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie2)))
                 .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
 
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies?year=2025"))
+                .uri(URI.create(baseUrl + "/movies?year=2025"))
                 .GET()
                 .build();
         HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
@@ -223,10 +236,506 @@ public class MoviesApiTest {
     @Test
     void getMoviesByYear_invalid_returns400() throws Exception {
         HttpRequest req = HttpRequest.newBuilder()
-                .uri(URI.create(BASE + "/movies?year=abc"))
+                .uri(URI.create(baseUrl + "/movies?year=abc"))
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(400, resp.statusCode());
+    }
+
+    @Test
+    void getMoviesByYearRange_valid_returnsMoviesInRange() throws Exception {
+        for (Movie movie : List.of(new Movie(1, "Фильм1", 2000), new Movie(2, "Фильм2", 2010),
+                new Movie(3, "Фильм3", 2020))) {
+            client.send(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/movies"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
+                    .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        }
+
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies?yearFrom=2005&yearTo=2020"))
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, resp.statusCode());
+        List<Movie> movies = gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType());
+        assertEquals(2, movies.size());
+        assertTrue(movies.stream().allMatch(m -> m.getYear() >= 2005 && m.getYear() <= 2020));
+    }
+
+    @Test
+    void getMoviesByYearRange_invalid_returns400() throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies?yearFrom=abc"))
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(400, resp.statusCode());
+    }
+
+    @Test
+    void searchByTitle_prefixAndTokens_returnsMatches() throws Exception {
+        for (Movie movie : List.of(new Movie(1, "Брат", 1997), new Movie(2, "Брат 2", 2000),
+                new Movie(3, "Ёлки", 2010), new Movie(4, "Москва слезам не верит", 1979))) {
+            client.send(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/movies"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(movie)))
+                    .build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(2, searchByTitle("бра").size());
+        assertEquals(1, searchByTitle("брат 2").size());
+        assertEquals(1, searchByTitle("елки").size());
+        assertEquals(1, searchByTitle("слезам не вер").size());
+        assertTrue(searchByTitle("терминатор").isEmpty());
+    }
+
+    private List<Movie> searchByTitle(String title) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies?title=" + URLEncoder.encode(title, StandardCharsets.UTF_8)))
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, resp.statusCode());
+        return gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType());
+    }
+
+    @Test
+    void getMovies_withLimitAndOffset_returnsPages() throws Exception {
+        for (int id = 1; id <= 5; id++) {
+            server.getMoviesStore().addMovies(new Movie(id, "Фильм" + id, 2000));
+        }
+
+        List<Movie> all = new ArrayList<>();
+        for (int offset = 0; offset < 6; offset += 2) {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/movies?limit=2&offset=" + offset))
+                    .GET()
+                    .build();
+            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            assertEquals(200, resp.statusCode());
+            assertEquals("5", resp.headers().firstValue("X-Total-Count").orElse(null));
+            all.addAll(gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType()));
+        }
+        assertEquals(5, all.size());
+        assertEquals(5, all.stream().map(Movie::getId).distinct().count());
+    }
+
+    @Test
+    void getMovies_afterCursorAndFilteredWindows_applyLimit() throws Exception {
+        for (int id = 5; id >= 1; id--) {
+            server.getMoviesStore().addMovies(new Movie(id, "Фильм" + id, 2000 + id % 2));
+        }
+
+        assertEquals(List.of(1, 2), idsOf("/movies?after=0&limit=2"));
+        assertEquals(List.of(3, 4), idsOf("/movies?after=2&limit=2"));
+        assertEquals(List.of(5), idsOf("/movies?after=4&limit=2"));
+        assertEquals(2, idsOf("/movies?year=2001&limit=2").size());
+        assertEquals(List.of(5), idsOf("/movies?year=2001&sort=id&offset=2"));
+        assertEquals(3, idsOf("/movies?title=фильм&limit=3").size());
+        assertEquals(2, idsOf("/movies?yearFrom=2000&offset=3").size());
+        for (String path : List.of("/movies?after=1&offset=1", "/movies?after=x", "/movies?year=2000&after=1")) {
+            HttpRequest req = HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).GET().build();
+            assertEquals(400, client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode(), path);
+        }
+    }
+
+    @Test
+    void getMovies_invalidLimit_returns400() throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies?limit=0"))
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(400, resp.statusCode());
+    }
+
+    @Test
+    void getMovies_fullCatalog_returnsAll() throws Exception {
+        for (int id = 1; id <= 1000; id++) {
+            server.getMoviesStore().addMovies(new Movie(id, "Фильм" + id, 2000));
+        }
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(baseUrl + "/movies")).GET().build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+        assertEquals(200, resp.statusCode());
+        List<Movie> movies = gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType());
+        assertEquals(1000, movies.size());
+    }
+
+    @Test
+    void getMoviesByYear_withExtraParams_ignoresUnknown() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Фильм1", 2020));
+        server.getMoviesStore().addMovies(new Movie(2, "Фильм2", 2021));
+
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies?year=2020&x=1"))
                 .GET()
                 .build();
         HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, resp.statusCode());
+        List<Movie> movies = gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType());
+        assertEquals(1, movies.size());
+    }
+
+    @Test
+    void unknownPathsAndMethods_keepErrorCodes() throws Exception {
+        assertEquals(400, send("GET", "/movies/1/extra"));
+        assertEquals(400, send("GET", "/movies/99999999999"));
+        assertEquals(400, send("DELETE", "/movies/-1"));
+        assertEquals(405, send("DELETE", "/movies"));
+        assertEquals(405, send("PUT", "/movies/1"));
+        assertEquals(404, send("GET", "/moviesx"));
+    }
+
+    private int send(String method, String path) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    void postBatch_jsonArray_addsValidAndReportsErrors() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Уже есть", 2000));
+        List<Movie> batch = new ArrayList<>();
+        for (int id = 1; id <= 2500; id++) {
+            batch.add(new Movie(id, "Фильм" + id, id == 7 ? 1800 : 2000));
+        }
+        HttpResponse<String> resp = sendBatch("POST", "application/json", gson.toJson(batch));
+
+        assertEquals(200, resp.statusCode());
+        BatchResponse result = gson.fromJson(resp.body(), BatchResponse.class);
+        assertEquals(2498, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        assertEquals(409, result.getErrors().get(0).getStatus());
+        assertEquals(0, result.getErrors().get(0).getIndex());
+        assertEquals(422, result.getErrors().get(1).getStatus());
+        assertEquals(6, result.getErrors().get(1).getIndex());
+        assertEquals(2499, server.getMoviesStore().size());
+    }
+
+    @Test
+    void postBatch_ndjson_addsAll() throws Exception {
+        String body = gson.toJson(new Movie(1, "Первый", 2001)) + "\n" + gson.toJson(new Movie(2, "Второй", 2002)) + "\n";
+        HttpResponse<String> resp = sendBatch("POST", "application/x-ndjson", body);
+
+        assertEquals(200, resp.statusCode());
+        assertEquals(2, gson.fromJson(resp.body(), BatchResponse.class).getSucceeded());
+        assertEquals(2, server.getMoviesStore().size());
+    }
+
+    @Test
+    void postBatch_malformed_returns400() throws Exception {
+        HttpResponse<String> resp = sendBatch("POST", "application/json", "[{\"id\": 1, \"title\": \"Фильм\", \"year\": 2000}, {\"id\":");
         assertEquals(400, resp.statusCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void postBatch_badlyTypedElement_reportedPerItem() throws Exception {
+        String body = "[{\"id\": 1, \"title\": \"Первый\", \"year\": 2001},"
+                + " {\"id\": \"x\", \"title\": \"Плохой\", \"year\": 2002},"
+                + " {\"id\": 3, \"title\": \"Третий\", \"year\": \"abc\"},"
+                + " {\"id\": 4, \"title\": \"Четвёртый\", \"year\": 2004}]";
+        HttpResponse<String> resp = sendBatch("POST", "application/json", body);
+
+        assertEquals(200, resp.statusCode());
+        BatchResponse result = gson.fromJson(resp.body(), BatchResponse.class);
+        assertEquals(2, result.getSucceeded());
+        assertEquals(List.of(1, 2), result.getErrors().stream().map(BatchResponse.ItemError::getIndex).toList());
+        assertTrue(result.getErrors().stream().allMatch(e -> e.getStatus() == 400));
+        assertNotNull(server.getMoviesStore().findMovie(4));
+    }
+
+    @Test
+    void deleteBatch_removesExistingAndReportsMissing() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Первый", 2001));
+        server.getMoviesStore().addMovies(new Movie(2, "Второй", 2002));
+        HttpResponse<String> resp = sendBatch("DELETE", "application/json", "[1, 2, 3]");
+
+        assertEquals(200, resp.statusCode());
+        BatchResponse result = gson.fromJson(resp.body(), BatchResponse.class);
+        assertEquals(2, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(3, result.getErrors().get(0).getId());
+        assertTrue(server.getMoviesStore().getAllMovies().isEmpty());
+    }
+
+    private HttpResponse<String> sendBatch(String method, String contentType, String body) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies/batch"))
+                .header("Content-Type", contentType)
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void getMovies_ifNoneMatch_returns304UntilCatalogChanges() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Фильм", 2000));
+        HttpRequest first = HttpRequest.newBuilder().uri(URI.create(baseUrl + "/movies")).GET().build();
+        HttpResponse<String> resp = client.send(first, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        String etag = resp.headers().firstValue("ETag").orElseThrow();
+
+        HttpRequest conditional = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies"))
+                .header("If-None-Match", etag)
+                .GET()
+                .build();
+        HttpResponse<String> notModified = client.send(conditional, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(304, notModified.statusCode());
+        assertTrue(notModified.body().isEmpty());
+
+        server.getMoviesStore().addMovies(new Movie(2, "Фильм 2", 2001));
+        HttpResponse<String> changed = client.send(conditional, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        List<Movie> movies = gson.fromJson(changed.body(), new TypeToken<List<Movie>>(){}.getType());
+        assertEquals(2, movies.size());
+    }
+
+    @Test
+    void getMovieById_afterDelete_notServedFromCache() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Фильм", 2000));
+        assertEquals(200, send("GET", "/movies/1"));
+        server.getMoviesStore().deleteMovieById(1);
+        assertEquals(404, send("GET", "/movies/1"));
+    }
+
+    @Test
+    void getMovies_acceptGzip_returnsCompressedBody() throws Exception {
+        for (int id = 1; id <= 200; id++) {
+            server.getMoviesStore().addMovies(new Movie(id, "Фильм" + id, 2000));
+        }
+        for (String encoding : List.of("gzip", "deflate")) {
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/movies"))
+                    .header("Accept-Encoding", encoding)
+                    .GET()
+                    .build();
+            HttpResponse<byte[]> resp = client.send(req, HttpResponse.BodyHandlers.ofByteArray());
+
+            assertEquals(200, resp.statusCode());
+            assertEquals(encoding, resp.headers().firstValue("Content-Encoding").orElse(null));
+            InputStream in = encoding.equals("gzip")
+                    ? new GZIPInputStream(new ByteArrayInputStream(resp.body()))
+                    : new InflaterInputStream(new ByteArrayInputStream(resp.body()));
+            String json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            List<Movie> movies = gson.fromJson(json, new TypeToken<List<Movie>>(){}.getType());
+            assertEquals(200, movies.size());
+        }
+    }
+
+    @Test
+    void errorResponse_acceptGzip_isNotCompressed() throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies/99"))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(404, resp.statusCode());
+        assertTrue(resp.headers().firstValue("Content-Encoding").isEmpty());
+        assertTrue(resp.body().contains("Такого фильма нет в списке"));
+    }
+
+    @Test
+    void metrics_afterRequests_exposesRouteCountersAndStoreTimings() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Фильм", 2000));
+        assertEquals(200, send("GET", "/movies/1"));
+        assertEquals(404, send("GET", "/movies/2"));
+        assertEquals(400, send("GET", "/movies/1/extra"));
+        String batch = "[{\"id\": 2, \"title\": \"Второй\", \"year\": 2001}]";
+        assertEquals(200, sendBatch("POST", "application/json", batch).statusCode());
+
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(baseUrl + "/metrics")).GET().build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+        assertEquals(200, resp.statusCode());
+        assertTrue(resp.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        assertTrue(resp.body().contains("movies_http_requests_total{route=\"GET /movies/{id}\",status=\"200\"}"));
+        assertTrue(resp.body().contains("movies_http_requests_total{route=\"GET /movies/{id}\",status=\"404\"}"));
+        // метка берётся из маршрутизации обработчика, в том числе для путей без маршрута
+        assertTrue(resp.body().contains("movies_http_requests_total{route=\"unmatched\",status=\"400\"}"));
+        assertTrue(resp.body().contains("movies_http_request_bytes_total{route=\"POST /movies/batch\"} "
+                + batch.getBytes(StandardCharsets.UTF_8).length + "\n"));
+        assertTrue(resp.body().contains("movies_store_operation_duration_seconds_count{op=\"find\"}"));
+        assertTrue(resp.body().contains("movies_store_size 2"));
+    }
+
+    @Test
+    void postMovie_serverIds_assignsIdAndRejectsSameTitleAndYear() throws Exception {
+        MoviesServer idServer = new MoviesServer(serverConfig().setIds(ServerConfig.IdAssignment.SERVER));
+        idServer.start();
+        try {
+            String url = "http://localhost:" + idServer.getPort() + "/movies";
+            List<Integer> statuses = new ArrayList<>();
+            List<Movie> created = new ArrayList<>();
+            for (String body : List.of("{\"id\":7,\"title\":\"Брат\",\"year\":1997}",
+                    "{\"title\":\"Брат 2\",\"year\":2000}",
+                    "{\"id\":99,\"title\":\"Брат\",\"year\":1997}")) {
+                HttpRequest req = HttpRequest.newBuilder()
+                        .uri(URI.create(url))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                statuses.add(resp.statusCode());
+                if (resp.statusCode() == 201) {
+                    Movie movie = gson.fromJson(resp.body(), Movie.class);
+                    assertEquals("/movies/" + movie.getId(), resp.headers().firstValue("Location").orElse(null));
+                    created.add(movie);
+                }
+            }
+
+            assertEquals(List.of(201, 201, 409), statuses);
+            assertEquals(1, created.get(0).getId());
+            assertEquals(2, created.get(1).getId());
+            assertEquals("Брат 2", idServer.getMoviesStore().findMovie(2).getTitle());
+        } finally {
+            idServer.stop();
+        }
+    }
+
+    @Test
+    void postBatch_serverIds_ignoresClientIdsAndRejectsDuplicates() throws Exception {
+        MoviesServer idServer = new MoviesServer(serverConfig().setIds(ServerConfig.IdAssignment.SERVER));
+        idServer.start();
+        try {
+            idServer.getMoviesStore().addWithGeneratedId("Брат", 1997);
+            String body = "[{\"id\":500,\"title\":\"Брат\",\"year\":1997},"
+                    + "{\"id\":500,\"title\":\"Брат 2\",\"year\":2000},"
+                    + "{\"title\":\"Брат 2\",\"year\":2000},"
+                    + "{\"id\":1000000,\"title\":\"Ёлки\",\"year\":2010}]";
+            HttpRequest req = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + idServer.getPort() + "/movies/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+            assertEquals(200, resp.statusCode());
+            BatchResponse result = gson.fromJson(resp.body(), BatchResponse.class);
+            assertEquals(2, result.getSucceeded());
+            assertEquals(List.of(2, 3), result.getIds());
+            assertEquals(List.of(0, 2), result.getErrors().stream().map(BatchResponse.ItemError::getIndex).toList());
+            assertEquals(409, result.getErrors().get(0).getStatus());
+            assertEquals("Ёлки", idServer.getMoviesStore().findMovie(3).getTitle());
+            // id из тела не попал в каталог и не сдвинул выдачу
+            assertEquals(4, idServer.getMoviesStore().addWithGeneratedId("Сталкер", 1979).getId());
+        } finally {
+            idServer.stop();
+        }
+    }
+
+    @Test
+    void changes_longPoll_deliversAddsAndDeletesAfterFullDump() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Брат", 1997));
+        HttpResponse<String> dump = client.send(HttpRequest.newBuilder().uri(URI.create(baseUrl + "/movies")).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        long since = Long.parseLong(dump.headers().firstValue("X-Change-Seq").orElseThrow());
+
+        HttpRequest poll = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies/changes?since=" + since + "&wait=5")).GET().build();
+        var pending = client.sendAsync(poll, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        Thread.sleep(100);
+        server.getMoviesStore().addMovies(new Movie(2, "Брат 2", 2000));
+        HttpResponse<String> resp = pending.get(5, java.util.concurrent.TimeUnit.SECONDS);
+
+        assertEquals(200, resp.statusCode());
+        Changes changes = gson.fromJson(resp.body(), Changes.class);
+        assertEquals(1, changes.changes.size());
+        assertEquals("added", changes.changes.get(0).type);
+        assertEquals("Брат 2", changes.changes.get(0).movie.getTitle());
+        assertEquals(changes.changes.get(0).seq, changes.next);
+
+        server.getMoviesStore().deleteMovieById(1);
+        HttpResponse<String> next = client.send(HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + "/movies/changes?since=" + changes.next)).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        Changes deleted = gson.fromJson(next.body(), Changes.class);
+        assertEquals(1, deleted.changes.size());
+        assertEquals("deleted", deleted.changes.get(0).type);
+        assertEquals(1, deleted.changes.get(0).movie.getId());
+    }
+
+    @Test
+    void changes_sinceOutsideFeed_returns410WithCurrentSeq() throws Exception {
+        HttpResponse<String> resp = client.send(HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + "/movies/changes?since=0")).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+        assertEquals(410, resp.statusCode());
+        assertTrue(resp.headers().firstValue("X-Change-Seq").isPresent());
+        assertTrue(resp.body().contains("Требуется полная синхронизация"));
+        assertEquals(400, send("GET", "/movies/changes?since=abc"));
+    }
+
+    @Test
+    void changes_eventStream_pushesEvents() throws Exception {
+        long since = server.getMoviesStore().changes().lastSeq();
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/movies/changes?since=" + since))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        HttpResponse<java.util.stream.Stream<String>> resp = client.send(req, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, resp.statusCode());
+        assertTrue(resp.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+
+        server.getMoviesStore().addMovies(new Movie(5, "Ёлки", 2010));
+        try (java.util.stream.Stream<String> lines = resp.body()) {
+            List<String> event = lines.filter(line -> !line.startsWith(":"))
+                    .dropWhile(String::isEmpty)
+                    .takeWhile(line -> !line.isEmpty())
+                    .toList();
+            assertEquals("id: " + (since + 1), event.get(0));
+            assertEquals("event: added", event.get(1));
+            assertTrue(event.get(2).startsWith("data: {\"seq\":" + (since + 1)));
+            assertTrue(event.get(2).contains("Ёлки"));
+        }
+    }
+
+    @Test
+    void getMovies_sortedWithCombinedFilters_returnsTopK() throws Exception {
+        server.getMoviesStore().addMovies(new Movie(1, "Брат", 1997));
+        server.getMoviesStore().addMovies(new Movie(2, "Брат 2", 2000));
+        server.getMoviesStore().addMovies(new Movie(3, "Брат 3", 2024));
+        server.getMoviesStore().addMovies(new Movie(4, "Сестра", 2001));
+        server.getMoviesStore().addMovies(new Movie(5, "Бумер", 2003));
+
+        assertEquals(List.of(3, 5, 4), idsOf("/movies?sort=year&order=desc&limit=3"));
+        assertEquals(List.of(1, 2, 3, 5, 4), idsOf("/movies?sort=title"));
+        assertEquals(List.of(2, 1), idsOf("/movies?title=брат&yearFrom=1990&yearTo=2010&sort=year&order=desc"));
+        assertEquals(List.of(2), idsOf("/movies?title=брат&year=2000"));
+        assertEquals(List.of(4, 5), idsOf("/movies?order=asc&offset=3"));
+        assertEquals(400, send("GET", "/movies?sort=rating"));
+        assertEquals(400, send("GET", "/movies?sort=year&order=up"));
+        assertEquals(400, send("GET", "/movies?sort=year&limit=20000"));
+        assertEquals(400, send("GET", "/movies?order=up"));
+        assertEquals(400, send("GET", "/movies?title=брат&sort=id&after=1"));
+    }
+
+    private List<Integer> idsOf(String path) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).GET().build();
+        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, resp.statusCode(), path);
+        List<Movie> movies = gson.fromJson(resp.body(), new TypeToken<List<Movie>>(){}.getType());
+        return movies.stream().map(Movie::getId).toList();
+    }
+
+    private static class Changes {
+        long next;
+        List<Change> changes;
+    }
+
+    private static class Change {
+        long seq;
+        String type;
+        Movie movie;
+    }
+}
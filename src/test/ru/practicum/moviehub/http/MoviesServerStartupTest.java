@@ -0,0 +1,110 @@
+package ru.practicum.moviehub.http;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.api.ResyncRequiredException;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
+import ru.practicum.moviehub.store.ChangeFeed;
+import ru.practicum.moviehub.store.StorageMode;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoviesServerStartupTest {
+    private Path catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        List<Movie> movies = new ArrayList<>();
+        for (int id = 1; id <= 3_000; id++) movies.add(new Movie(id, "Фильм номер " + id, 1950 + id % 70));
+        catalog = Files.createTempFile("catalog", ".json");
+        Files.write(catalog, MovieJson.toJson(movies));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(catalog);
+    }
+
+    @Test
+    void catalogAndWarmup_leaveOnlyCatalogVisible() throws Exception {
+        for (StorageMode storage : StorageMode.values()) {
+            MoviesServer server = new MoviesServer(new ServerConfig().setPort(0).setStorage(storage)
+                    .setCatalog(catalog).setWarmupRounds(20));
+            server.start();
+            try {
+                // прогрев шёл на своём хранилище: каталог, журнал изменений и метрики его не видят
+                assertEquals(3_000, server.getMoviesStore().size(), storage.name());
+                ChangeFeed feed = server.getMoviesStore().changes();
+                List<ChangeFeed.Event> events = feed.read(feed.lastSeq() - 3_000, 3_000);
+                assertEquals(3_000, events.stream().filter(e -> e.kind() == ChangeFeed.Kind.ADDED).count());
+                assertThrows(ResyncRequiredException.class, () -> feed.read(feed.lastSeq() - 3_001, 1));
+                HttpClient client = HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.getPort();
+                HttpResponse<String> movie = client.send(HttpRequest.newBuilder(URI.create(base + "/movies/2999")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, movie.statusCode());
+                HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                assertFalse(metrics.body().contains("POST /movies"), metrics.body());
+                assertTrue(metrics.body().contains("GET /movies/{id}"));
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    void boundedPool_busyWorker_overloadAnsweredWith503() throws Exception {
+        MoviesServer server = new MoviesServer(new ServerConfig().setPort(0)
+                .setMode(ServerConfig.ExecutionMode.BOUNDED_POOL).setPoolSize(1).setQueueLimit(0));
+        server.start();
+        byte[] body = "{\"id\":1,\"title\":\"Фильм\",\"year\":2000}".getBytes(StandardCharsets.UTF_8);
+        try (Socket slow = new Socket("localhost", server.getPort())) {
+            // единственный поток пула ждёт тело медленного клиента
+            OutputStream out = slow.getOutputStream();
+            out.write(("POST /movies HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                    + "Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body, 0, 10);
+            out.flush();
+
+            HttpClient client = HttpClient.newHttpClient();
+            HttpRequest get = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/movies")).build();
+            HttpResponse<String> rejected = null;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < deadline) {
+                HttpResponse<String> response = client.send(get, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 503) {
+                    rejected = response;
+                    break;
+                }
+                Thread.sleep(10);
+            }
+            assertNotNull(rejected, "очередь 0 и занятый поток — ответ 503");
+            assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+            assertTrue(rejected.body().contains("503"), rejected.body());
+
+            // поток пула дочитывает тело и отвечает как обычно
+            out.write(body, 10, body.length - 10);
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(slow.getInputStream(), StandardCharsets.US_ASCII));
+            assertTrue(in.readLine().contains(" 201 "));
+        } finally {
+            server.stop();
+        }
+    }
+}
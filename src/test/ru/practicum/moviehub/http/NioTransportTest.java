@@ -0,0 +1,120 @@
+package ru.practicum.moviehub.http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioTransportTest {
+    private static final int BODY_BYTES = 32 * 1024 * 1024;
+    private static final int PIECE = 8 * 1024;
+
+    private ExecutorService executor;
+    private NioTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        transport = new NioTransport(0, 0, executor, Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowReader_streamedResponseWaitsForSocket() throws Exception {
+        AtomicLong written = new AtomicLong();
+        transport.createContext("/big", ex -> {
+            // как потоковая выдача каталога: много мелких записей в chunked-ответ
+            ex.sendResponseHeaders(200, 0);
+            byte[] piece = new byte[PIECE];
+            try (OutputStream os = ex.getResponseBody()) {
+                for (int i = 0; i < BODY_BYTES / PIECE; i++) {
+                    os.write(piece);
+                    written.addAndGet(PIECE);
+                }
+            }
+        }, List.of());
+        transport.start();
+
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(16 * 1024);
+            socket.connect(new InetSocketAddress("localhost", transport.getPort()));
+            socket.setSoTimeout(10_000);
+            socket.getOutputStream().write("GET /big HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            Thread.sleep(500);
+
+            // клиент не читает: обработчик ждёт сокета, а не копит весь ответ в очереди соединения
+            assertTrue(written.get() < BODY_BYTES / 4, "записано " + written.get());
+            assertTrue(transport.buffers().allocated()
+                    <= NioConnection.MAX_QUEUED_BYTES / NioTransport.WRITE_BUFFER_SIZE + 2);
+
+            assertEquals(BODY_BYTES, readChunkedBody(new BufferedInputStream(socket.getInputStream())));
+        }
+        assertEquals(BODY_BYTES, written.get());
+    }
+
+    @Test
+    void bufferPool_overCap_fallsBackToHeapBuffers() {
+        BufferPool pool = new BufferPool(1024, 2);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        ByteBuffer third = pool.acquire();
+        assertTrue(first.isDirect() && second.isDirect());
+        assertFalse(third.isDirect());
+        assertEquals(2, pool.allocated());
+
+        pool.release(third);
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertFalse(pool.acquire().isDirect());
+        assertEquals(2, pool.allocated());
+    }
+
+    // Пропускает заголовки ответа и возвращает длину тела в chunked-кодировке
+    private static long readChunkedBody(InputStream in) throws IOException {
+        String status = readLine(in);
+        assertTrue(status.startsWith("HTTP/1.1 200"), status);
+        while (!readLine(in).isEmpty()) {
+            // заголовки не нужны
+        }
+        long total = 0;
+        while (true) {
+            int size = Integer.parseInt(readLine(in), 16);
+            if (size == 0) return total;
+            assertEquals(size, in.readNBytes(size).length);
+            total += size;
+            assertEquals("", readLine(in));
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new IOException("Ответ оборвался");
+            if (b != '\r') line.write(b);
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+}
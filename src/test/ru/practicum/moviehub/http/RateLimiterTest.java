@@ -0,0 +1,117 @@
+package ru.practicum.moviehub.http;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.moviehub.model.Movie;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void tryAcquire_burstThenRefill_perClient() {
+        AtomicLong now = new AtomicLong(1_000 * SECOND);
+        RateLimiter limiter = new RateLimiter(10, 5, now::get);
+
+        for (int i = 0; i < 5; i++) assertEquals(0, limiter.tryAcquire("a", 1));
+        long wait = limiter.tryAcquire("a", 1);
+        assertEquals(SECOND / 10, wait);
+        // другой клиент не страдает от чужого всплеска
+        assertEquals(0, limiter.tryAcquire("b", 1));
+
+        now.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("a", 1));
+        assertTrue(limiter.tryAcquire("a", 1) > 0);
+
+        // дорогой запрос берёт несколько токенов, но не больше burst
+        now.addAndGet(SECOND);
+        assertEquals(0, limiter.tryAcquire("a", 3));
+        assertTrue(limiter.tryAcquire("a", 3) > 0);
+        now.addAndGet(SECOND);
+        assertEquals(0, limiter.tryAcquire("a", 1_000));
+    }
+
+    @Test
+    void tryAcquire_idleClients_areEvicted() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(100, 10, now::get);
+        for (int client = 0; client < 50; client++) limiter.tryAcquire(client, 1);
+        assertEquals(50, limiter.trackedClients());
+
+        now.addAndGet(60 * SECOND);
+        limiter.tryAcquire("active", 1);
+        assertEquals(1, limiter.trackedClients());
+    }
+
+    @Test
+    void tryAcquire_manyIdleClients_sweptInBoundedSteps() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(100, 10, now::get);
+        int clients = RateLimiter.SWEEP_BATCH * 4;
+        for (int client = 0; client < clients; client++) limiter.tryAcquire(client, 1);
+
+        now.addAndGet(60 * SECOND);
+        limiter.tryAcquire("active", 1);
+        // один запрос проверяет не больше SWEEP_BATCH вёдер
+        assertTrue(limiter.trackedClients() >= clients + 1 - RateLimiter.SWEEP_BATCH);
+        for (int i = 0; i < 4; i++) limiter.tryAcquire("active", 1);
+        assertEquals(1, limiter.trackedClients());
+    }
+
+    @Test
+    void fullCatalogVariants_costAsFullList() throws Exception {
+        for (String path : List.of("/movies?x=1", "/movies?limit=2147483647", "/movies?yearFrom=0",
+                "/movies?title=ф", "/movies?order=asc&limit=10000")) {
+            // всплеск — три дешёвых запроса и один полный список
+            MoviesServer server = new MoviesServer(new ServerConfig().setPort(0).setRateLimit(1).setRateBurst(23));
+            server.start();
+            try {
+                for (int id = 1; id <= 300; id++) {
+                    server.getMoviesStore().addMovies(new Movie(id, "Фильм " + id, 1990 + id % 20));
+                }
+                HttpClient client = HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.getPort();
+                for (String cheap : List.of("/movies?year=2000", "/movies?limit=10", "/movies?title=фильм")) {
+                    assertEquals(200, status(client, base + cheap), cheap);
+                }
+                assertEquals(200, status(client, base + path), path);
+                assertEquals(429, status(client, base + path), path);
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static int status(HttpClient client, String url) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
+        return client.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    void fullList_overLimit_returns429WithRetryAfter() throws Exception {
+        MoviesServer server = new MoviesServer(new ServerConfig().setPort(0).setRateLimit(1).setRateBurst(20));
+        server.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://localhost:" + server.getPort() + "/movies");
+            HttpRequest req = HttpRequest.newBuilder().uri(uri).GET().build();
+
+            assertEquals(200, client.send(req, HttpResponse.BodyHandlers.ofString()).statusCode());
+            HttpResponse<String> rejected = client.send(req, HttpResponse.BodyHandlers.ofString());
+            assertEquals(429, rejected.statusCode());
+            long retryAfter = Long.parseLong(rejected.headers().firstValue("Retry-After").orElseThrow());
+            assertTrue(retryAfter >= 1 && retryAfter <= 20, "Retry-After: " + retryAfter);
+            assertTrue(rejected.body().contains("\"status\":429"));
+        } finally {
+            server.stop();
+        }
+    }
+}
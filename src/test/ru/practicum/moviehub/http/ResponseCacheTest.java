@@ -0,0 +1,44 @@
+package ru.practicum.moviehub.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTest {
+
+    @Test
+    void put_overLimit_evictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(4000);
+        cache.put("a", 1, new byte[1000]);
+        cache.put("b", 1, new byte[1000]);
+        cache.put("c", 1, new byte[1000]);
+        cache.put("d", 1, new byte[1000]);
+        // a использована последней, вытесняется b
+        assertNotNull(cache.get("a", 1));
+        cache.put("e", 1, new byte[1000]);
+
+        assertNotNull(cache.get("a", 1));
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("e", 1));
+        assertEquals(4000, cache.usedBytes());
+    }
+
+    @Test
+    void compressedCopies_countedWhileEntryIsCached() {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        byte[] body = "[{\"id\":1,\"title\":\"Фильм\",\"year\":2000}]".repeat(200).getBytes(StandardCharsets.UTF_8);
+        ResponseCache.Entry entry = cache.put("list", 1, body);
+        byte[] gzip = entry.body(ContentEncoding.GZIP);
+        byte[] deflate = entry.body(ContentEncoding.DEFLATE);
+        assertSame(gzip, entry.body(ContentEncoding.GZIP));
+        assertEquals(body.length + gzip.length + deflate.length, cache.usedBytes());
+
+        // устаревшая запись удаляется вместе со сжатыми копиями
+        assertNull(cache.get("list", 2));
+        assertEquals(0, cache.usedBytes());
+        entry.body(ContentEncoding.GZIP);
+        assertEquals(0, cache.usedBytes());
+    }
+}
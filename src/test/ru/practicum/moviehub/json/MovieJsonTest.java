@@ -0,0 +1,134 @@
+package ru.practicum.moviehub.json;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import ru.practicum.moviehub.api.BatchResponse;
+import ru.practicum.moviehub.api.ErrorResponse;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MovieJsonTest {
+    private static final String[] TITLES = {
+            "Брат", "Amélie", "<script>&'=\"", "tab\tnew\nline\\", "\u0001\u001f\u007f", "emoji \uD83C\uDFAC",
+            "lone \uD800 surrogate", "sep\u2028\u2029", "漢字", "", null
+    };
+    private final Gson gson = new Gson();
+
+    @Test
+    void serialize_matchesGsonByteForByte() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < TITLES.length; i++) {
+            Movie movie = new Movie(i == 0 ? Integer.MIN_VALUE : -i * 1000, TITLES[i], i == 1 ? Integer.MAX_VALUE : 1888 + i);
+            movies.add(movie);
+            assertArrayEquals(gsonBytes(movie), MovieJson.toJson(movie), String.valueOf(TITLES[i]));
+        }
+        assertArrayEquals(gsonBytes(movies), MovieJson.toJson(movies));
+        assertArrayEquals(gsonBytes(List.of()), MovieJson.toJson(List.<Movie>of()));
+
+        // потоковая запись с промежуточными сбросами даёт тот же массив
+        List<Movie> many = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) many.add(new Movie(i, "Фильм номер " + i, 1900 + i % 100));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MovieJson.writeArray(many, out);
+        assertArrayEquals(gsonBytes(many), out.toByteArray());
+
+        ErrorResponse plain = new ErrorResponse(404, "Такого фильма нет в списке");
+        ErrorResponse detailed = new ErrorResponse(422, "Ошибка валидации", Arrays.asList("a<b", null, "год"));
+        ErrorResponse empty = new ErrorResponse(500, null);
+        for (ErrorResponse error : List.of(plain, detailed, empty)) {
+            assertArrayEquals(gsonBytes(error), MovieJson.toJson(error));
+        }
+
+        List<BatchResponse.ItemError> itemErrors = List.of(
+                new BatchResponse.ItemError(0, -7, 409, "Фильм уже есть в списке", null),
+                new BatchResponse.ItemError(3, 0, 422, "Ошибка валидации", Arrays.asList("tab\tnew", null)),
+                new BatchResponse.ItemError(5, 2, 500, null, null));
+        List<BatchResponse> batches = List.of(new BatchResponse(2, itemErrors), new BatchResponse(0, List.of()),
+                new BatchResponse(1, List.of(), Arrays.asList(Integer.MIN_VALUE, null, 42)));
+        for (BatchResponse batch : batches) {
+            assertArrayEquals(gsonBytes(batch), MovieJson.toJson(batch));
+        }
+    }
+
+    @Test
+    void parse_acceptsWhatGsonAccepts() {
+        String[] bodies = {
+                "{\"id\":1,\"title\":\"Брат\",\"year\":1997}",
+                " {\n\"year\" : 2000 , \"title\":\"a\\\"b\\\\c\\u0416\\n\", \"id\": -5 } ",
+                "{\"title\":\"x\",\"year\":1.0e3,\"extra\":{\"a\":[1,{\"b\":null}],\"c\":true}}",
+                "{\"id\":\"7\",\"title\":null,\"year\":null}",
+                "{\"title\":123}",
+                "{}"
+        };
+        for (String body : bodies) {
+            Movie expected = gson.fromJson(body, Movie.class);
+            Movie actual = MovieJson.parseMovie(body.getBytes(StandardCharsets.UTF_8));
+            assertEquals(expected.getId(), actual.getId(), body);
+            assertEquals(expected.getTitle(), actual.getTitle(), body);
+            assertEquals(expected.getYear(), actual.getYear(), body);
+        }
+        assertNull(MovieJson.parseMovie(new byte[0]));
+        assertNull(MovieJson.parseMovie(" null ".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void parse_rejectsMalformedJson() {
+        String[] bodies = {
+                "{", "{\"title\":\"x\"", "{\"title\":\"x\"}}", "[1]", "{\"year\":1.5}", "{\"id\":2147483648}",
+                "{\"title\":\"\\q\"}", "{title:\"x\"}", "{\"year\":}", "{\"id\":1,}", "nul"
+        };
+        for (String body : bodies) {
+            assertThrows(InvalidJsonException.class,
+                    () -> MovieJson.parseMovie(body.getBytes(StandardCharsets.UTF_8)), body);
+        }
+    }
+
+    @Test
+    void splitArray_anyPartCount_parsesSameMovies() {
+        String[] titles = {"Брат", "<script>&'=\"", "tab\tnew\nline\\", "emoji \uD83C\uDFAC", null};
+        List<Movie> movies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String title = titles[i % titles.length];
+            movies.add(new Movie(i, title == null ? null : title + " ],{\"" + i, 1900 + i));
+        }
+        // запятые и скобки в строках и во вложенных неизвестных полях не режут массив
+        String json = " [" + gson.toJson(movies).substring(1).replace("{\"id\":7,", "{\"extra\":[1,{\"a\":\"]\"}],\"id\":7,")
+                .replace("{\"id\":9,", "null,{\"id\":9,") + "\n";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        for (int parts : new int[]{1, 3, 16, 1000}) {
+            int[] cuts = MovieJson.splitArray(bytes, parts);
+            assertTrue(cuts.length - 1 <= parts, "частей " + (cuts.length - 1));
+            List<Movie> parsed = new ArrayList<>();
+            for (int i = 0; i + 1 < cuts.length; i++) parsed.addAll(MovieJson.parseArrayPart(bytes, cuts[i], cuts[i + 1]));
+            assertEquals(gson.toJson(movies), gson.toJson(parsed), "частей " + parts);
+        }
+        assertEquals(0, MovieJson.parseArrayPart("[ ]".getBytes(StandardCharsets.UTF_8), 0, 2).size());
+    }
+
+    @Test
+    void splitArray_rejectsMalformedArrays() {
+        String[] bodies = {"{\"id\":1}", "[{\"id\":1}", "[{\"id\":1}] x", "[\"]", "[{\"id\":1}}]"};
+        for (String body : bodies) {
+            assertThrows(InvalidJsonException.class,
+                    () -> MovieJson.splitArray(body.getBytes(StandardCharsets.UTF_8), 4), body);
+        }
+        for (String body : new String[]{"[{\"id\":1},]", "[,{\"id\":1}]", "[{\"id\":1} {\"id\":2}]", "[1]"}) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            int[] cuts = MovieJson.splitArray(bytes, 1);
+            assertThrows(InvalidJsonException.class, () -> MovieJson.parseArrayPart(bytes, cuts[0], cuts[1]), body);
+        }
+    }
+
+    private byte[] gsonBytes(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
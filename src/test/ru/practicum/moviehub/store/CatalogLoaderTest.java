@@ -0,0 +1,68 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.json.MovieJson;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogLoaderTest {
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("movies-catalog");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void load_jsonAndSnapshot_fillEveryStoreKind() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        for (int id = 0; id < 5_000; id++) {
+            movies.add(new Movie(id, id % 7 == 0 ? "Брат, \"ёлки\" [" + id + "]" : "Фильм номер " + id, 1900 + id % 120));
+        }
+        Path json = dir.resolve("catalog.json");
+        Files.write(json, MovieJson.toJson(movies));
+        SnapshotFile.write(dir, 1, movies);
+        Path binary = dir.resolve(SnapshotFile.FILE_NAME);
+
+        for (Path file : List.of(json, binary)) {
+            for (MoviesStore store : List.of(new MoviesStore(), new CompactMoviesStore(), new SnapshotMoviesStore())) {
+                // у каталога есть фильмы, которые уже в хранилище: они пропускаются
+                store.addMovies(new Movie(3, "Старое название", 2000));
+                CatalogLoader.Result result = CatalogLoader.load(file, store, 4);
+
+                assertEquals(4_999, result.loaded(), file + " " + store.getClass().getSimpleName());
+                assertEquals(1, result.duplicates());
+                assertEquals(5_000, store.size());
+                assertEquals("Старое название", store.findMovie(3).getTitle());
+                assertEquals("Брат, \"ёлки\" [4998]", store.findMovie(4_998).getTitle());
+                assertEquals(42, store.getMoviesByYear(1950).size());
+            }
+        }
+    }
+
+    @Test
+    void load_malformedJson_reportsFile() throws IOException {
+        Path file = dir.resolve("broken.json");
+        Files.writeString(file, "[{\"id\":1,\"title\":\"Брат\",\"year\":1997},{\"id\":2,", StandardCharsets.UTF_8);
+
+        IOException e = assertThrows(IOException.class, () -> CatalogLoader.load(file, new MoviesStore(), 2));
+        assertTrue(e.getMessage().contains("broken.json"), e.getMessage());
+    }
+}
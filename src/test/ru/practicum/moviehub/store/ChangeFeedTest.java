@@ -0,0 +1,86 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.moviehub.api.ResyncRequiredException;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeFeedTest {
+
+    @Test
+    void read_onlyPublishedPrefix_andResyncWhenOverwritten() {
+        ChangeFeed feed = new ChangeFeed(4, 100);
+        long first = feed.append(ChangeFeed.Kind.ADDED, new Movie(1, "a", 2000));
+        long second = feed.append(ChangeFeed.Kind.ADDED, new Movie(2, "b", 2001));
+        // второе изменение применилось раньше первого: читатель не видит ни одного, пока не готово первое
+        feed.published(second);
+        assertEquals(100, feed.lastSeq());
+        assertTrue(feed.read(100, 10).isEmpty());
+        feed.published(first);
+        assertEquals(102, feed.lastSeq());
+        assertEquals(List.of(1, 2), feed.read(100, 10).stream().map(ChangeFeed.Event::id).toList());
+        assertEquals(1, feed.read(100, 1).size());
+
+        for (int id = 3; id <= 6; id++) feed.published(feed.append(ChangeFeed.Kind.DELETED, new Movie(id, null, 0)));
+        // в буфере на 4 события остались 103..106
+        assertThrows(ResyncRequiredException.class, () -> feed.read(101, 10));
+        assertEquals(4, feed.read(102, 10).size());
+        assertThrows(ResyncRequiredException.class, () -> feed.read(107, 10));
+        assertThrows(ResyncRequiredException.class, () -> feed.read(50, 10));
+    }
+
+    @Test
+    void await_wakesOnPublishAndTimesOut() throws Exception {
+        ChangeFeed feed = new ChangeFeed(16, 0);
+        assertTrue(feed.await(0, 10, TimeUnit.MILLISECONDS.toNanos(20)).isEmpty());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<ChangeFeed.Event>> waiting = executor.submit(() -> feed.await(0, 10, TimeUnit.SECONDS.toNanos(5)));
+            Thread.sleep(50);
+            feed.published(feed.append(ChangeFeed.Kind.ADDED, new Movie(7, "x", 1999)));
+            List<ChangeFeed.Event> events = waiting.get(5, TimeUnit.SECONDS);
+            assertEquals(1, events.size());
+            assertEquals(new ChangeFeed.Event(1, ChangeFeed.Kind.ADDED, 7, "x", 1999), events.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentWriters_publishInSeqOrderWithoutGaps() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        // ёмкость меньше числа писателей: отставшие номера проходят через overflow
+        ChangeFeed feed = new ChangeFeed(4, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new java.util.ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    long seen = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        long seq = feed.append(ChangeFeed.Kind.ADDED, new Movie(thread, "x", 2000));
+                        if (i % 7 == 0) Thread.yield();
+                        feed.published(seq);
+                        long visible = feed.lastSeq();
+                        // visible не откатывается назад
+                        assertTrue(visible >= seen);
+                        seen = visible;
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) writer.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        long total = (long) threads * perThread;
+        assertEquals(total, feed.lastSeq());
+        assertEquals(List.of(total - 1, total), feed.read(total - 2, 10).stream().map(ChangeFeed.Event::seq).toList());
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.api.MovieAlreadyExistsException;
+import ru.practicum.moviehub.api.MovieNotFoundException;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactMoviesStoreTest {
+
+    @Test
+    void crud_heapAndOffHeap_behaveLikeMoviesStore() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            CompactMoviesStore store = new CompactMoviesStore(offHeap, 16);
+            store.addMovies(new Movie(1, "Брат", 1997));
+            store.addMovies(new Movie(-7, "Брат 2", 2000));
+            store.addMovies(new Movie(3, "Ёлки", 2010));
+
+            assertThrows(MovieAlreadyExistsException.class, () -> store.addMovies(new Movie(1, "Другой", 1990)));
+            assertEquals("Брат 2", store.findMovie(-7).getTitle());
+            assertEquals(2010, store.findMovie(3).getYear());
+            assertEquals(3, store.size());
+
+            store.deleteMovieById(-7);
+            assertThrows(MovieNotFoundException.class, () -> store.findMovie(-7));
+            assertThrows(MovieNotFoundException.class, () -> store.deleteMovieById(-7));
+            assertEquals(2, store.getAllMovies().size());
+            assertEquals(2, store.moviesView().size());
+        }
+    }
+
+    @Test
+    void indexes_afterChurn_matchHeapStore() {
+        MoviesStore heap = new MoviesStore();
+        CompactMoviesStore compact = new CompactMoviesStore(false, 16);
+        Random random = new Random(42);
+        String[] words = {"брат", "ёлки", "небо", "сон", "дом", "зима"};
+
+        // слоты, таблица id и буфер названий многократно растут, уплотняются и переиспользуются
+        for (int i = 0; i < 50_000; i++) {
+            int id = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                heap.remove(id);
+                compact.remove(id);
+            } else {
+                Movie movie = new Movie(id, words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                        + " " + i, 1950 + random.nextInt(70));
+                assertEquals(heap.insert(movie), compact.insert(movie));
+            }
+        }
+
+        assertEquals(heap.size(), compact.size());
+        assertEquals(ids(heap.getAllMovies()), ids(compact.getAllMovies()));
+        assertEquals(ids(heap.moviesView()), ids(compact.moviesView()));
+        for (int year = 1950; year < 2020; year += 7) {
+            assertEquals(ids(heap.getMoviesByYear(year)), ids(compact.getMoviesByYear(year)));
+        }
+        assertEquals(ids(heap.getMoviesByYearRange(1960, 1980)), ids(compact.getMoviesByYearRange(1960, 1980)));
+        for (String query : List.of("брат", "елки не", "сон зи", "дом дом", "1")) {
+            assertEquals(ids(heap.searchByTitle(query)), ids(compact.searchByTitle(query)), query);
+        }
+        for (Movie movie : heap.getAllMovies()) {
+            assertEquals(movie.getTitle(), compact.findMovie(movie.getId()).getTitle());
+        }
+    }
+
+    @Test
+    void concurrentAddsAndDeletes_keepStoreConsistent() throws Exception {
+        CompactMoviesStore store = new CompactMoviesStore();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        int id = thread * 5_000 + i;
+                        store.addMovies(new Movie(id, "Фильм " + id, 2000 + thread));
+                        if (i % 2 == 0) store.deleteMovieById(id);
+                        if (i % 100 == 0) store.getMoviesByYear(2000 + thread);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(20_000, store.size());
+        assertEquals(20_000, store.getMoviesByYearRange(2000, 2007).size());
+        assertEquals("Фильм 39999", store.findMovie(39_999).getTitle());
+    }
+
+    private static Set<Integer> ids(Collection<Movie> movies) {
+        Set<Integer> ids = new TreeSet<>();
+        for (Movie movie : movies) ids.add(movie.getId());
+        return ids;
+    }
+}
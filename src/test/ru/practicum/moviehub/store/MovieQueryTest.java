@@ -0,0 +1,97 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MovieQueryTest {
+    private static final String[] WORDS = {"Брат", "Ёлки", "Москва", "Сталкер", "Мастер", "Экипаж", "Кин-дза-дза"};
+
+    @Test
+    void query_matchesFullSort_forEveryStoreAndCriterion() {
+        Random random = new Random(7);
+        List<Movie> catalog = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            String title = random.nextInt(50) == 0 ? null
+                    : WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+            catalog.add(new Movie(id, title, 1950 + random.nextInt(70)));
+        }
+        for (MoviesStore store : List.of(new MoviesStore(), new CompactMoviesStore(false, 16), new SnapshotMoviesStore())) {
+            store.addAll(catalog);
+            for (MovieQuery.Sort sort : MovieQuery.Sort.values()) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    check(store, catalog, new MovieQuery().setSort(sort, descending).setWindow(0, 25));
+                    check(store, catalog, new MovieQuery().setSort(sort, descending).setWindow(40, 100));
+                    check(store, catalog, new MovieQuery().setSort(sort, descending).setYears(1980, 1990).setWindow(5, 50));
+                    check(store, catalog, new MovieQuery().setSort(sort, descending).setTitle("брат ма")
+                            .setYears(1960, 2000).setWindow(0, 1000));
+                    // совпадений больше окна: в выборку попадают только лучшие offset + limit
+                    check(store, catalog, new MovieQuery().setSort(sort, descending).setTitle("м").setWindow(3, 10));
+                }
+            }
+
+            MovieQuery unsorted = new MovieQuery().setYears(1970, 1971).setTitle("ста");
+            Set<Integer> expected = reference(catalog, unsorted).stream().map(Movie::getId).collect(Collectors.toSet());
+            Set<Integer> actual = store.query(unsorted).stream().map(Movie::getId).collect(Collectors.toSet());
+            assertEquals(expected, actual);
+            assertEquals(10, store.query(new MovieQuery().setWindow(5, 10)).size());
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.query(new MovieQuery().setSort(MovieQuery.Sort.ID, false).setWindow(MovieQuery.MAX_WINDOW, 1)));
+        }
+    }
+
+    @Test
+    void moviesAfter_changesBetweenPages_neitherRepeatsNorSkips() {
+        for (MoviesStore store : List.of(new MoviesStore(), new CompactMoviesStore(false, 16), new SnapshotMoviesStore())) {
+            for (int id = 1000; id >= 1; id--) {
+                store.addMovies(new Movie(id * 2, "Фильм " + id, 2000));
+            }
+            List<Integer> seen = new ArrayList<>();
+            int after = Integer.MIN_VALUE;
+            int page = 0;
+            while (true) {
+                List<Movie> movies = store.getMoviesAfter(after, 70);
+                if (movies.isEmpty()) break;
+                movies.forEach(movie -> seen.add(movie.getId()));
+                after = movies.get(movies.size() - 1).getId();
+                // перед уже выданными: со сдвигом offset это повторило бы фильм на следующей странице
+                store.addMovies(new Movie(-page - 1, "Новый " + page, 2000));
+                store.deleteMovieById(page * 2 + 2);
+                page++;
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (int id = 1; id <= 1000; id++) expected.add(id * 2);
+            assertEquals(expected, seen);
+            assertTrue(store.getMoviesAfter(Integer.MAX_VALUE, 10).isEmpty());
+        }
+    }
+
+    private static void check(MoviesStore store, List<Movie> catalog, MovieQuery query) {
+        List<Integer> expected = reference(catalog, query).stream()
+                .skip(query.getOffset()).limit(query.getLimit()).map(Movie::getId).toList();
+        assertEquals(expected, store.query(query).stream().map(Movie::getId).toList(),
+                query.getSort() + (query.isDescending() ? " desc" : " asc"));
+    }
+
+    private static List<Movie> reference(List<Movie> catalog, MovieQuery query) {
+        List<Movie> filtered = new ArrayList<>();
+        for (Movie movie : catalog) {
+            if (!query.matchesYear(movie)) continue;
+            if (query.getTitle() != null && !matchesTitle(movie.getTitle(), query.getTitle())) continue;
+            filtered.add(movie);
+        }
+        if (query.comparator() != null) filtered.sort(query.comparator());
+        return filtered;
+    }
+
+    private static boolean matchesTitle(String title, String search) {
+        List<String> tokens = new ArrayList<>(TitleIndex.tokenize(search));
+        String prefix = tokens.remove(tokens.size() - 1);
+        Set<String> titleTokens = TitleIndex.tokenize(title);
+        return titleTokens.containsAll(tokens) && titleTokens.stream().anyMatch(t -> t.startsWith(prefix));
+    }
+}
@@ -0,0 +1,222 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.api.MovieAlreadyExistsException;
+import ru.practicum.moviehub.api.MovieNotFoundException;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoviesStoreConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int IDS = 10_000;
+
+    private MoviesStore store;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        store = new MoviesStore();
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrentAdds_sameIds_exactlyOneWinnerPerId() throws Exception {
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int id = 0; id < IDS; id++) {
+                    try {
+                        store.addMovies(new Movie(id, "Фильм " + thread, 2000));
+                        added.incrementAndGet();
+                    } catch (MovieAlreadyExistsException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+
+        assertEquals(IDS, added.get());
+        assertEquals(IDS * (THREADS - 1), conflicts.get());
+        assertEquals(IDS, store.getAllMovies().size());
+        Set<Integer> ids = new HashSet<>();
+        for (Movie movie : store.getAllMovies()) {
+            assertTrue(ids.add(movie.getId()), "дубликат id " + movie.getId());
+        }
+    }
+
+    @Test
+    void concurrentDeletes_sameIds_exactlyOneWinnerPerId() throws Exception {
+        for (int id = 0; id < IDS; id++) {
+            store.addMovies(new Movie(id, "Фильм", 2000));
+        }
+        AtomicInteger deleted = new AtomicInteger();
+        AtomicInteger missing = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int id = 0; id < IDS; id++) {
+                    try {
+                        store.deleteMovieById(id);
+                        deleted.incrementAndGet();
+                    } catch (MovieNotFoundException e) {
+                        missing.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+
+        assertEquals(IDS, deleted.get());
+        assertEquals(IDS * (THREADS - 1), missing.get());
+        assertTrue(store.getAllMovies().isEmpty());
+    }
+
+    @Test
+    void mixedTraffic_disjointIds_noLostWrites() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int base = t * IDS;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < IDS; i++) {
+                    int id = base + i;
+                    store.addMovies(new Movie(id, "Фильм", 1888 + i % 100));
+                    assertEquals(id, store.findMovie(id).getId());
+                    if (i % 1000 == 0) store.getMoviesByYear(1888 + i % 100);
+                    if (i % 2 == 0) store.deleteMovieById(id);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+
+        assertEquals(THREADS * IDS / 2, store.size());
+        assertEquals(store.size(), store.getMoviesByYearRange(Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 1; i < IDS; i += 2) {
+                assertNotNull(store.findMovie(t * IDS + i));
+            }
+        }
+    }
+
+    @Test
+    void concurrentGeneratedIds_sameTitles_oneWinnerPerTitleAndUniqueIds() throws Exception {
+        store.enableGeneratedIds(null);
+        store.addMovies(new Movie(5, "Занятый id", 2000));
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < IDS; i++) {
+                    try {
+                        assertTrue(ids.add(store.addWithGeneratedId("Фильм " + i, 2000).getId()));
+                    } catch (MovieAlreadyExistsException e) {
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+
+        assertEquals(IDS, ids.size());
+        assertEquals(IDS * (THREADS - 1), conflicts.get());
+        assertFalse(ids.contains(5));
+        assertEquals(IDS + 1, store.size());
+    }
+
+    @Test
+    void titleIndexChurn_sharedWords_dropsEmptyWordsAndLosesNoMovies() throws Exception {
+        TitleIndex index = new TitleIndex();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // у всех потоков общие слова: добавление и удаление с опустошением корзины идут наперегонки
+        for (int t = 0; t < THREADS; t++) {
+            int base = t * IDS;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < IDS; i++) {
+                    Movie movie = new Movie(base + i, "Слово" + i % 7 + " серия" + i, 2000);
+                    index.add(movie);
+                    if (i % 2 == 0) index.remove(movie);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+
+        assertEquals(THREADS * IDS / 2, index.search("серия").size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 1; i < IDS; i += 2) {
+                index.remove(new Movie(t * IDS + i, "Слово" + i % 7 + " серия" + i, 2000));
+            }
+        }
+        assertEquals(0, index.tokenCount());
+        assertTrue(index.search("слово").isEmpty());
+    }
+
+    @Test
+    void yearIndexChurn_sharedYears_dropsEmptyYearsAndLosesNoMovies() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // у всех потоков общие годы: добавление и удаление последнего фильма года идут наперегонки
+        for (int t = 0; t < THREADS; t++) {
+            int base = t * IDS;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < IDS; i++) {
+                    store.addMovies(new Movie(base + i, "Фильм " + (base + i), 1900 + i % 7));
+                    if (i % 2 == 0) store.deleteMovieById(base + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+
+        assertEquals(THREADS * IDS / 2, store.yearCount(1900, 1906));
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 1; i < IDS; i += 2) store.deleteMovieById(t * IDS + i);
+        }
+        assertFalse(store.years(Integer.MIN_VALUE, Integer.MAX_VALUE, false).iterator().hasNext());
+    }
+}
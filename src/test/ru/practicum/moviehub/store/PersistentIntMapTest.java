@@ -0,0 +1,66 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentIntMapTest {
+
+    @Test
+    void randomChurn_matchesTreeMap_andOldVersionsStayIntact() {
+        Random random = new Random(7);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        PersistentIntMap<String> map = PersistentIntMap.empty();
+
+        // узлы делятся и сливаются; каждая десятая версия проверяется после того, как карта ушла дальше
+        List<PersistentIntMap<String>> versions = new ArrayList<>();
+        List<TreeMap<Integer, String>> copies = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // часть изменений пакетами: узлы одного пакета правятся на месте
+            Object edit = i % 3 == 0 ? null : new Object();
+            for (int j = 0; j < 1 + i % 5; j++) {
+                int key = random.nextInt(3_000) - 1_500;
+                if (random.nextInt(3) == 0) {
+                    expected.remove(key);
+                    map = map.without(key, edit);
+                } else {
+                    expected.put(key, "v" + i);
+                    map = map.with(key, "v" + i, edit);
+                }
+            }
+            if (i % 1000 == 0) {
+                versions.add(map);
+                copies.add(new TreeMap<>(expected));
+            }
+        }
+
+        assertMatches(expected, map);
+        for (int i = 0; i < versions.size(); i++) {
+            assertMatches(copies.get(i), versions.get(i));
+        }
+    }
+
+    private static void assertMatches(TreeMap<Integer, String> expected, PersistentIntMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(map.values()));
+        for (int key = -1_600; key < 1_600; key += 37) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        assertEquals(new ArrayList<>(expected.subMap(-100, true, 250, true).keySet()), list(map.keys(-100, 250, false)));
+        assertEquals(new ArrayList<>(expected.subMap(-700, true, 5, true).descendingKeySet()), list(map.keys(-700, 5, true)));
+        if (!expected.isEmpty()) {
+            int middle = expected.size() / 2;
+            assertEquals(new ArrayList<>(expected.values()).get(middle), map.values().get(middle));
+            assertEquals(new ArrayList<>(expected.values()).get(middle), map.valuesFrom(middle).next());
+        }
+        assertFalse(map.valuesFrom(expected.size()).hasNext());
+    }
+
+    private static <T> List<T> list(Iterable<T> items) {
+        List<T> result = new ArrayList<>();
+        items.forEach(result::add);
+        return result;
+    }
+}
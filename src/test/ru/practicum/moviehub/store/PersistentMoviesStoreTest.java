@@ -0,0 +1,236 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.api.MovieAlreadyExistsException;
+import ru.practicum.moviehub.api.MovieNotFoundException;
+import ru.practicum.moviehub.model.Movie;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentMoviesStoreTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("movies-store");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void reopen_afterAddsAndDeletes_restoresCatalog() throws IOException {
+        for (Durability durability : Durability.values()) {
+            try (PersistentMoviesStore store = open(durability)) {
+                store.clear();
+                store.addMovies(new Movie(1, "Брат", 1997));
+                store.addMovies(new Movie(2, "Брат 2", 2000));
+                store.addMovies(new Movie(3, "Ёлки", 2010));
+                store.deleteMovieById(2);
+            }
+            try (PersistentMoviesStore store = open(durability)) {
+                assertEquals(2, store.size());
+                assertEquals("Брат", store.findMovie(1).getTitle());
+                assertEquals(2010, store.findMovie(3).getYear());
+                assertEquals(1, store.getMoviesByYear(1997).size());
+                assertEquals(1, store.searchByTitle("елки").size());
+            }
+        }
+    }
+
+    @Test
+    void reopen_afterSnapshot_loadsSnapshotAndLogTail() throws IOException {
+        try (PersistentMoviesStore store = open(Durability.BATCHED)) {
+            for (int id = 0; id < 1000; id++) {
+                store.addMovies(new Movie(id, "Фильм " + id, 1900 + id % 100));
+            }
+            store.snapshot();
+            store.deleteMovieById(0);
+            store.addMovies(new Movie(1000, "После снимка", 2020));
+        }
+        assertEquals(1, segmentCount());
+
+        try (PersistentMoviesStore store = open(Durability.BATCHED)) {
+            assertEquals(1000, store.size());
+            assertEquals("После снимка", store.findMovie(1000).getTitle());
+            assertThrows(MovieNotFoundException.class, () -> store.findMovie(0));
+        }
+    }
+
+    @Test
+    void reopen_logTruncatedMidRecord_dropsOnlyTornRecord() throws IOException {
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            store.addMovies(new Movie(1, "Первый", 2001));
+            store.addMovies(new Movie(2, "Второй", 2002));
+        }
+        Path segment = lastSegment();
+        long size = Files.size(segment);
+        for (long cut = size - 1; cut > size - 20; cut -= 6) {
+            Path copy = dir.resolve("copy");
+            Files.copy(segment, copy);
+            truncate(segment, cut);
+
+            try (PersistentMoviesStore store = open(Durability.SYNC)) {
+                assertEquals(1, store.size());
+                assertEquals("Первый", store.findMovie(1).getTitle());
+                assertTrue(Files.size(segment) < cut);
+            }
+            Files.move(copy, segment, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Test
+    void reopen_afterTornRecord_acceptsNewWrites() throws IOException {
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            store.addMovies(new Movie(1, "Первый", 2001));
+            store.addMovies(new Movie(2, "Второй", 2002));
+        }
+        Path segment = lastSegment();
+        truncate(segment, Files.size(segment) - 3);
+
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            store.addMovies(new Movie(3, "Третий", 2003));
+        }
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            assertEquals(2, store.size());
+            assertNotNull(store.findMovie(1));
+            assertNotNull(store.findMovie(3));
+        }
+    }
+
+    @Test
+    void reopen_corruptedRecordChecksum_dropsRecordAndTail() throws IOException {
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            store.addMovies(new Movie(1, "Первый", 2001));
+            store.addMovies(new Movie(2, "Второй", 2002));
+            store.addMovies(new Movie(3, "Третий", 2003));
+        }
+        Path segment = lastSegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(segment, bytes);
+
+        try (PersistentMoviesStore store = open(Durability.SYNC)) {
+            List<Movie> movies = store.getAllMovies();
+            assertTrue(movies.size() < 3);
+            assertNotNull(store.findMovie(1));
+        }
+    }
+
+    @Test
+    void generatedIds_afterRestart_neverReused() throws IOException {
+        int last;
+        try (PersistentMoviesStore store = open(Durability.BATCHED)) {
+            store.enableGeneratedIds(dir);
+            int first = store.addWithGeneratedId("Брат", 1997).getId();
+            last = store.addWithGeneratedId("Брат 2", 2000).getId();
+            assertTrue(last > first);
+            store.deleteMovieById(last);
+        }
+        try (PersistentMoviesStore store = open(Durability.BATCHED)) {
+            store.enableGeneratedIds(dir);
+            assertThrows(MovieAlreadyExistsException.class, () -> store.addWithGeneratedId("Брат", 1997));
+            assertTrue(store.addWithGeneratedId("Брат 2", 2000).getId() > last);
+        }
+    }
+
+    @Test
+    void failedLogAppend_leavesCatalogAndIndexesUnchanged() throws IOException {
+        boolean[] failing = new boolean[1];
+        List<MoviesStore> stores = List.of(
+                new MoviesStore() {
+                    @Override
+                    void onAdded(Movie movie) {
+                        failIf(failing[0]);
+                    }
+
+                    @Override
+                    void onDeleted(Movie movie) {
+                        failIf(failing[0]);
+                    }
+                },
+                new CompactMoviesStore(false, 16) {
+                    @Override
+                    void onAdded(Movie movie) {
+                        failIf(failing[0]);
+                    }
+
+                    @Override
+                    void onDeleted(Movie movie) {
+                        failIf(failing[0]);
+                    }
+                },
+                new SnapshotMoviesStore() {
+                    @Override
+                    void onAdded(Movie movie) {
+                        failIf(failing[0]);
+                    }
+
+                    @Override
+                    void onDeleted(Movie movie) {
+                        failIf(failing[0]);
+                    }
+                });
+        for (MoviesStore store : stores) {
+            store.addMovies(new Movie(1, "Брат", 1997));
+            store.enableGeneratedIds(null);
+            long seq = store.changes().lastSeq();
+
+            failing[0] = true;
+            assertThrows(UncheckedIOException.class, () -> store.addMovies(new Movie(2, "Ёлки", 2010)));
+            assertThrows(UncheckedIOException.class, () -> store.addWithGeneratedId("Ёлки", 2010));
+            assertThrows(UncheckedIOException.class, () -> store.deleteMovieById(1));
+            failing[0] = false;
+
+            assertEquals(1, store.size());
+            assertTrue(store.searchByTitle("елки").isEmpty());
+            assertTrue(store.getMoviesByYear(2010).isEmpty());
+            assertEquals(1, store.searchByTitle("брат").size());
+            assertEquals(1, store.getMoviesByYear(1997).size());
+            assertEquals(seq, store.changes().lastSeq());
+            // название и год не остались занятыми несостоявшимся добавлением
+            assertEquals("Ёлки", store.addWithGeneratedId("Ёлки", 2010).getTitle());
+        }
+    }
+
+    private static void failIf(boolean failing) {
+        if (failing) throw new UncheckedIOException(new IOException("На диске нет места"));
+    }
+
+    private PersistentMoviesStore open(Durability durability) throws IOException {
+        return new PersistentMoviesStore(dir, durability, null);
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = WriteAheadLog.segments(dir);
+        return segments.get(segments.size() - 1);
+    }
+
+    private long segmentCount() throws IOException {
+        return WriteAheadLog.segments(dir).size();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
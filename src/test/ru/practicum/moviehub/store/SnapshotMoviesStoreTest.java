@@ -0,0 +1,145 @@
+package ru.practicum.moviehub.store;
+
+import org.junit.jupiter.api.*;
+import ru.practicum.moviehub.model.Movie;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotMoviesStoreTest {
+
+    @Test
+    void indexes_afterChurn_matchHeapStore() {
+        MoviesStore heap = new MoviesStore();
+        SnapshotMoviesStore snapshot = new SnapshotMoviesStore();
+        Random random = new Random(42);
+        String[] words = {"брат", "ёлки", "небо", "сон", "дом", "зима"};
+
+        // деревья многократно перебалансируются, корзины годов и слов появляются и пустеют
+        for (int i = 0; i < 50_000; i++) {
+            int id = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(heap.remove(id), snapshot.remove(id));
+            } else {
+                Movie movie = new Movie(id, words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                        + " " + i, 1950 + random.nextInt(70));
+                assertEquals(heap.insert(movie), snapshot.insert(movie));
+            }
+        }
+
+        assertEquals(heap.size(), snapshot.size());
+        List<Movie> all = snapshot.getAllMovies();
+        assertEquals(ids(heap.getAllMovies()), ids(all));
+        assertEquals(new ArrayList<>(ids(all)), all.stream().map(Movie::getId).toList(), "порядок по id");
+        assertEquals(all.get(all.size() / 2), snapshot.getMovies(all.size() / 2, 1).get(0));
+        for (int year = 1950; year < 2020; year += 7) {
+            assertEquals(ids(heap.getMoviesByYear(year)), ids(snapshot.getMoviesByYear(year)));
+        }
+        assertEquals(ids(heap.getMoviesByYearRange(1960, 1980)), ids(snapshot.getMoviesByYearRange(1960, 1980)));
+        for (String query : List.of("брат", "елки не", "сон зи", "дом дом", "1")) {
+            assertEquals(ids(heap.searchByTitle(query)), ids(snapshot.searchByTitle(query)), query);
+        }
+    }
+
+    @Test
+    void readers_keepTheirSnapshot_andMemoIsPerVersion() {
+        SnapshotMoviesStore store = new SnapshotMoviesStore();
+        store.addAll(List.of(new Movie(1, "Брат", 1997), new Movie(2, "Брат 2", 2000)));
+        assertEquals(1, store.version(), "пакет публикуется одним снимком");
+
+        List<Movie> before = store.getAllMovies();
+        assertThrows(UnsupportedOperationException.class, () -> before.add(new Movie(3, "Ёлки", 2010)));
+        int[] renders = new int[1];
+        String body = store.memoize("all", all -> ++renders[0] + ":" + all.size());
+        assertEquals(body, store.memoize("all", all -> ++renders[0] + ":" + all.size()));
+
+        store.addMovies(new Movie(3, "Ёлки", 2010));
+        store.deleteMovieById(1);
+        assertEquals(List.of(1, 2), before.stream().map(Movie::getId).toList());
+        assertEquals(List.of(2, 3), store.getAllMovies().stream().map(Movie::getId).toList());
+        assertEquals("2:2", store.memoize("all", all -> ++renders[0] + ":" + all.size()));
+        assertEquals(3, store.version());
+    }
+
+    @Test
+    void concurrentWriters_combinedBatches_loseNothing() throws Exception {
+        SnapshotMoviesStore store = new SnapshotMoviesStore();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        int id = thread * 5_000 + i;
+                        store.addMovies(new Movie(id, "Фильм " + id, 2000 + thread));
+                        if (i % 2 == 0) store.deleteMovieById(id);
+                        if (i % 100 == 0) store.getMoviesByYear(2000 + thread);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(20_000, store.size());
+        assertEquals(20_000, store.getMoviesByYearRange(2000, 2007).size());
+        assertEquals("Фильм 39999", store.findMovie(39_999).getTitle());
+        assertEquals(20_000, store.searchByTitle("фильм").size());
+    }
+
+    @Test
+    void failedWrite_appliedByAnotherWriter_failsItsOwner() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SnapshotMoviesStore store = new SnapshotMoviesStore() {
+            @Override
+            void onAdded(Movie movie) {
+                if (movie.getId() == 1) {
+                    applying.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (movie.getId() == 2) throw new IllegalStateException("журнал недоступен");
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // первый писатель держит блокировку, изменение второго встаёт в очередь и применяется первым
+            Future<?> first = pool.submit(() -> store.addMovies(new Movie(1, "Первый", 2000)));
+            applying.await();
+            AtomicReference<Thread> second = new AtomicReference<>();
+            Future<?> failing = pool.submit(() -> {
+                second.set(Thread.currentThread());
+                store.addMovies(new Movie(2, "Второй", 2000));
+                return null;
+            });
+            while (second.get() == null || second.get().getState() != Thread.State.WAITING) Thread.sleep(1);
+            release.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+            assertEquals("журнал недоступен", e.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(List.of(1), store.getAllMovies().stream().map(Movie::getId).toList());
+        store.addMovies(new Movie(3, "Третий", 2000));
+        assertEquals(2, store.size());
+    }
+
+    private static Set<Integer> ids(Collection<Movie> movies) {
+        Set<Integer> ids = new TreeSet<>();
+        for (Movie movie : movies) ids.add(movie.getId());
+        return ids;
+    }
+}